@@ -0,0 +1,188 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.binding.impl;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, LRU cache of binding results.
+ * <p>
+ * Each entry records, for a single resource URI, the validator (ETag or Last-Modified) of the resource at the time
+ * of binding, the URIs of all extensions that were examined, and the URIs of those that bound. An entry is only
+ * valid for as long as the validator is unchanged.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class BindingCache {
+
+    private final Map<URI, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final int maxSize;
+
+    /**
+     * Create a cache with the given maximum number of entries.
+     *
+     * @param maxSize Maximum number of entries. If less than one, nothing will be cached.
+     */
+    BindingCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<URI, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<URI, Entry> eldest) {
+                return size() > BindingCache.this.maxSize;
+            }
+        });
+    }
+
+    /**
+     * Look up a still-valid entry for a resource.
+     * <p>
+     * Counts as a hit only if the entry exists, the validator matches, and all candidate extensions have already
+     * been examined.
+     * </p>
+     *
+     * @param resource resource URI.
+     * @param validator current validator of the resource.
+     * @param candidates URIs of candidate extensions.
+     * @return the entry, or null if none that matches the validator.
+     */
+    Entry get(final URI resource, final String validator, final Collection<URI> candidates) {
+        if (maxSize < 1 || validator == null) {
+            return null;
+        }
+
+        final Entry entry = entries.get(resource);
+
+        if (entry == null || !entry.validator.equals(validator)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.examined.containsAll(candidates)) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+
+        return entry;
+    }
+
+    /**
+     * Add the result of a binding to the cache.
+     *
+     * @param resource resource URI.
+     * @param validator validator of the resource at the time of binding.
+     * @param describedBy URI of the description used for binding, if different from the resource, or null.
+     * @param examined URIs of all extensions that were examined.
+     * @param bound URIs of extensions that were bound.
+     */
+    void put(final URI resource, final String validator, final URI describedBy, final Collection<URI> examined,
+            final Collection<URI> bound) {
+        if (maxSize < 1 || validator == null) {
+            return;
+        }
+
+        entries.put(resource, new Entry(validator, describedBy, examined, bound));
+    }
+
+    /**
+     * Remove any entries relevant to the given resource.
+     * <p>
+     * This includes the entry for the resource itself, and any entry whose binding relied on the resource as its
+     * description.
+     * </p>
+     *
+     * @param uri URI of a resource that may have changed.
+     */
+    void invalidate(final URI uri) {
+        synchronized (entries) {
+            entries.remove(uri);
+            entries.values().removeIf(e -> uri.equals(e.describedBy));
+        }
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Number of entries currently cached.
+     *
+     * @return number of entries.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Number of cache hits so far.
+     *
+     * @return hit count.
+     */
+    long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of cache misses so far.
+     *
+     * @return miss count.
+     */
+    long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Cached result of binding a single resource.
+     */
+    static class Entry {
+
+        final String validator;
+
+        final URI describedBy;
+
+        final Set<URI> examined;
+
+        final Set<URI> bound;
+
+        Entry(final String validator, final URI describedBy, final Collection<URI> examined,
+                final Collection<URI> bound) {
+            this.validator = validator;
+            this.describedBy = describedBy;
+            this.examined = Collections.unmodifiableSet(new HashSet<>(examined));
+            this.bound = Collections.unmodifiableSet(new HashSet<>(bound));
+        }
+    }
+}
@@ -20,29 +20,36 @@ package org.fcrepo.apix.binding.impl;
 
 import static org.fcrepo.apix.model.Ontologies.LDP_LDPR;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.fcrepo.apix.model.Extension;
+import org.fcrepo.apix.model.ExtensionChange;
+import org.fcrepo.apix.model.Ontology;
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.ExtensionBinding;
+import org.fcrepo.apix.model.components.ExtensionListener;
 import org.fcrepo.apix.model.components.ExtensionRegistry;
+import org.fcrepo.apix.model.components.OntologyRegistry;
 import org.fcrepo.apix.model.components.OntologyService;
 import org.fcrepo.apix.model.components.Registry;
 import org.fcrepo.apix.model.components.ResourceNotFoundException;
+import org.fcrepo.apix.model.components.Updateable;
 import org.fcrepo.client.FcrepoLink;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -58,24 +65,53 @@ import org.slf4j.LoggerFactory;
  * Polls the extension registry for all known extensions at time of transaction, and performs reasoning at runtime in
  * order to bind a repository resource to the extensions that match it.
  * </p>
+ * <p>
+ * Bindings of repository resources (by URI) are cached in a bounded LRU cache, and validated against the
+ * resource's ETag or Last-Modified date on each lookup.
+ * </p>
+ * <p>
+ * The ontology closures of a given set of extensions are merged into a single binding ontology, so that binding a
+ * resource takes a single inference pass regardless of the number of extensions. Binding ontologies are retained
+ * until one of their extensions changes, or any ontology in the ontology registry changes.
+ * </p>
  *
  * @author apb@jhu.edu
  */
 @Component(configurationPolicy = ConfigurationPolicy.REQUIRE)
-public class RuntimeExtensionBinding implements ExtensionBinding {
+public class RuntimeExtensionBinding implements ExtensionBinding, Updateable, ExtensionListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(RuntimeExtensionBinding.class);
 
     private static final URI LDPR = URI.create(LDP_LDPR);
 
+    static final int DEFAULT_CACHE_SIZE = 1000;
+
+    static final int BINDING_ONTOLOGY_CACHE_SIZE = 16;
+
     private CloseableHttpClient httpClient;
 
     private ExtensionRegistry extensionRegistry;
 
     private OntologyService ontologySvc;
 
+    private OntologyRegistry ontologyRegistry;
+
     private Registry registry;
 
+    private BindingCache cache = new BindingCache(DEFAULT_CACHE_SIZE);
+
+    // Keyed by extension instance; the extension registry hands out a new instance whenever an extension changes.
+    private final Map<Set<Extension>, Optional<Ontology>> bindingOntologies = Collections.synchronizedMap(
+            new LinkedHashMap<Set<Extension>, Optional<Ontology>>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Set<Extension>, Optional<Ontology>> eldest) {
+                    return size() > BINDING_ONTOLOGY_CACHE_SIZE;
+                }
+            });
+
     /**
      * Set the http client
      *
@@ -85,6 +121,15 @@ public class RuntimeExtensionBinding implements ExtensionBinding {
         this.httpClient = client;
     }
 
+    /**
+     * Set the maximum number of resources whose bindings are cached.
+     *
+     * @param size Number of cached resources; zero disables the cache.
+     */
+    public void setCacheSize(final int size) {
+        this.cache = new BindingCache(size);
+    }
+
     /**
      * Set the underlying registry containing extensions that may be bound.
      *
@@ -105,6 +150,19 @@ public class RuntimeExtensionBinding implements ExtensionBinding {
         ontologySvc = os;
     }
 
+    /**
+     * Set the ontology registry.
+     * <p>
+     * Used to recognize changes to ontologies, which may affect any binding.
+     * </p>
+     *
+     * @param registry Ontology registry.
+     */
+    @Reference
+    public void setOntologyRegistry(final OntologyRegistry registry) {
+        this.ontologyRegistry = registry;
+    }
+
     /**
      * Set the underlying delegate registry for retrieving arbitrary web resources from the repository.
      * <p>
@@ -119,11 +177,11 @@ public class RuntimeExtensionBinding implements ExtensionBinding {
     }
 
     /**
-     * Simple/naive binding algorithm, there may be opportunities for optimization when the time is right
+     * Binding algorithm
      * <ol>
      * <li>Determine the set of known extensions</li>
-     * <li>for each extension, get its ontology closure</li>
-     * <li>for each ontology closure, infer classes of the instance</li>
+     * <li>Get the binding ontology for that set of extensions; i.e. the union of their ontology closures</li>
+     * <li>Infer classes of the instance using the binding ontology</li>
      * <li>For each extension, see if its binding class is in that list of inferred classes.</li>
      * <li>Return all extensions that match</li>
      * </ol>
@@ -138,29 +196,51 @@ public class RuntimeExtensionBinding implements ExtensionBinding {
     public Collection<Extension> getExtensionsFor(final WebResource resource,
             final Collection<Extension> extensions) {
 
-        try (final InputStream resourceContent = resource.representation()) {
+        try (WebResource r = resource) {
+
+            final Optional<Ontology> bindingOntology = bindingOntologyFor(extensions);
 
-            final byte[] content = IOUtils.toByteArray(resourceContent);
+            if (!bindingOntology.isPresent()) {
+                return Collections.emptyList();
+            }
 
-            final Set<URI> rdfTypes = extensions.stream()
-                    .flatMap(RuntimeExtensionBinding::getExtensionResource)
-                    .peek(r -> LOG.debug("Examinining the ontology closure of extension {}", r.uri()))
-                    .map(ontologySvc::parseOntology)
-                    .flatMap(o -> ontologySvc.inferClasses(resource.uri(), cached(resource, content), o).stream())
-                    .peek(rdfType -> LOG.debug("Instance {} is of class {}", resource.uri(), rdfType))
-                    .collect(Collectors.toSet());
+            final Set<URI> rdfTypes = ontologySvc.inferClasses(r.uri(), r, bindingOntology.get());
+            rdfTypes.forEach(rdfType -> LOG.debug("Instance {} is of class {}", r.uri(), rdfType));
 
             return extensions.stream()
                     .peek(e -> LOG.debug("Extension {} binds to instances of {}", e.uri(), e.bindingClass()))
                     .filter(e -> rdfTypes.contains(e.bindingClass()))
-                    .peek(e -> LOG.debug("Extension {} bound to instance {} via {}", e.uri(), resource.uri(), e
+                    .peek(e -> LOG.debug("Extension {} bound to instance {} via {}", e.uri(), r.uri(), e
                             .bindingClass()))
                     .collect(Collectors.toList());
-        } catch (final IOException e) {
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /** Get or build the merged ontology closure of the given extensions */
+    private Optional<Ontology> bindingOntologyFor(final Collection<Extension> extensions) {
+        final Set<Extension> key = new HashSet<>(extensions);
+
+        final Optional<Ontology> cached = bindingOntologies.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        LOG.debug("Building binding ontology for {} extensions", key.size());
+
+        final Optional<Ontology> merged = extensions.stream()
+                .flatMap(RuntimeExtensionBinding::getExtensionResource)
+                .peek(r -> LOG.debug("Examinining the ontology closure of extension {}", r.uri()))
+                .map(ontologySvc::parseOntology)
+                .reduce(ontologySvc::merge);
+
+        bindingOntologies.put(key, merged);
+        return merged;
+    }
+
     private static Stream<WebResource> getExtensionResource(final Extension e) {
 
         try {
@@ -170,12 +250,14 @@ public class RuntimeExtensionBinding implements ExtensionBinding {
         }
     }
 
-    private WebResource cached(final WebResource initial, final byte[] content) {
-        return WebResource.of(new ByteArrayInputStream(content), initial.contentType(), initial.uri(), initial
-                .name());
-    }
-
-    /** Just does a dumb dereference and lookup */
+    /**
+     * Dereferences the resource and reasons over it, or its description if a binary.
+     * <p>
+     * Results are cached by resource URI, and are considered valid for as long as the resource's
+     * <code>ETag</code> (or <code>Last-Modified</code>, if there is no ETag) as reported by a HEAD request remains
+     * unchanged, or until invalidated by {@link #update(URI)}.
+     * </p>
+     */
     @Override
     public Collection<Extension> getExtensionsFor(final URI resourceURI, final Collection<Extension> from) {
 
@@ -198,6 +280,23 @@ public class RuntimeExtensionBinding implements ExtensionBinding {
                         resourceURI));
             }
 
+            final String validator = validatorOf(response);
+            final Set<URI> candidates = from.stream().map(Extension::uri).collect(Collectors.toSet());
+
+            final BindingCache.Entry cached = cache.get(resourceURI, validator, candidates);
+
+            if (cached != null && cached.examined.containsAll(candidates)) {
+                LOG.debug("Using cached binding for <{}>", resourceURI);
+                return from.stream()
+                        .filter(e -> cached.bound.contains(e.uri()))
+                        .collect(Collectors.toList());
+            }
+
+            // Only reason over extensions we haven't seen yet for this version of the resource
+            final Collection<Extension> toExamine = cached == null ? from : from.stream()
+                    .filter(e -> !cached.examined.contains(e.uri()))
+                    .collect(Collectors.toList());
+
             final List<FcrepoLink> describedByLinks =
                     Arrays.asList(response.getHeaders("Link")).stream().map(Header::getValue)
                             .map(FcrepoLink::new)
@@ -211,38 +310,136 @@ public class RuntimeExtensionBinding implements ExtensionBinding {
                             .map(FcrepoLink::getUri)
                             .collect(Collectors.toList());
 
+            final Collection<Extension> bound;
+            URI describedBy = null;
+
             if (!describedByLinks.isEmpty()) {
                 if (describedByLinks.size() > 1) {
                     throw new RuntimeException(
                             String.format("Ambiguous; more than one describes header for <%s>", resourceURI));
                 }
 
-                LOG.debug("Using <{}> for inference about binary <{}>", describedByLinks.get(0).getUri(),
-                        resourceURI);
+                describedBy = describedByLinks.get(0).getUri();
+
+                LOG.debug("Using <{}> for inference about binary <{}>", describedBy, resourceURI);
 
-                try (WebResource resource = registry.get(describedByLinks.get(0).getUri())) {
-                    return getExtensionsFor(WebResource.of(
+                try (WebResource resource = registry.get(describedBy)) {
+                    bound = getExtensionsFor(WebResource.of(
                             resource.representation(),
                             resource.contentType(),
-                            resourceURI, null), from);
+                            resourceURI, null), toExamine);
                 }
 
             } else if (types.contains(LDPR)) {
                 try (WebResource resource = registry.get(resourceURI)) {
-                    return getExtensionsFor(resource, from);
+                    bound = getExtensionsFor(resource, toExamine);
                 }
+            } else {
+                bound = Collections.emptyList();
             }
 
-            return Collections.emptyList();
+            final Set<URI> examined = new HashSet<>(candidates);
+            final Set<URI> boundURIs = bound.stream().map(Extension::uri).collect(Collectors.toSet());
+
+            if (cached != null) {
+                examined.addAll(cached.examined);
+                boundURIs.addAll(cached.bound);
+            }
+
+            cache.put(resourceURI, validator, describedBy, examined, boundURIs);
+
+            return from.stream()
+                    .filter(e -> boundURIs.contains(e.uri()))
+                    .collect(Collectors.toList());
 
         } catch (final Exception e) {
             throw new RuntimeException("Could not get triples for reasoning over " + resourceURI, e);
         }
     }
 
+    private static String validatorOf(final HttpResponse response) {
+        final Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        if (etag != null) {
+            return etag.getValue();
+        }
+
+        final Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        return lastModified != null ? lastModified.getValue() : null;
+    }
+
     /** Just does a dumb dereference and lookup */
     @Override
     public Collection<Extension> getExtensionsFor(final URI resourceURI) {
         return getExtensionsFor(resourceURI, extensionRegistry.getExtensions());
     }
+
+    /** Discard all cached bindings and binding ontologies. */
+    @Override
+    public void update() {
+        cache.clear();
+        bindingOntologies.clear();
+    }
+
+    /**
+     * Invalidate cached bindings affected by a change to the given resource.
+     * <p>
+     * A change to an ontology in the ontology registry potentially affects the binding of any resource, so discards
+     * all cached bindings and binding ontologies. Otherwise, invalidates only the bindings of the resource itself, or
+     * of the binary it describes. Changes to extensions are handled by {@link #onChange(ExtensionChange)}.
+     * </p>
+     */
+    @Override
+    public void update(final URI inResponseTo) {
+        if (ontologyRegistry != null && ontologyRegistry.hasInDomain(inResponseTo)) {
+            LOG.debug("Ontology <{}> may have changed, clearing binding cache and binding ontologies", inResponseTo);
+            update();
+        } else if (!extensionRegistry.hasInDomain(inResponseTo)) {
+            cache.invalidate(inResponseTo);
+        }
+    }
+
+    /**
+     * Apply a change to extensions.
+     * <p>
+     * Any change to extensions potentially affects the binding of any resource, so clears all cached bindings. Only
+     * binding ontologies that include a removed or changed extension are discarded.
+     * </p>
+     */
+    @Override
+    public void onChange(final ExtensionChange change) {
+        LOG.debug("Extensions have changed, clearing binding cache");
+        cache.clear();
+
+        final Set<URI> invalidated = change.invalidated();
+        synchronized (bindingOntologies) {
+            bindingOntologies.keySet().removeIf(exts -> exts.stream().anyMatch(e -> invalidated.contains(e.uri())));
+        }
+    }
+
+    /**
+     * Number of binding lookups satisfied by the cache.
+     *
+     * @return hit count.
+     */
+    public long getCacheHits() {
+        return cache.hits();
+    }
+
+    /**
+     * Number of binding lookups that required dereferencing and reasoning over a resource.
+     *
+     * @return miss count.
+     */
+    public long getCacheMisses() {
+        return cache.misses();
+    }
+
+    /**
+     * Number of resources with cached bindings.
+     *
+     * @return cache size.
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
 }
@@ -18,24 +18,40 @@
 
 package org.fcrepo.apix.binding.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.fcrepo.apix.model.Extension;
+import org.fcrepo.apix.model.ExtensionChange;
 import org.fcrepo.apix.model.Ontology;
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.ExtensionRegistry;
+import org.fcrepo.apix.model.components.OntologyRegistry;
 import org.fcrepo.apix.model.components.OntologyService;
-
-import org.junit.Ignore;
+import org.fcrepo.apix.model.components.Registry;
+
+import org.apache.http.Header;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
 import org.junit.Test;
 
 /**
@@ -48,7 +64,6 @@ public class RuntimeExtensionBindingTest {
     // Basic verification that binding works as expected. ITs will exercise this more thoroughly.
     @SuppressWarnings("resource")
     @Test
-    @Ignore
     public void bindingTest() {
 
         final String class1 = "test:/class1";
@@ -134,6 +149,86 @@ public class RuntimeExtensionBindingTest {
         assertTrue(expectedExtensions.containsAll(boundExtensions));
     }
 
+    // Verifies that bindings are cached by ETag, and invalidated by update or ETag change
+    @Test
+    public void bindingCacheTest() throws Exception {
+        final URI resourceURI = URI.create("http://example.org/fcrepo/rest/resource");
+        final URI bindingClass = URI.create("test:/class1");
+
+        final Extension extension = mock(Extension.class);
+        when(extension.uri()).thenReturn(URI.create("http://example.org/fcrepo/rest/extensions/1"));
+        when(extension.bindingClass()).thenReturn(bindingClass);
+        when(extension.getResource()).thenReturn(mock(WebResource.class));
+
+        final ExtensionRegistry extensionRegistry = mock(ExtensionRegistry.class);
+        when(extensionRegistry.hasInDomain(any(URI.class))).thenReturn(false);
+
+        final OntologyService ontologyService = mock(OntologyService.class);
+        when(ontologyService.parseOntology(any(WebResource.class))).thenReturn(mock(Ontology.class));
+        when(ontologyService.inferClasses(eq(resourceURI), any(WebResource.class), any(Ontology.class)))
+                .thenReturn(new HashSet<>(Arrays.asList(bindingClass)));
+
+        final Registry registry = mock(Registry.class);
+        when(registry.get(resourceURI)).thenAnswer(i -> WebResource.of(new ByteArrayInputStream(new byte[0]),
+                "text/turtle", resourceURI, null));
+
+        final StatusLine status = mock(StatusLine.class);
+        when(status.getStatusCode()).thenReturn(200);
+
+        final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(status);
+        when(response.getHeaders("Link")).thenReturn(new Header[] {
+            new BasicHeader("Link", "<http://www.w3.org/ns/ldp#Resource>; rel=\"type\"") });
+        when(response.getFirstHeader("ETag")).thenReturn(new BasicHeader("ETag", "\"v1\""));
+
+        final CloseableHttpClient client = mock(CloseableHttpClient.class);
+        when(client.execute(isA(HttpHead.class))).thenReturn(response);
+
+        final URI ontologyURI = URI.create("http://example.org/fcrepo/rest/ontologies/1");
+        final OntologyRegistry ontologyRegistry = mock(OntologyRegistry.class);
+        when(ontologyRegistry.hasInDomain(ontologyURI)).thenReturn(true);
+
+        final RuntimeExtensionBinding toTest = new RuntimeExtensionBinding();
+        toTest.setExtensionRegistry(extensionRegistry);
+        toTest.setOntologyService(ontologyService);
+        toTest.setOntologyRegistry(ontologyRegistry);
+        toTest.setDelegateRegistry(registry);
+        toTest.setHttpClient(client);
+
+        final List<Extension> extensions = Arrays.asList(extension);
+
+        assertEquals(1, toTest.getExtensionsFor(resourceURI, extensions).size());
+        assertEquals(1, toTest.getExtensionsFor(resourceURI, extensions).size());
+        verify(registry, times(1)).get(resourceURI);
+        assertEquals(1, toTest.getCacheHits());
+        assertEquals(1, toTest.getCacheMisses());
+
+        toTest.update(resourceURI);
+        assertEquals(1, toTest.getExtensionsFor(resourceURI, extensions).size());
+        verify(registry, times(2)).get(resourceURI);
+
+        when(response.getFirstHeader("ETag")).thenReturn(new BasicHeader("ETag", "\"v2\""));
+        assertEquals(1, toTest.getExtensionsFor(resourceURI, extensions).size());
+        verify(registry, times(3)).get(resourceURI);
+        assertEquals(1, toTest.getCacheHits());
+
+        // The binding ontology is only rebuilt when an extension changes
+        verify(ontologyService, times(1)).parseOntology(any(WebResource.class));
+        when(extensionRegistry.hasInDomain(extension.uri())).thenReturn(true);
+        toTest.update(extension.uri());
+        toTest.onChange(ExtensionChange.of(Collections.emptyList(), Collections.emptyList(), Arrays.asList(
+                extension)));
+        assertEquals(1, toTest.getExtensionsFor(resourceURI, extensions).size());
+        verify(ontologyService, times(2)).parseOntology(any(WebResource.class));
+        verify(registry, times(4)).get(resourceURI);
+
+        // A change to any ontology discards both bindings and binding ontologies
+        toTest.update(ontologyURI);
+        assertEquals(1, toTest.getExtensionsFor(resourceURI, extensions).size());
+        verify(ontologyService, times(3)).parseOntology(any(WebResource.class));
+        verify(registry, times(5)).get(resourceURI);
+    }
+
     private class Ont implements Ontology {
 
         public String content;
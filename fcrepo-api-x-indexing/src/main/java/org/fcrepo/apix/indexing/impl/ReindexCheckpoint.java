@@ -0,0 +1,353 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.indexing.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records which resources have been re-indexed in the current re-index run, and reports progress.
+ * <p>
+ * As an idempotent repository, this allows a re-index run to resume where it stopped: resources already re-indexed
+ * in the current run are skipped, whether they are delivered again because the run was interrupted and restarted,
+ * or because a message was redelivered. A new run is started by {@link #clear()}, or once nothing has been
+ * re-indexed for the idle timeout, which marks the end of the previous run.
+ * </p>
+ * <p>
+ * Resources are recorded as 64 bit hashes of their URIs, so that runs over millions of resources fit comfortably in
+ * memory. If a checkpoint file is given, each hash is appended to it as soon as it is recorded, and the file is read
+ * back on start.
+ * </p>
+ * <p>
+ * The estimated total size of a run is the number of resources in the previous run. Progress and ETA are logged at
+ * most once per report interval.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class ReindexCheckpoint extends ServiceSupport implements IdempotentRepository<String> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReindexCheckpoint.class);
+
+    private static final String PROP_STARTED = "started";
+
+    private static final String PROP_PREVIOUS_TOTAL = "previousTotal";
+
+    private final File file;
+
+    private final long reportInterval;
+
+    private final long idleTimeout;
+
+    private long[] hashes = new long[1024];
+
+    private long completed;
+
+    private long previousTotal;
+
+    private long started = System.currentTimeMillis();
+
+    private long sessionStarted = System.nanoTime();
+
+    private long sessionCompleted;
+
+    private long lastReport = System.nanoTime();
+
+    private long lastActivity = System.currentTimeMillis();
+
+    private DataOutputStream out;
+
+    /**
+     * Create a checkpoint.
+     *
+     * @param file File in which to keep the checkpoint. Null or empty keeps it in memory only.
+     * @param reportInterval minimum time in milliseconds between logged progress reports.
+     * @param idleTimeout time in milliseconds without re-index activity after which a run is finished. Zero or less
+     *        means runs are only finished by {@link #clear()}.
+     */
+    public ReindexCheckpoint(final String file, final long reportInterval, final long idleTimeout) {
+        this.file = file == null || file.trim().isEmpty() ? null : new File(file.trim());
+        this.reportInterval = reportInterval;
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception {
+        if (file != null) {
+            final File runFile = runFile();
+            if (runFile.exists()) {
+                final Properties run = new Properties();
+                try (InputStream in = new FileInputStream(runFile)) {
+                    run.load(in);
+                }
+                started = Long.parseLong(run.getProperty(PROP_STARTED, Long.toString(started)));
+                previousTotal = Long.parseLong(run.getProperty(PROP_PREVIOUS_TOTAL, "0"));
+            }
+
+            if (file.exists()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    while (true) {
+                        insert(in.readLong());
+                    }
+                } catch (final EOFException e) {
+                    // Done. A partially written hash at the end is ignored.
+                }
+                lastActivity = file.lastModified();
+                LOG.info("Resuming re-index run with {} resources already re-indexed", completed);
+            }
+
+            open(true);
+        }
+        sessionStarted = System.nanoTime();
+        sessionCompleted = 0;
+    }
+
+    @Override
+    protected synchronized void doStop() throws Exception {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean add(final String uri) {
+        lastActivity = System.currentTimeMillis();
+        if (!insert(hash(uri))) {
+            return false;
+        }
+
+        if (out != null) {
+            try {
+                out.writeLong(hash(uri));
+                out.flush();
+            } catch (final IOException e) {
+                throw new RuntimeException("Could not write re-index checkpoint " + file, e);
+            }
+        }
+
+        sessionCompleted++;
+
+        final long now = System.nanoTime();
+        if (now - lastReport >= reportInterval * 1000000) {
+            lastReport = now;
+            final long eta = getEta();
+            LOG.info("Re-indexed {} of an estimated {} resources, {} resources/s, ETA {}",
+                    completed, getEstimatedTotal(), String.format("%.1f", getRate()),
+                    eta < 0 ? "unknown" : String.format("%d s", eta / 1000));
+        }
+
+        return true;
+    }
+
+    /**
+     * Determine if a resource has been re-indexed in the current run.
+     * <p>
+     * If the current run has been idle for longer than the idle timeout, it is finished, and a new run is started.
+     * </p>
+     */
+    @Override
+    public synchronized boolean contains(final String uri) {
+        final long now = System.currentTimeMillis();
+        if (idleTimeout > 0 && completed > 0 && now - lastActivity >= idleTimeout) {
+            LOG.info("Re-index run of {} resources finished, nothing re-indexed for {} s", completed,
+                    (now - lastActivity) / 1000);
+            clear();
+        }
+        lastActivity = now;
+
+        return slot(hash(uri)) >= 0;
+    }
+
+    /**
+     * Does nothing; resources are never forgotten during a run.
+     * <p>
+     * A resource is only recorded once it has been re-indexed, so there is nothing to undo on failure.
+     * </p>
+     */
+    @Override
+    public boolean remove(final String uri) {
+        return false;
+    }
+
+    @Override
+    public boolean confirm(final String uri) {
+        return true;
+    }
+
+    /**
+     * Start a new re-index run.
+     * <p>
+     * Forgets all re-indexed resources, and uses the size of the run so far as the estimated size of the new one.
+     * </p>
+     */
+    @Override
+    public synchronized void clear() {
+        if (completed > 0) {
+            previousTotal = completed;
+        }
+
+        hashes = new long[1024];
+        completed = 0;
+        started = System.currentTimeMillis();
+        lastActivity = started;
+        sessionStarted = System.nanoTime();
+        sessionCompleted = 0;
+
+        if (file != null) {
+            final Properties run = new Properties();
+            run.setProperty(PROP_STARTED, Long.toString(started));
+            run.setProperty(PROP_PREVIOUS_TOTAL, Long.toString(previousTotal));
+
+            try (OutputStream runOut = new FileOutputStream(runFile())) {
+                run.store(runOut, "API-X re-index run");
+                if (out != null) {
+                    out.close();
+                }
+                open(false);
+            } catch (final IOException e) {
+                throw new RuntimeException("Could not start re-index checkpoint " + file, e);
+            }
+        }
+
+        LOG.info("Starting re-index run, estimated {} resources", previousTotal);
+    }
+
+    /**
+     * Number of resources re-indexed in the current run.
+     *
+     * @return resource count.
+     */
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Estimated number of resources in the current run.
+     *
+     * @return The size of the previous run, or the number of resources re-indexed so far if that is greater. Zero if
+     *         unknown.
+     */
+    public synchronized long getEstimatedTotal() {
+        return Math.max(previousTotal, completed);
+    }
+
+    /**
+     * Time the current run started.
+     *
+     * @return start time, in milliseconds since the epoch.
+     */
+    public synchronized long getStarted() {
+        return started;
+    }
+
+    /**
+     * Mean number of resources re-indexed per second, since the run started or was resumed.
+     *
+     * @return resources per second.
+     */
+    public synchronized double getRate() {
+        final double seconds = (System.nanoTime() - sessionStarted) / 1e9;
+        return seconds > 0 ? sessionCompleted / seconds : 0;
+    }
+
+    /**
+     * Estimated time until the current run finishes, at the current rate.
+     *
+     * @return time in milliseconds, or -1 if unknown.
+     */
+    public synchronized long getEta() {
+        final double rate = getRate();
+        if (previousTotal == 0 || rate == 0) {
+            return -1;
+        }
+        return (long) (Math.max(0, previousTotal - completed) / rate * 1000);
+    }
+
+    private File runFile() {
+        return new File(file.getPath() + ".run");
+    }
+
+    private void open(final boolean append) throws IOException {
+        if (file.getAbsoluteFile().getParentFile() != null) {
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+    }
+
+    /* 64 bit FNV-1a hash of a URI. Zero marks an empty slot, so is never returned */
+    static long hash(final String uri) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < uri.length(); i++) {
+            hash ^= uri.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /* Index of the slot containing a hash, or -(insertion point + 1) */
+    private int slot(final long hash) {
+        final int mask = hashes.length - 1;
+        int i = (int) (hash ^ (hash >>> 32)) & mask;
+        while (hashes[i] != 0) {
+            if (hashes[i] == hash) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    /* Open addressing with linear probing, resized to keep at most half full */
+    private boolean insert(final long hash) {
+        final int slot = slot(hash);
+        if (slot >= 0) {
+            return false;
+        }
+
+        hashes[-(slot + 1)] = hash;
+        completed++;
+
+        if (completed * 2 > hashes.length) {
+            final long[] old = hashes;
+            hashes = new long[old.length * 2];
+            for (final long h : old) {
+                if (h != 0) {
+                    hashes[-(slot(h) + 1)] = h;
+                }
+            }
+        }
+        return true;
+    }
+}
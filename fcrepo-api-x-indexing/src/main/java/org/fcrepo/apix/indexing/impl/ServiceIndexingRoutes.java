@@ -22,6 +22,7 @@ import static org.apache.camel.builder.PredicateBuilder.not;
 import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.apache.http.entity.ContentType.parse;
 import static org.apache.jena.riot.RDFLanguages.contentTypeToLang;
+import static org.fcrepo.apix.indexing.impl.SparqlUpdateBatcher.PROP_REINDEXED;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_NAMED_GRAPH;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
@@ -57,6 +58,16 @@ import org.slf4j.LoggerFactory;
  * Retrieves the service doc of added/updated objects and sends to triple store. Whenever an extension is added or
  * updated, it initiates a re-index of all objects
  * </p>
+ * <p>
+ * SPARQL updates are combined into batches, each sent to the triple store in a single request, once it has
+ * enough updates, is large enough, or the batch interval has elapsed.
+ * </p>
+ * <p>
+ * Messages from the re-index stream may be processed concurrently, with a bounded number queued for processing.
+ * When the queue is full, the consuming thread processes messages itself, and so stops consuming more until it is
+ * done. Resources re-indexed in the current run are recorded in a {@link ReindexCheckpoint}, so that an interrupted
+ * run resumes where it stopped.
+ * </p>
  *
  * @author apb@jhu.edu
  */
@@ -64,6 +75,8 @@ public class ServiceIndexingRoutes extends RouteBuilder {
 
     static final String ROUTE_TRIGGER_REINDEX = "direct:trigger-reindex";
 
+    static final String ROUTE_REINDEX = "direct:reindex";
+
     static final String ROUTE_INDEX_PREPARE = "direct:index-service-doc";
 
     static final String ROUTE_EVENT_PROCESOR = "direct:event-processor";
@@ -76,6 +89,10 @@ public class ServiceIndexingRoutes extends RouteBuilder {
 
     static final String ROUTE_DELETE_SERVICE_DOC = "direct:delete-service-doc";
 
+    static final String ROUTE_SPARQL_UPDATE = "direct:sparql-update";
+
+    static final String ROUTE_SEND_SPARQL_UPDATE = "direct:send-sparql-update";
+
     static final String HEADER_SERVICE_DOC = "CamelApixServiceDocument";
 
     private static final String FCR_DELETE = "http://fedora.info/definitions/v4/event#ResourceDeletion";
@@ -88,6 +105,28 @@ public class ServiceIndexingRoutes extends RouteBuilder {
 
     private String reindexStream;
 
+    private int batchSize = 100;
+
+    private long batchBytes = 1024 * 1024;
+
+    private long batchInterval = 1000;
+
+    private long reportInterval = 60000;
+
+    private SparqlUpdateBatcher batcher;
+
+    private int reindexConcurrency = 4;
+
+    private int reindexMaxQueued = 100;
+
+    private String reindexCheckpointFile;
+
+    private long reindexReportInterval = 60000;
+
+    private long reindexIdleTimeout = 600000;
+
+    private ReindexCheckpoint reindexCheckpoint;
+
     private static final EventProcessor EVENT_PROCESSOR = new EventProcessor();
 
     /**
@@ -108,9 +147,117 @@ public class ServiceIndexingRoutes extends RouteBuilder {
         this.reindexStream = stream;
     }
 
+    /**
+     * Set the maximum number of SPARQL updates sent to the triple store in a single request.
+     *
+     * @param size Number of updates. One or less sends each update as soon as it is ready.
+     */
+    public void setBatchSize(final int size) {
+        this.batchSize = size;
+    }
+
+    /**
+     * Set the size at which a batch of SPARQL updates is sent, regardless of the number of updates in it.
+     *
+     * @param bytes size in bytes.
+     */
+    public void setBatchBytes(final long bytes) {
+        this.batchBytes = bytes;
+    }
+
+    /**
+     * Set the interval at which incomplete batches of SPARQL updates are sent.
+     *
+     * @param millis interval in milliseconds.
+     */
+    public void setBatchInterval(final long millis) {
+        this.batchInterval = millis;
+    }
+
+    /**
+     * Set the minimum interval between logged reports of indexing throughput and batch sizes.
+     *
+     * @param millis interval in milliseconds.
+     */
+    public void setReportInterval(final long millis) {
+        this.reportInterval = millis;
+    }
+
+    /**
+     * Get statistics about SPARQL updates sent to the triple store.
+     *
+     * @return update statistics, or null if routes have not been configured yet.
+     */
+    public SparqlUpdateBatcher getUpdateStatistics() {
+        return batcher;
+    }
+
+    /**
+     * Set the number of threads processing messages from the re-index stream.
+     *
+     * @param threads Number of threads. One or less processes messages on the consuming thread.
+     */
+    public void setReindexConcurrency(final int threads) {
+        this.reindexConcurrency = threads;
+    }
+
+    /**
+     * Set the maximum number of re-index messages queued for processing, beyond those being processed.
+     *
+     * @param messages number of messages.
+     */
+    public void setReindexMaxQueued(final int messages) {
+        this.reindexMaxQueued = messages;
+    }
+
+    /**
+     * Set the file recording progress of the current re-index run.
+     *
+     * @param file Checkpoint file. Empty keeps progress in memory only, so a run cannot resume after a restart.
+     */
+    public void setReindexCheckpointFile(final String file) {
+        this.reindexCheckpointFile = file;
+    }
+
+    /**
+     * Set the minimum interval between logged reports of re-index progress.
+     *
+     * @param millis interval in milliseconds.
+     */
+    public void setReindexReportInterval(final long millis) {
+        this.reindexReportInterval = millis;
+    }
+
+    /**
+     * Set the time without re-index activity after which a re-index run is finished.
+     * <p>
+     * The next resource from the re-index stream starts a new run, so that asking the reindexing service to re-index
+     * everything again does so, rather than skipping everything re-indexed in a previous run.
+     * </p>
+     *
+     * @param millis idle time in milliseconds. Zero or less means a run is only finished when a re-index is
+     *        triggered by an extension update.
+     */
+    public void setReindexIdleTimeout(final long millis) {
+        this.reindexIdleTimeout = millis;
+    }
+
+    /**
+     * Get progress of the current re-index run.
+     *
+     * @return re-index progress, or null if routes have not been configured yet.
+     */
+    public ReindexCheckpoint getReindexProgress() {
+        return reindexCheckpoint;
+    }
+
     @Override
     public void configure() throws Exception {
 
+        batcher = new SparqlUpdateBatcher(batchBytes, reportInterval);
+
+        reindexCheckpoint = new ReindexCheckpoint(reindexCheckpointFile, reindexReportInterval, reindexIdleTimeout);
+
         from("{{service.index.stream}}")
                 .routeId("from-index-stream")
                 .to(ROUTE_EVENT_PROCESOR)
@@ -135,8 +282,28 @@ public class ServiceIndexingRoutes extends RouteBuilder {
                 .routeId("event-processor")
                 .process(EVENT_PROCESSOR);
 
-        from("{{service.reindex.stream}}")
-                .routeId("from-reindex-stream")
+        // Re-index messages are handed to a bounded pool of threads. Once its queue is full, the consuming thread
+        // runs the rejected message itself, which holds off consuming any more.
+        if (reindexConcurrency > 1) {
+            from("{{service.reindex.stream}}")
+                    .routeId("from-reindex-stream")
+                    .threads(reindexConcurrency, reindexConcurrency)
+                    .maxQueueSize(reindexMaxQueued)
+                    .callerRunsWhenRejected(true)
+                    .threadName("reindex")
+                    .to(ROUTE_REINDEX);
+        } else {
+            from("{{service.reindex.stream}}")
+                    .routeId("from-reindex-stream")
+                    .to(ROUTE_REINDEX);
+        }
+
+        // Resources already recorded in the checkpoint in this run are skipped. The others are recorded once the
+        // triple store has accepted the batch containing their updates (see send-sparql-update).
+        from(ROUTE_REINDEX)
+                .routeId("reindex")
+                .filter(e -> !reindexCheckpoint.contains(e.getIn().getHeader(FCREPO_URI, String.class)))
+                .setProperty(PROP_REINDEXED, header(FCREPO_URI))
                 .to(ROUTE_INDEX_PREPARE);
 
         from(ROUTE_GET_SERVICE_DOC_URI)
@@ -165,6 +332,7 @@ public class ServiceIndexingRoutes extends RouteBuilder {
         from(ROUTE_INDEX_PREPARE)
                 .routeId("prepare-for-index")
                 .to(ROUTE_GET_SERVICE_DOC_URI)
+                .process(this::reindexedIfNoServiceDoc)
                 .split(header(HEADER_SERVICE_DOC)).to(ROUTE_PERFORM_INDEX);
 
         from(ROUTE_DELETE_SERVICE_DOC)
@@ -178,7 +346,7 @@ public class ServiceIndexingRoutes extends RouteBuilder {
                 .process(SPARQL_DELETE_PROCESSOR)
                 .log(LoggingLevel.DEBUG, LOG,
                         "Deleting service doc of ${headers[CamelFcrepoUri]}")
-                .to("{{triplestore.baseUrl}}");
+                .to(ROUTE_SPARQL_UPDATE);
 
         from(ROUTE_PERFORM_INDEX)
                 .routeId("perform-index")
@@ -191,13 +359,45 @@ public class ServiceIndexingRoutes extends RouteBuilder {
                 .process(SPARQL_UPDATE_PROCESSOR)
                 .log(LoggingLevel.DEBUG, LOG,
                         "Indexing service doc of ${headers[CamelFcrepoUri]}")
-                .to("{{triplestore.baseUrl}}");
+                .to(ROUTE_SPARQL_UPDATE);
+
+        // Updates are batched by count, size, and time. Batches are sent one at a time, in the order they were
+        // completed, so that updates to the same graph are never re-ordered.
+        if (batchSize > 1) {
+            from(ROUTE_SPARQL_UPDATE)
+                    .routeId("batch-sparql-update")
+                    .aggregate(constant(true), batcher)
+                    .completionSize(batchSize)
+                    .completionPredicate(batcher::isFull)
+                    .completionInterval(batchInterval)
+                    .forceCompletionOnStop()
+                    .executorService(getContext().getExecutorServiceManager()
+                            .newSingleThreadExecutor(this, "sparql-update-batches"))
+                    .to(ROUTE_SEND_SPARQL_UPDATE);
+        } else {
+            from(ROUTE_SPARQL_UPDATE)
+                    .routeId("sparql-update")
+                    .to(ROUTE_SEND_SPARQL_UPDATE);
+        }
+
+        // A batch is the exchange of its first update, so it carries that update's headers (e.g. the HTTP uri of the
+        // resource, for deletions). None of them belong in the request to the triple store.
+        from(ROUTE_SEND_SPARQL_UPDATE)
+                .routeId("send-sparql-update")
+                .removeHeaders("*")
+                .convertBodyTo(String.class)
+                .setHeader(Exchange.HTTP_METHOD, constant("POST"))
+                .setHeader(Exchange.CONTENT_TYPE, constant("application/sparql-update"))
+                .to("{{triplestore.baseUrl}}")
+                .process(batcher::sent)
+                .process(e -> SparqlUpdateBatcher.reindexed(e).forEach(reindexCheckpoint::add));
 
         from(ROUTE_TRIGGER_REINDEX)
                 .id("trigger-reindex")
                 .log(LoggingLevel.INFO, LOG,
                         "Triggering reindex to " + reindexStream +
                                 " due update to extension ${headers[CamelFcrepoUri]}")
+                .process(e -> reindexCheckpoint.clear())
                 .removeHeaders("*")
                 .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
                 .setBody(constant(String.format("[\"%s\"]", reindexStream)))
@@ -205,6 +405,14 @@ public class ServiceIndexingRoutes extends RouteBuilder {
                 .to("{{reindexing.service.uri}}");
     }
 
+    /* A re-indexed resource without service documents has no updates to wait for */
+    private void reindexedIfNoServiceDoc(final Exchange ex) {
+        final String uri = ex.getProperty(PROP_REINDEXED, String.class);
+        if (uri != null && ex.getIn().getHeader(HEADER_SERVICE_DOC, Collection.class).isEmpty()) {
+            reindexCheckpoint.add(uri);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     static final Processor GET_SERVICE_DOC_HEADER = ex -> {
 
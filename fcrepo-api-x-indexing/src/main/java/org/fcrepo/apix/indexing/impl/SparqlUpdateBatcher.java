@@ -0,0 +1,208 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.indexing.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Combines SPARQL updates into batches, and keeps statistics about them.
+ * <p>
+ * Updates are appended to a batch in the order they arrive, as successive operations of a single SPARQL update
+ * request. Operations in a request are performed in order, so updates to any given graph take effect in the same
+ * order as they would have if sent one at a time.
+ * </p>
+ * <p>
+ * The body of a batch is a {@link StringBuilder} until the batch is complete. A batch also carries the resources
+ * being re-indexed by its updates, so that they can be recorded as re-indexed once the batch has been sent.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class SparqlUpdateBatcher implements AggregationStrategy {
+
+    /** Exchange property with the number of updates in a batch */
+    static final String PROP_BATCH_SIZE = "CamelApixSparqlBatchSize";
+
+    /** Exchange property with the size of a batch, in bytes */
+    static final String PROP_BATCH_BYTES = "CamelApixSparqlBatchBytes";
+
+    /** Exchange property with the URI of the resource an update re-indexes, if any */
+    static final String PROP_REINDEXED = "CamelApixReindexed";
+
+    /** Exchange property with the URIs of resources re-indexed by a batch */
+    static final String PROP_BATCH_REINDEXED = "CamelApixSparqlBatchReindexed";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SparqlUpdateBatcher.class);
+
+    private final long maxBytes;
+
+    private final long reportInterval;
+
+    private final long started = System.nanoTime();
+
+    private final AtomicLong updates = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    private final AtomicLong lastReport = new AtomicLong(System.nanoTime());
+
+    /**
+     * Create a batcher.
+     *
+     * @param maxBytes size in bytes at which a batch is complete.
+     * @param reportInterval minimum time in milliseconds between logged reports of statistics.
+     */
+    public SparqlUpdateBatcher(final long maxBytes, final long reportInterval) {
+        this.maxBytes = maxBytes;
+        this.reportInterval = reportInterval;
+    }
+
+    @Override
+    public Exchange aggregate(final Exchange batch, final Exchange update) {
+        final String body = update.getIn().getBody(String.class);
+        final long size = body.getBytes(UTF_8).length;
+
+        if (batch == null) {
+            update.getIn().setBody(new StringBuilder(body));
+            update.setProperty(PROP_BATCH_SIZE, 1);
+            update.setProperty(PROP_BATCH_BYTES, size);
+            update.setProperty(PROP_BATCH_REINDEXED, new LinkedHashSet<>(reindexed(update)));
+            return update;
+        }
+
+        batch.getIn().getBody(StringBuilder.class).append(";\n").append(body);
+        batch.setProperty(PROP_BATCH_SIZE, batch.getProperty(PROP_BATCH_SIZE, Integer.class) + 1);
+        batch.setProperty(PROP_BATCH_BYTES, batch.getProperty(PROP_BATCH_BYTES, Long.class) + size);
+        batch.getProperty(PROP_BATCH_REINDEXED, Set.class).addAll(reindexed(update));
+        return batch;
+    }
+
+    /**
+     * Resources re-indexed by an update or batch of updates.
+     *
+     * @param ex an update, or a batch of updates.
+     * @return URIs of re-indexed resources, possibly empty.
+     */
+    @SuppressWarnings("unchecked")
+    static Collection<String> reindexed(final Exchange ex) {
+        final Collection<String> batch = ex.getProperty(PROP_BATCH_REINDEXED, Collection.class);
+        if (batch != null) {
+            return batch;
+        }
+
+        final String uri = ex.getProperty(PROP_REINDEXED, String.class);
+        return uri != null ? Collections.singleton(uri) : Collections.emptySet();
+    }
+
+    /* Whether a batch has reached its maximum size in bytes */
+    boolean isFull(final Exchange ex) {
+        return ex.getProperty(PROP_BATCH_BYTES, 0L, Long.class) >= maxBytes;
+    }
+
+    /* Record a batch as sent, and periodically log statistics */
+    void sent(final Exchange ex) {
+        final int size = ex.getProperty(PROP_BATCH_SIZE, 1, Integer.class);
+
+        updates.addAndGet(size);
+        batches.incrementAndGet();
+        bytes.addAndGet(ex.getProperty(PROP_BATCH_BYTES, 0L, Long.class));
+        maxBatchSize.accumulateAndGet(size, Math::max);
+
+        LOG.debug("Sent batch of {} SPARQL updates", size);
+
+        final long now = System.nanoTime();
+        final long last = lastReport.get();
+        if (now - last >= reportInterval * 1000000 && lastReport.compareAndSet(last, now)) {
+            LOG.info("Sent {} SPARQL updates in {} batches (mean size {}, max {}), {} updates/s",
+                    getUpdates(), getBatches(), String.format("%.1f", getMeanBatchSize()), getMaxBatchSize(),
+                    String.format("%.1f", getThroughput()));
+        }
+    }
+
+    /**
+     * Number of updates sent.
+     *
+     * @return update count.
+     */
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    /**
+     * Number of batches sent.
+     *
+     * @return batch count.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Total size of all batches sent.
+     *
+     * @return size in bytes.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Mean number of updates per batch.
+     *
+     * @return mean batch size, or zero if no batches have been sent.
+     */
+    public double getMeanBatchSize() {
+        final long sent = batches.get();
+        return sent == 0 ? 0 : (double) updates.get() / sent;
+    }
+
+    /**
+     * Largest number of updates in a single batch.
+     *
+     * @return maximum batch size.
+     */
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * Mean number of updates sent per second, since the batcher was created.
+     *
+     * @return updates per second.
+     */
+    public double getThroughput() {
+        final double seconds = (System.nanoTime() - started) / 1e9;
+        return seconds > 0 ? updates.get() / seconds : 0;
+    }
+}
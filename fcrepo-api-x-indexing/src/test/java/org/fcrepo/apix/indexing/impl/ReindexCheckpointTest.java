@@ -0,0 +1,113 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.indexing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests recording re-index progress.
+ *
+ * @author apb@jhu.edu
+ */
+public class ReindexCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Verifies that resources are remembered until a new run is started
+    @Test
+    public void addClearTest() throws Exception {
+        final ReindexCheckpoint checkpoint = new ReindexCheckpoint(null, 60000, 0);
+        checkpoint.start();
+
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(checkpoint.add("http://example.org/" + i));
+        }
+        assertFalse(checkpoint.add("http://example.org/10"));
+        assertTrue(checkpoint.contains("http://example.org/4999"));
+        assertFalse(checkpoint.contains("http://example.org/5000"));
+        assertEquals(5000, checkpoint.getCompleted());
+        assertEquals(-1, checkpoint.getEta());
+
+        checkpoint.clear();
+        assertFalse(checkpoint.contains("http://example.org/10"));
+        assertEquals(0, checkpoint.getCompleted());
+        assertEquals(5000, checkpoint.getEstimatedTotal());
+
+        checkpoint.add("http://example.org/10");
+        assertTrue(checkpoint.getEta() >= 0);
+    }
+
+    // Verifies that a new run starts once the previous one has been idle for the idle timeout
+    @Test
+    public void idleTimeoutTest() throws Exception {
+        final ReindexCheckpoint checkpoint = new ReindexCheckpoint(null, 60000, 200);
+        checkpoint.start();
+
+        checkpoint.add("http://example.org/a");
+        assertTrue(checkpoint.contains("http://example.org/a"));
+
+        Thread.sleep(300);
+
+        assertFalse(checkpoint.contains("http://example.org/a"));
+        assertEquals(0, checkpoint.getCompleted());
+        assertEquals(1, checkpoint.getEstimatedTotal());
+    }
+
+    // Verifies that a run is resumed from the checkpoint file
+    @Test
+    public void resumeTest() throws Exception {
+        final String file = new File(folder.getRoot(), "dir/checkpoint").getPath();
+
+        final ReindexCheckpoint first = new ReindexCheckpoint(file, 60000, 0);
+        first.start();
+        first.add("http://example.org/a");
+        first.clear();
+        first.add("http://example.org/b");
+        first.add("http://example.org/c");
+        final long started = first.getStarted();
+        first.stop();
+
+        final ReindexCheckpoint resumed = new ReindexCheckpoint(file, 60000, 0);
+        resumed.start();
+
+        assertFalse(resumed.contains("http://example.org/a"));
+        assertTrue(resumed.contains("http://example.org/b"));
+        assertTrue(resumed.contains("http://example.org/c"));
+        assertEquals(2, resumed.getCompleted());
+        assertEquals(2, resumed.getEstimatedTotal());
+        assertEquals(started, resumed.getStarted());
+
+        resumed.add("http://example.org/d");
+        resumed.stop();
+
+        final ReindexCheckpoint again = new ReindexCheckpoint(file, 60000, 0);
+        again.start();
+        assertEquals(3, again.getCompleted());
+        again.stop();
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.indexing.impl;
+
+import static org.fcrepo.apix.indexing.impl.ServiceIndexingRoutes.ROUTE_EVENT_PROCESOR;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWithRouteBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.blueprint.CamelBlueprintTestSupport;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.update.UpdateAction;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests batching of SPARQL updates sent to the triple store.
+ *
+ * @author apb@jhu.edu
+ */
+@SuppressWarnings("serial")
+public class ServiceIndexingBatchTest extends CamelBlueprintTestSupport {
+
+    private static final String RESOURCE_CREATION = "http://fedora.info/definitions/v4/event#ResourceCreation";
+
+    private static final String RESOURCE_DELETION = "http://fedora.info/definitions/v4/event#ResourceDeletion";
+
+    @EndpointInject(uri = "mock:triplestore")
+    protected MockEndpoint tripleStoreEndpoint;
+
+    @Produce(uri = "direct:start")
+    protected ProducerTemplate indexer;
+
+    @Produce(uri = "direct:test_reindex")
+    protected ProducerTemplate reindexer;
+
+    @Override
+    protected String getBlueprintDescriptor() {
+        return "OSGI-INF/blueprint/blueprint-test.xml";
+    }
+
+    @Override
+    public boolean isUseAdviceWith() {
+        return true;
+    }
+
+    @Override
+    public boolean isUseRouteBuilder() {
+        return true;
+    }
+
+    @Override
+    protected String setConfigAdminInitialConfiguration(final Properties props) {
+        props.put("service.index.stream", "direct:test_index");
+        props.put("service.reindex.stream", "direct:test_reindex");
+        props.put("reindexing.service.uri", "mock:reindex");
+        props.put("triplestore.baseUrl", "mock:triplestore");
+        props.put("ldp.path.extension.container", "http://example.org/extensions");
+        props.put("triplestore.batch.size", "4");
+        props.put("triplestore.batch.intervalMs", "60000");
+        return "org.fcrepo.apix.indexing";
+    }
+
+    @Before
+    public void init() throws Exception {
+        context.start();
+    }
+
+    @Override
+    public void doPostSetup() throws Exception {
+        super.doPostSetup();
+
+        context.getRouteDefinition("from-index-stream").adviceWith(context, new AdviceWithRouteBuilder() {
+
+            @Override
+            public void configure() throws Exception {
+                replaceFromWith("direct:start");
+                interceptSendToEndpoint(ROUTE_EVENT_PROCESOR).skipSendToOriginalEndpoint().to("log:foo");
+            }
+        });
+
+        // Each service document contains a single triple, naming the service document
+        context.getRouteDefinition("perform-index").adviceWith(context, new AdviceWithRouteBuilder() {
+
+            @Override
+            public void configure() throws Exception {
+                interceptSendToEndpoint("http://perform-index").skipSendToOriginalEndpoint().process(ex -> {
+                    ex.getIn().setBody(String.format("<test:doc> <test:is> <%s> .", ex.getIn().getHeader(
+                            Exchange.HTTP_URI)));
+                    ex.getIn().setHeader("Content-Type", "text/turtle");
+                });
+            }
+        });
+
+        context.getRouteDefinition("get-servicedoc-uri").adviceWith(context, new AdviceWithRouteBuilder() {
+
+            @Override
+            public void configure() throws Exception {
+                interceptSendToEndpoint("http://get-servicedoc-uri*")
+                        .skipSendToOriginalEndpoint().to("direct:apix-head");
+            }
+        });
+
+        // The service document of each resource is named after it
+        new RouteBuilder() {
+
+            @Override
+            public void configure() throws Exception {
+                from("direct:apix-head")
+                        .process(ex -> ex.getIn().setHeader("Link", Arrays.asList(String.format(
+                                "<%s/svc>; rel=\"service\"", ex.getIn().getHeader(FCREPO_URI)))));
+            }
+        }.addRoutesToCamelContext(context);
+    }
+
+    // Verifies that updates are sent in a single request, in order.
+    @Test
+    public void batchTest() throws Exception {
+        send("test:a", RESOURCE_CREATION);
+        send("test:b", RESOURCE_CREATION);
+        send("test:a", RESOURCE_DELETION);
+        send("test:c", RESOURCE_CREATION);
+
+        tripleStoreEndpoint.setExpectedCount(1);
+        assertMockEndpointsSatisfied();
+
+        final Dataset dataset = DatasetFactory.create();
+        UpdateAction.parseExecute(tripleStoreEndpoint.getExchanges().get(0).getIn().getBody(String.class), dataset);
+
+        // The deletion of a follows its creation
+        assertTrue(dataset.getNamedModel("test:a/svc").isEmpty());
+        assertEquals(1, dataset.getNamedModel("test:b/svc").size());
+        assertEquals(1, dataset.getNamedModel("test:c/svc").size());
+
+        final SparqlUpdateBatcher stats = context.getRegistry().lookupByNameAndType("indexerRoutes",
+                ServiceIndexingRoutes.class).getUpdateStatistics();
+        assertEquals(4, stats.getUpdates());
+        assertEquals(1, stats.getBatches());
+        assertEquals(4, stats.getMaxBatchSize());
+        assertEquals(4.0, stats.getMeanBatchSize(), 0.0);
+    }
+
+    // Verifies that a batch started by a deletion isn't sent with headers of the deleted resource
+    @Test
+    public void deleteStartsBatchTest() throws Exception {
+        send("test:a", RESOURCE_DELETION);
+        send("test:b", RESOURCE_CREATION);
+        send("test:c", RESOURCE_CREATION);
+        send("test:d", RESOURCE_CREATION);
+
+        tripleStoreEndpoint.setExpectedCount(1);
+        assertMockEndpointsSatisfied();
+
+        final Exchange batch = tripleStoreEndpoint.getExchanges().get(0);
+        assertNull(batch.getIn().getHeader(Exchange.HTTP_URI));
+        assertNull(batch.getIn().getHeader(FCREPO_URI));
+        assertEquals("POST", batch.getIn().getHeader(Exchange.HTTP_METHOD));
+        assertEquals("application/sparql-update", batch.getIn().getHeader(Exchange.CONTENT_TYPE));
+    }
+
+    // Verifies that re-indexed resources are batched, and recorded as re-indexed once their batch is sent
+    @Test
+    public void reindexBatchTest() throws Exception {
+        final ReindexCheckpoint progress = reindexProgress();
+
+        reindex("test:a", "test:b", "test:c");
+        assertEquals(0, progress.getCompleted());
+        reindex("test:d");
+
+        tripleStoreEndpoint.setExpectedCount(1);
+        assertMockEndpointsSatisfied();
+        assertEquals(4, awaitCompleted(progress, 4));
+    }
+
+    // Verifies that resources in a batch the triple store rejects are not recorded as re-indexed
+    @Test
+    public void reindexFailedBatchTest() throws Exception {
+        final ReindexCheckpoint progress = reindexProgress();
+
+        tripleStoreEndpoint.whenExchangeReceived(1, ex -> {
+            throw new IOException("Triple store unavailable");
+        });
+
+        reindex("test:a", "test:b", "test:c", "test:d");
+        tripleStoreEndpoint.setExpectedCount(1);
+        assertMockEndpointsSatisfied();
+        assertEquals(0, progress.getCompleted());
+
+        // Delivered again, they are re-indexed
+        reindex("test:a", "test:b", "test:c", "test:d");
+        tripleStoreEndpoint.setExpectedCount(2);
+        assertMockEndpointsSatisfied();
+        assertEquals(4, awaitCompleted(progress, 4));
+    }
+
+    private ReindexCheckpoint reindexProgress() {
+        return context.getRegistry().lookupByNameAndType("indexerRoutes", ServiceIndexingRoutes.class)
+                .getReindexProgress();
+    }
+
+    // Batches are recorded as re-indexed on the batch thread, once the triple store responds
+    private long awaitCompleted(final ReindexCheckpoint progress, final long expected) throws InterruptedException {
+        for (int i = 0; i < 100 && progress.getCompleted() < expected; i++) {
+            Thread.sleep(10);
+        }
+        return progress.getCompleted();
+    }
+
+    private void reindex(final String... uris) {
+        for (final String uri : uris) {
+            reindexer.sendBodyAndHeader(null, FCREPO_URI, uri);
+        }
+    }
+
+    private void send(final String uri, final String eventType) {
+        indexer.sendBodyAndHeaders(null, new HashMap<String, Object>() {
+
+            {
+                put(FCREPO_URI, uri);
+                put(FCREPO_EVENT_TYPE, Arrays.asList(eventType));
+            }
+        });
+    }
+}
@@ -22,11 +22,13 @@ import static org.fcrepo.apix.indexing.impl.ServiceIndexingRoutes.ROUTE_EVENT_PR
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Properties;
 
+import org.apache.camel.CamelExecutionException;
 import org.apache.camel.EndpointInject;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
@@ -102,6 +104,8 @@ public class ServiceIndexingRoutesTest extends CamelBlueprintTestSupport {
         props.put("service.reindex.stream", REINDEX_STREAM);
         props.put("reindexing.service.uri", "mock:reindex");
         props.put("triplestore.baseUrl", "mock:triplestore");
+        // Send each update on its own; batching is tested separately
+        props.put("triplestore.batch.size", "1");
         props.put("ldp.path.extension.container", EXTENSION_BASEURI);
         return "org.fcrepo.apix.indexing";
     }
@@ -383,4 +387,71 @@ public class ServiceIndexingRoutesTest extends CamelBlueprintTestSupport {
                 afterUpdate.getProperty(EXPECTED_PREDICATE),
                 afterUpdate.getResource(EXPECTED_OBJECT)));
     }
+
+    // Verifies that resources already re-indexed in a run are skipped, until a new run is triggered
+    @Test
+    public void testReindexSkipsCompleted() throws Exception {
+        final ReindexCheckpoint progress = context.getRegistry().lookupByNameAndType("indexerRoutes",
+                ServiceIndexingRoutes.class).getReindexProgress();
+
+        reindex.sendBodyAndHeader(null, FCREPO_URI, "http://example.org/test");
+        tripleStoreEndpoint.setExpectedCount(1);
+        assertMockEndpointsSatisfied();
+
+        // Re-index messages are processed on another thread, which records completion after sending the update
+        for (int i = 0; i < 100 && progress.getCompleted() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, progress.getCompleted());
+
+        // Delivered again in the same run
+        reindex.sendBodyAndHeader(null, FCREPO_URI, "http://example.org/test");
+        tripleStoreEndpoint.setAssertPeriod(500);
+        assertMockEndpointsSatisfied();
+
+        // A new run re-indexes it again
+        indexer.sendBodyAndHeaders(null, new HashMap<String, Object>() {
+
+            {
+                put(FCREPO_URI, EXTENSION_BASEURI + "/whatever");
+                put(FCREPO_EVENT_TYPE, Arrays.asList(RESOURCE_MODIFICATION));
+            }
+        });
+        reindex.sendBodyAndHeader(null, FCREPO_URI, "http://example.org/test");
+
+        tripleStoreEndpoint.setExpectedCount(3);
+        assertMockEndpointsSatisfied();
+        assertEquals(1, progress.getCompleted());
+        assertEquals(1, progress.getEstimatedTotal());
+    }
+
+    // Verifies that a resource is not recorded as re-indexed if the triple store rejects its update
+    @Test
+    public void testReindexTripleStoreFailure() throws Exception {
+        final ReindexCheckpoint progress = context.getRegistry().lookupByNameAndType("indexerRoutes",
+                ServiceIndexingRoutes.class).getReindexProgress();
+
+        tripleStoreEndpoint.whenExchangeReceived(1, ex -> {
+            throw new IOException("Triple store unavailable");
+        });
+
+        // The failure fails re-indexing the resource
+        try {
+            reindex.sendBodyAndHeader(null, FCREPO_URI, "http://example.org/test");
+            fail("Expected re-indexing to fail");
+        } catch (final CamelExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(0, progress.getCompleted());
+
+        // Delivered again, once the triple store is back
+        reindex.sendBodyAndHeader(null, FCREPO_URI, "http://example.org/test");
+        tripleStoreEndpoint.setExpectedCount(2);
+        assertMockEndpointsSatisfied();
+
+        for (int i = 0; i < 100 && progress.getCompleted() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, progress.getCompleted());
+    }
 }
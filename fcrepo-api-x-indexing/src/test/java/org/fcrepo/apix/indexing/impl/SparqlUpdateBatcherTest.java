@@ -0,0 +1,101 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.indexing.impl;
+
+import static org.fcrepo.apix.indexing.impl.SparqlUpdateBatcher.PROP_BATCH_BYTES;
+import static org.fcrepo.apix.indexing.impl.SparqlUpdateBatcher.PROP_BATCH_SIZE;
+import static org.fcrepo.apix.indexing.impl.SparqlUpdateBatcher.PROP_REINDEXED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Test;
+
+/**
+ * Tests combining SPARQL updates into batches.
+ *
+ * @author apb@jhu.edu
+ */
+public class SparqlUpdateBatcherTest {
+
+    final CamelContext context = new DefaultCamelContext();
+
+    // Verifies that updates are appended in order, and batches are full once large enough
+    @Test
+    public void aggregateTest() {
+        final SparqlUpdateBatcher batcher = new SparqlUpdateBatcher(20, 60000);
+
+        Exchange batch = batcher.aggregate(null, update("DELETE 1"));
+        assertEquals(1, (int) batch.getProperty(PROP_BATCH_SIZE, Integer.class));
+        assertFalse(batcher.isFull(batch));
+
+        batch = batcher.aggregate(batch, update("INSERT 2"));
+        assertFalse(batcher.isFull(batch));
+
+        batch = batcher.aggregate(batch, update("DELETE 3"));
+        assertTrue(batcher.isFull(batch));
+
+        assertEquals("DELETE 1;\nINSERT 2;\nDELETE 3", batch.getIn().getBody(String.class));
+        assertEquals(3, (int) batch.getProperty(PROP_BATCH_SIZE, Integer.class));
+        assertEquals(24L, (long) batch.getProperty(PROP_BATCH_BYTES, Long.class));
+
+        batcher.sent(batch);
+        batcher.sent(batcher.aggregate(null, update("DELETE 4")));
+
+        assertEquals(4, batcher.getUpdates());
+        assertEquals(2, batcher.getBatches());
+        assertEquals(3, batcher.getMaxBatchSize());
+        assertEquals(2.0, batcher.getMeanBatchSize(), 0.0);
+        assertEquals(32, batcher.getBytes());
+    }
+
+    // Verifies that a batch carries the resources re-indexed by its updates
+    @Test
+    public void reindexedTest() {
+        final SparqlUpdateBatcher batcher = new SparqlUpdateBatcher(1000, 60000);
+
+        final Exchange first = update("INSERT 1");
+        first.setProperty(PROP_REINDEXED, "test:a");
+        assertEquals(Collections.singleton("test:a"), SparqlUpdateBatcher.reindexed(first));
+
+        Exchange batch = batcher.aggregate(null, first);
+        batch = batcher.aggregate(batch, update("INSERT 2"));
+
+        final Exchange third = update("INSERT 3");
+        third.setProperty(PROP_REINDEXED, "test:b");
+        batch = batcher.aggregate(batch, third);
+
+        assertEquals(Arrays.asList("test:a", "test:b"), new ArrayList<>(SparqlUpdateBatcher.reindexed(batch)));
+        assertTrue(SparqlUpdateBatcher.reindexed(update("INSERT 4")).isEmpty());
+    }
+
+    private Exchange update(final String sparql) {
+        final Exchange ex = new DefaultExchange(context);
+        ex.getIn().setBody(sparql);
+        return ex;
+    }
+}
@@ -164,6 +164,8 @@ public interface KarafIT {
                     "project.basedir")),
             editConfigurationFilePut("/etc/system.properties", "fcrepo.cxtPath", System.getProperty(
                     "fcrepo.cxtPath")),
+            editConfigurationFilePut("/etc/system.properties", "streaming.benchmark.bytes", System.getProperty(
+                    "streaming.benchmark.bytes", "268435456")),
             editConfigurationFilePut("/etc/system.properties", "test.container", container),
             editConfigurationFilePut("/etc/system.properties", "registry.extension.container", container +
                     "/extensions"),
@@ -28,12 +28,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 
@@ -71,6 +75,12 @@ public class StreamingIT implements KarafIT {
 
     private static final String INTERCEPT_ROUTE_ID = "execute-intercept";
 
+    /* Proxies requests to resources without intercepting extensions, bypassing INTERCEPT_ROUTE_ID */
+    private static final String BYPASS_ROUTE_ID = "bypass-intercept";
+
+    /* Heap that may be retained while streaming, regardless of payload size */
+    private static final long MAX_RETAINED_HEAP = 16 * 1024 * 1024;
+
     private static final String CONTEXT_NAME = "apix-core";
 
     private static final String CONTEXT_ROLE = "routing-context";
@@ -168,6 +178,7 @@ public class StreamingIT implements KarafIT {
         assertNotNull("No context", ctx);
         assertEquals("Unexpected context " + ctx.getName(), CONTEXT_NAME, ctx.getName());
         assertNotNull("No route (ctx name: " + ctx.getName() + ")", ctx.getRouteDefinition(INTERCEPT_ROUTE_ID));
+        assertNotNull("No route (ctx name: " + ctx.getName() + ")", ctx.getRouteDefinition(BYPASS_ROUTE_ID));
     }
 
     /**
@@ -178,15 +189,9 @@ public class StreamingIT implements KarafIT {
     @Test
     public void testRetrieveLargeBinaryFromFedora() throws Exception {
 
-        // Record 'true' if the intercepting route is triggered
+        // Record 'true' if the request is proxied by API-X
         final AtomicBoolean intercepted = new AtomicBoolean(false);
-        ctx.getRouteDefinition(INTERCEPT_ROUTE_ID).adviceWith((ModelCamelContext) ctx, new AdviceWithRouteBuilder() {
-
-            @Override
-            public void configure() throws Exception {
-                weaveAddFirst().process((ex) -> intercepted.set(true));
-            }
-        });
+        adviseProxyRoutes(intercepted);
 
         final long expectedSize = (2 * 1024 * 1024) + 1;
         final long actualSize;
@@ -204,7 +209,7 @@ public class StreamingIT implements KarafIT {
 
         // And the request was not proxied by API-X
         assertFalse(String.format("Unexpected interception of a Fedora resource URI %s by route %s",
-                binaryResource.toString(), INTERCEPT_ROUTE_ID), intercepted.get());
+                binaryResource.toString(), INTERCEPT_ROUTE_ID + " or " + BYPASS_ROUTE_ID), intercepted.get());
     }
 
     /**
@@ -216,15 +221,9 @@ public class StreamingIT implements KarafIT {
     @Test
     public void testRetrieveLargeBinaryFromApix() throws Exception {
 
-        // Record 'true' if the intercepting route is triggered
+        // Record 'true' if the request is proxied by API-X
         final AtomicBoolean intercepted = new AtomicBoolean(false);
-        ctx.getRouteDefinition(INTERCEPT_ROUTE_ID).adviceWith((ModelCamelContext) ctx, new AdviceWithRouteBuilder() {
-
-            @Override
-            public void configure() throws Exception {
-                weaveAddFirst().process((ex) -> intercepted.set(true));
-            }
-        });
+        adviseProxyRoutes(intercepted);
 
         final long expectedSize = (2 * 1024 * 1024) + 1;
         final long actualSize;
@@ -239,13 +238,113 @@ public class StreamingIT implements KarafIT {
 
         // The request _was_ proxied by API-X
         assertTrue(String.format("Expected the retrieval of %s to be proxied by API-X, route id %s",
-                proxiedResource, INTERCEPT_ROUTE_ID), intercepted.get());
+                proxiedResource, INTERCEPT_ROUTE_ID + " or " + BYPASS_ROUTE_ID), intercepted.get());
 
         // And resource can be retrieved intact
         assertEquals(expectedSize, actualSize);
         assertEquals(binaryResourceSha, actualDigest);
     }
 
+    /**
+     * Verify that uploading and downloading a payload through API-X retains no more than a fixed amount of heap,
+     * regardless of the size of the payload.
+     * <p>
+     * The payload size is given by the <code>streaming.benchmark.bytes</code> system property. For a conclusive run,
+     * it should be larger than the maximum heap of the Karaf container (e.g. several GB).
+     * </p>
+     *
+     * @throws Exception if unexpected things go wrong
+     */
+    @Test
+    public void testConstantHeapStreamingThroughApix() throws Exception {
+        final long size = Long.parseLong(System.getProperty("streaming.benchmark.bytes", "268435456"));
+
+        final AtomicBoolean intercepted = new AtomicBoolean(false);
+        adviseProxyRoutes(intercepted);
+
+        System.gc();
+        final long baseline = retainedHeap();
+        final AtomicLong peak = new AtomicLong(baseline);
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        final Thread sampler = new Thread(() -> {
+            while (!done.get()) {
+                peak.accumulateAndGet(retainedHeap(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+
+        final long start = System.currentTimeMillis();
+        final URI uploaded;
+        final long downloaded;
+        try {
+            try (InputStream body = new NullInputStream(size)) {
+                uploaded = postFromStream(body, proxied(binaryContainer), "application/octet-stream",
+                        "streamed-" + System.currentTimeMillis());
+            }
+
+            try (FcrepoResponse r = client.get(proxied(uploaded)).perform()) {
+                downloaded = drain(r.getBody());
+            }
+        } finally {
+            done.set(true);
+            sampler.join();
+        }
+
+        LOG.info("Streamed {} bytes up and down through API-X in {} ms; retained heap baseline {}, peak {}",
+                size, System.currentTimeMillis() - start, baseline, peak.get());
+
+        assertTrue("Expected the upload to be proxied by API-X", intercepted.get());
+        assertEquals(size, downloaded);
+        assertTrue(String.format("Retained heap grew by %s bytes while streaming %s bytes, expected at most %s",
+                peak.get() - baseline, size, MAX_RETAINED_HEAP), peak.get() - baseline < MAX_RETAINED_HEAP);
+    }
+
+    /**
+     * Record when API-X proxies a request to Fedora, whether or not it is intercepted.
+     * <p>
+     * Requests to resources with no intercepting extensions bound are handled by {@link #BYPASS_ROUTE_ID} rather
+     * than {@link #INTERCEPT_ROUTE_ID}.
+     * </p>
+     *
+     * @param proxied set to true when a request is proxied.
+     * @throws Exception if the routes cannot be advised
+     */
+    private void adviseProxyRoutes(final AtomicBoolean proxied) throws Exception {
+        for (final String routeId : new String[] { INTERCEPT_ROUTE_ID, BYPASS_ROUTE_ID }) {
+            ctx.getRouteDefinition(routeId).adviceWith((ModelCamelContext) ctx, new AdviceWithRouteBuilder() {
+
+                @Override
+                public void configure() throws Exception {
+                    weaveAddFirst().process((ex) -> proxied.set(true));
+                }
+            });
+        }
+    }
+
+    /**
+     * Heap in use after the most recent garbage collection, summed over all heap memory pools.
+     * <p>
+     * Short-lived copy buffers do not survive collection, so this only grows if content is retained.
+     * </p>
+     *
+     * @return bytes
+     */
+    private static long retainedHeap() {
+        long retained = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                retained += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return retained;
+    }
+
     /**
      * Returns true if the URI exists (i.e. responds with a 200 to a HEAD request).
      *
@@ -33,6 +33,12 @@ import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.ResourceNotFoundException;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.query.QueryExecutionFactory;
@@ -340,4 +346,35 @@ public abstract class Util {
     public static WebResource rdfResource(final String uri, final String rdf) {
         return rdfResource(uri, rdf, null);
     }
+
+    /**
+     * Determine the current validator of a resource, via a HEAD request.
+     *
+     * @param client http client, may be null.
+     * @param uri URI of the resource.
+     * @return The resource's ETag, or its Last-Modified date if it has none. Null if there is no client, or neither
+     *         could be determined.
+     */
+    public static String validatorOf(final CloseableHttpClient client, final URI uri) {
+        if (client == null) {
+            return null;
+        }
+
+        try (CloseableHttpResponse response = client.execute(new HttpHead(uri))) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                return null;
+            }
+
+            final Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+            if (etag != null) {
+                return etag.getValue();
+            }
+
+            final Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            return lastModified != null ? lastModified.getValue() : null;
+        } catch (final Exception e) {
+            LOG.debug("Could not determine validator of {}", uri, e);
+            return null;
+        }
+    }
 }
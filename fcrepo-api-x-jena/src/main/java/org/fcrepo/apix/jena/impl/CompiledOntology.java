@@ -0,0 +1,214 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.jena.impl;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.rdf.model.InfModel;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.reasoner.Reasoner;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+/**
+ * Read-only, precompiled form of an ontology whose imports have been resolved.
+ * <p>
+ * Compilation materializes the subclass closure of every named class in the ontology once, so that the classes of an
+ * individual can be determined by looking up its asserted <code>rdf:type</code>s. Domains and ranges of properties
+ * (including those inherited from super-properties) are materialized into class closures too, and looked up by the
+ * predicates of the individual's triples. If the ontology contains class expressions that make class membership
+ * depend on an individual's other properties (restrictions, boolean class expressions, enumerations), a reasoner
+ * pre-bound to the ontology is used instead, which only has to reason over the individual's own triples.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class CompiledOntology {
+
+    /** Predicates whose presence means that class membership can't be determined from asserted types alone. */
+    static final List<Property> INSTANCE_DEPENDENT = Arrays.asList(
+            OWL.onProperty,
+            OWL.intersectionOf,
+            OWL.unionOf,
+            OWL.complementOf,
+            OWL.oneOf,
+            OWL.sameAs);
+
+    final OntModel model;
+
+    private final Map<String, Set<String>> superClasses;
+
+    private final Map<String, Set<String>> domains;
+
+    private final Map<String, Set<String>> ranges;
+
+    private final boolean requiresInstanceReasoning;
+
+    private final Reasoner reasoner;
+
+    /**
+     * Compile an ontology.
+     *
+     * @param model Ontology model, with all imports resolved. Will not be modified, and must not be modified by the
+     *        caller afterwards.
+     */
+    CompiledOntology(final OntModel model) {
+        this.model = model;
+
+        final Reasoner specReasoner = model.getSpecification().getReasoner();
+        final Model schema = specReasoner != null ? model : model.getBaseModel();
+
+        this.superClasses = closureOf(schema, RDFS.subClassOf);
+
+        final Map<String, Set<String>> superProperties = closureOf(schema, RDFS.subPropertyOf);
+        this.domains = classesOf(schema, RDFS.domain, superProperties);
+        this.ranges = classesOf(schema, RDFS.range, superProperties);
+
+        this.requiresInstanceReasoning = specReasoner != null && INSTANCE_DEPENDENT.stream()
+                .anyMatch(p -> model.getBaseModel().contains(null, p));
+
+        this.reasoner = requiresInstanceReasoning ? specReasoner.bindSchema(model.getBaseModel()) : null;
+    }
+
+    /* Transitive closure of a hierarchy such as rdfs:subClassOf */
+    private static Map<String, Set<String>> closureOf(final Model schema, final Property hierarchy) {
+        final Map<String, Set<String>> closure = new HashMap<>();
+
+        for (final Statement s : schema.listStatements(null, hierarchy, (RDFNode) null).toList()) {
+            if (s.getSubject().isURIResource() && s.getObject().isURIResource()) {
+                closure.computeIfAbsent(s.getSubject().getURI(), k -> new HashSet<>())
+                        .add(s.getObject().asResource().getURI());
+            }
+        }
+
+        // The reasoner has already computed the transitive closure, but do so here too in case there was none.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (final Set<String> supers : closure.values()) {
+                for (final String sup : new HashSet<>(supers)) {
+                    changed |= supers.addAll(closure.getOrDefault(sup, Collections.emptySet()));
+                }
+            }
+        }
+
+        closure.replaceAll((k, v) -> Collections.unmodifiableSet(v));
+        return Collections.unmodifiableMap(closure);
+    }
+
+    /* Classes implied by using a property, according to rdfs:domain or rdfs:range, closed over super-classes */
+    private Map<String, Set<String>> classesOf(final Model schema, final Property domainOrRange,
+            final Map<String, Set<String>> superProperties) {
+        final Map<String, Set<String>> direct = new HashMap<>();
+
+        for (final Statement s : schema.listStatements(null, domainOrRange, (RDFNode) null).toList()) {
+            if (s.getSubject().isURIResource() && s.getObject().isURIResource()) {
+                direct.computeIfAbsent(s.getSubject().getURI(), k -> new HashSet<>())
+                        .add(s.getObject().asResource().getURI());
+            }
+        }
+
+        final Set<String> properties = new HashSet<>(direct.keySet());
+        properties.addAll(superProperties.keySet());
+
+        final Map<String, Set<String>> classes = new HashMap<>();
+        for (final String property : properties) {
+            final Set<String> implied = new HashSet<>(direct.getOrDefault(property, Collections.emptySet()));
+            superProperties.getOrDefault(property, Collections.emptySet())
+                    .forEach(sup -> implied.addAll(direct.getOrDefault(sup, Collections.emptySet())));
+
+            for (final String c : new HashSet<>(implied)) {
+                implied.addAll(superClasses.getOrDefault(c, Collections.emptySet()));
+            }
+
+            if (!implied.isEmpty()) {
+                classes.put(property, Collections.unmodifiableSet(implied));
+            }
+        }
+
+        return Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * Determine if inferring classes requires reasoning over the individual's triples.
+     *
+     * @return true if a reasoner is needed, false if a type lookup suffices.
+     */
+    boolean requiresInstanceReasoning() {
+        return requiresInstanceReasoning;
+    }
+
+    /**
+     * Infer the classes of an individual.
+     *
+     * @param individual URI of the individual.
+     * @param instance triples describing the individual. Will not be modified.
+     * @return All named classes of the individual, or empty if the instance says nothing about the individual.
+     */
+    Set<URI> inferClasses(final String individual, final Model instance) {
+
+        final Resource subject = instance.getResource(individual);
+
+        if (!instance.contains(subject, null)) {
+            return Collections.emptySet();
+        }
+
+        final Set<URI> classes = new HashSet<>();
+
+        if (requiresInstanceReasoning) {
+            final InfModel inf = ModelFactory.createInfModel(reasoner, instance);
+            inf.listObjectsOfProperty(inf.getResource(individual), RDF.type)
+                    .filterKeep(RDFNode::isURIResource)
+                    .forEachRemaining(t -> classes.add(URI.create(t.asResource().getURI())));
+        } else {
+            instance.listObjectsOfProperty(subject, RDF.type)
+                    .filterKeep(RDFNode::isURIResource)
+                    .mapWith(t -> t.asResource().getURI())
+                    .forEachRemaining(t -> {
+                        classes.add(URI.create(t));
+                        superClasses.getOrDefault(t, Collections.emptySet())
+                                .forEach(c -> classes.add(URI.create(c)));
+                    });
+
+            instance.listStatements(subject, null, (RDFNode) null)
+                    .forEachRemaining(s -> domains.getOrDefault(s.getPredicate().getURI(), Collections.emptySet())
+                            .forEach(c -> classes.add(URI.create(c))));
+
+            instance.listStatements(null, null, subject)
+                    .forEachRemaining(s -> ranges.getOrDefault(s.getPredicate().getURI(), Collections.emptySet())
+                            .forEach(c -> classes.add(URI.create(c))));
+        }
+
+        return classes;
+    }
+}
@@ -18,12 +18,25 @@
 
 package org.fcrepo.apix.jena.impl;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.fcrepo.apix.model.components.Initializer;
 
@@ -31,9 +44,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Simple threaded initialization initializer.
+ * Threaded initialization initializer.
+ * <p>
+ * Executes initialization tasks on a bounded pool of threads. Failed attempts are re-scheduled with exponential
+ * backoff and jitter, rather than retried in a loop, so that a pool thread is never held while waiting for a retry,
+ * and so that initializers failing against the same unavailable resource do not all retry in lockstep.
+ * </p>
+ * <p>
+ * Tasks with dependencies are not scheduled until all of their dependencies have succeeded. A task that awaits some
+ * other, unfinished, initialization from within a pool thread waits at most the initial retry interval before
+ * failing that attempt, so that it may be retried later without tying up the pool.
+ * </p>
  * <p>
- * Executes each initialization task in its own thread, unbounded.
+ * The time taken by each initialization (and by each startup phase as a whole) is logged, and is available via
+ * {@link #getTimings()}.
  * </p>
  * TODO: Find a more appropriate home for this, it's not specifically Jena-related.
  *
@@ -43,10 +67,30 @@ public class InitMgr implements Initializer {
 
     static final Logger LOG = LoggerFactory.getLogger(InitMgr.class);
 
+    /** Initialization whose task is running in the current thread, if any */
+    static final ThreadLocal<Task> CURRENT = new ThreadLocal<>();
+
     long retryWait = 1000;
 
+    long maxRetryWait = 30000;
+
+    int maxThreads = 4;
+
+    private ScheduledExecutorService executor;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private volatile long phaseStart;
+
+    private final Map<String, Long> timings = new ConcurrentHashMap<>();
+
     /**
-     * Set delay between retries.
+     * Set initial delay between retries.
+     * <p>
+     * Each subsequent failure doubles the delay, up to {@link #setMaxRetryWait(long)}.
+     * </p>
      *
      * @param millis Retry in ms.
      */
@@ -54,86 +98,244 @@ public class InitMgr implements Initializer {
         this.retryWait = millis;
     }
 
-    final ExecutorService executor = Executors.newCachedThreadPool();
+    /**
+     * Set the maximum delay between retries.
+     *
+     * @param millis Maximum retry delay in ms.
+     */
+    public void setMaxRetryWait(final long millis) {
+        this.maxRetryWait = millis;
+    }
+
+    /**
+     * Set the maximum number of initialization tasks that may run concurrently.
+     *
+     * @param threads number of threads.
+     */
+    public void setMaxThreads(final int threads) {
+        this.maxThreads = threads;
+    }
+
+    /**
+     * Get the time taken by each successful initialization.
+     *
+     * @return Map of initialization name to time (in ms) from submission to success.
+     */
+    public Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /** Stop running and scheduled initialization tasks. */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
 
     @Override
     public Initialization initialize(final Runnable task) {
-        return new Initialization() {
-
-            long id = 0;
-
-            final Future<?> initProc = executor.submit(() -> {
-                boolean success = false;
-                id = Thread.currentThread().getId();
-                while (!success) {
-                    try {
-                        task.run();
-                        success = true;
-                    } catch (final Exception e) {
-                        try {
-                            LOG.info("Caught exception while initializing.  Trying again in {} ms", retryWait, e);
-                            Thread.sleep(retryWait);
-                        } catch (final InterruptedException i) {
-                            Thread.currentThread().interrupt();
-                            throw new RuntimeException("Initialization interrupted", i);
-                        }
-                    }
-                }
+        return initialize(task, new Initialization[0]);
+    }
+
+    @Override
+    public Initialization initialize(final Runnable task, final Initialization... dependencies) {
+
+        final List<CompletableFuture<Void>> scheduled = new ArrayList<>();
+        final List<Initialization> other = new ArrayList<>();
+
+        for (final Initialization dependency : dependencies) {
+            if (dependency instanceof Task) {
+                scheduled.add(((Task) dependency).done);
+            } else if (dependency != Initialization.NONE) {
+                other.add(dependency);
+            }
+        }
+
+        final Task init = new Task(nameOf(task), task, other);
+
+        CompletableFuture.allOf(scheduled.toArray(new CompletableFuture<?>[0])).whenComplete((v, e) -> {
+            if (e != null) {
+                init.done.completeExceptionally(e);
+            } else {
+                init.schedule(0);
+            }
+        });
+
+        return init;
+    }
+
+    synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            final AtomicInteger threads = new AtomicInteger();
+            final ScheduledThreadPoolExecutor exe = new ScheduledThreadPoolExecutor(maxThreads, r -> {
+                final Thread t = new Thread(r, "apix-init-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
             });
+            exe.setRemoveOnCancelPolicy(true);
+            executor = exe;
+        }
+        return executor;
+    }
+
+    /** Exponential backoff, with the latter half of each interval randomized */
+    long backoff(final int attempt) {
+        final long ceiling = Math.max(retryWait, Math.min(maxRetryWait, retryWait << Math.min(attempt - 1, 30)));
+        final long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    /* Name an initialization after the class that submitted it, e.g. LdpContainerRegistry#1 */
+    private String nameOf(final Runnable task) {
+        final String className = task.getClass().getName().split("\\$")[0];
+        return className.substring(className.lastIndexOf('.') + 1) + "#" + count.incrementAndGet();
+    }
+
+    class Task implements Initialization {
+
+        final String name;
+
+        final Runnable task;
+
+        final List<Initialization> dependencies;
+
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        final long created = System.nanoTime();
+
+        int attempts = 0;
+
+        boolean cancelled = false;
+
+        Future<?> next;
+
+        Task(final String name, final Runnable task, final List<Initialization> dependencies) {
+            this.name = name;
+            this.task = task;
+            this.dependencies = dependencies;
+
+            if (outstanding.getAndIncrement() == 0) {
+                phaseStart = created;
+            }
 
-            @Override
-            public void verify() {
-                if (notInitThread()) {
-                    try {
-                        initProc.get(0, TimeUnit.SECONDS);
-                    } catch (final TimeoutException t) {
-                        throw new IllegalStateException("Not initialized");
-                    } catch (final ExecutionException e) {
-                        throw new IllegalStateException("Not initialized", e);
-                    } catch (final InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Initialization terminated", e);
-                    }
+            done.whenComplete((v, e) -> {
+                if (outstanding.decrementAndGet() == 0 && e == null) {
+                    LOG.info("All initialization complete in {} ms", elapsedSince(phaseStart));
                 }
+            });
+        }
+
+        synchronized void schedule(final long delay) {
+            if (cancelled || done.isDone()) {
+                return;
             }
 
-            @Override
-            public void await() {
-                if (notInitThread()) {
-                    try {
-                        initProc.get();
-                    } catch (final ExecutionException e) {
-                        throw new RuntimeException("Operation terminated", e);
-                    } catch (final InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Operation terminated", e);
-                    }
+            try {
+                next = executor().schedule(this::attempt, delay, MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        void attempt() {
+            attempts++;
+            CURRENT.set(this);
+            try {
+                // Dependencies not managed by this initializer are checked rather than awaited
+                dependencies.forEach(Initialization::verify);
+                task.run();
+
+                final long elapsed = elapsedSince(created);
+                timings.put(name, elapsed);
+                LOG.info("Initialized {} in {} ms after {} attempt(s)", name, elapsed, attempts);
+                done.complete(null);
+            } catch (final Exception e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    done.completeExceptionally(new RuntimeException("Initialization interrupted", e));
+                    return;
                 }
+
+                final long delay = backoff(attempts);
+                LOG.info("Caught exception while initializing {}.  Trying again in {} ms: {}", name, delay, e
+                        .getMessage());
+                LOG.debug("Initialization failure of {}", name, e);
+                schedule(delay);
+            } finally {
+                CURRENT.remove();
+            }
+        }
+
+        @Override
+        public void verify() {
+            if (CURRENT.get() == this) {
+                return;
+            }
+
+            if (!done.isDone()) {
+                throw new IllegalStateException("Not initialized");
             }
 
-            @Override
-            public void await(final long time, final TimeUnit unit) throws TimeoutException {
-                if (notInitThread()) {
-                    try {
-                        initProc.get(time, unit);
-                    } catch (final ExecutionException e) {
-                        throw new RuntimeException("Operation terminated", e);
-                    } catch (final InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Operation terminated", e);
-                    }
+            try {
+                done.join();
+            } catch (final CompletionException | CancellationException e) {
+                throw new IllegalStateException("Not initialized", e);
+            }
+        }
+
+        @Override
+        public void await() {
+            final Task current = CURRENT.get();
+            if (current == this) {
+                return;
+            }
+
+            if (current != null) {
+                // Waiting from within another initialization; fail that attempt rather than hold its thread
+                try {
+                    await(retryWait, MILLISECONDS);
+                } catch (final TimeoutException e) {
+                    throw new IllegalStateException(String.format("%s is not initialized yet", name));
                 }
+                return;
             }
 
-            @Override
-            public void cancel() {
-                initProc.cancel(true);
+            try {
+                done.get();
+            } catch (final ExecutionException | CancellationException e) {
+                throw new RuntimeException("Operation terminated", e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Operation terminated", e);
             }
+        }
 
-            boolean notInitThread() {
-                return Thread.currentThread().getId() != id;
+        @Override
+        public void await(final long time, final TimeUnit unit) throws TimeoutException {
+            if (CURRENT.get() == this) {
+                return;
             }
-        };
+
+            try {
+                done.get(time, unit);
+            } catch (final ExecutionException | CancellationException e) {
+                throw new RuntimeException("Operation terminated", e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Operation terminated", e);
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            if (next != null) {
+                next.cancel(true);
+            }
+            done.cancel(true);
+        }
     }
 
+    private static long elapsedSince(final long nanoTime) {
+        return MILLISECONDS.convert(System.nanoTime() - nanoTime, TimeUnit.NANOSECONDS);
+    }
 }
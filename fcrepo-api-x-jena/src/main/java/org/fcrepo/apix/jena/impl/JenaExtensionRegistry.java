@@ -22,38 +22,79 @@ import static org.fcrepo.apix.jena.Util.objectLiteralOf;
 import static org.fcrepo.apix.jena.Util.objectResourceOf;
 import static org.fcrepo.apix.jena.Util.objectResourcesOf;
 import static org.fcrepo.apix.jena.Util.parse;
+import static org.fcrepo.apix.jena.impl.LdpContainerRegistry.initializationOf;
 import static org.fcrepo.apix.model.Ontologies.Apix.PROP_BINDS_TO;
 import static org.fcrepo.apix.model.Ontologies.Apix.PROP_CONSUMES_SERVICE;
 import static org.fcrepo.apix.model.Ontologies.Apix.PROP_EXPOSES_SERVICE;
 import static org.fcrepo.apix.model.Ontologies.Apix.PROP_EXPOSES_SERVICE_AT;
+import static org.fcrepo.apix.model.Ontologies.Apix.PROP_OUTGOING_INTERCEPT_MODE;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.fcrepo.apix.model.Extension;
+import org.fcrepo.apix.model.ExtensionChange;
 import org.fcrepo.apix.model.WebResource;
+import org.fcrepo.apix.model.components.ExtensionListener;
 import org.fcrepo.apix.model.components.ExtensionRegistry;
+import org.fcrepo.apix.model.components.Initializer;
+import org.fcrepo.apix.model.components.Initializer.Initialization;
 import org.fcrepo.apix.model.components.Registry;
+import org.fcrepo.apix.model.components.ResourceNotFoundException;
+import org.fcrepo.apix.model.components.Updateable;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.jena.rdf.model.Model;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Wraps a delegate registry and parses extensions using Jena.
  * <p>
- * Right now, this is mostly a stub; it does nothing more than identify the class an extension is bound to.
+ * Parsed extensions are kept in an immutable snapshot, which is replaced atomically whenever it changes. Reads are
+ * served from the snapshot and never touch the underlying registry. The snapshot is refreshed incrementally via
+ * {@link #update(URI)} when a member of the extension registry changes, or rebuilt entirely via {@link #update()}.
+ * </p>
+ * <p>
+ * Whenever the snapshot is replaced, the difference from the previous one is computed and given to all
+ * {@link ExtensionListener}s, so that they need not re-read the registry themselves. Listeners are notified after
+ * the snapshot has been replaced, outside of the lock guarding it. A change is only considered applied by a listener
+ * once it returns normally; if it throws, the change is re-delivered (along with any later ones) on the next update.
  * </p>
  *
  * @author apb@jhu.edu
  */
 @Component(service = ExtensionRegistry.class, configurationPolicy = ConfigurationPolicy.REQUIRE)
-public class JenaExtensionRegistry extends WrappingRegistry implements ExtensionRegistry {
+public class JenaExtensionRegistry extends WrappingRegistry implements ExtensionRegistry, Updateable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JenaExtensionRegistry.class);
+
+    private volatile Map<URI, JenaExtension> snapshot;
+
+    private Initializer initializer;
+
+    private Initialization init = Initialization.NONE;
+
+    private List<ExtensionListener> listeners = Collections.emptyList();
+
+    /** Last snapshot successfully applied by each listener. Guards notification, so listeners see changes in order */
+    private final Map<ExtensionListener, Map<URI, JenaExtension>> applied = new IdentityHashMap<>();
 
     /**
      * Underlying registry containing extension resources.
@@ -66,25 +107,256 @@ public class JenaExtensionRegistry extends WrappingRegistry implements Extension
         super.setRegistryDelegate(reg);
     }
 
+    /**
+     * Set the initializer.
+     *
+     * @param initializer the initializer.
+     */
+    public void setInitializer(final Initializer initializer) {
+        this.initializer = initializer;
+    }
+
+    /**
+     * Set the listeners to notify of extension changes.
+     *
+     * @param listeners the listeners.
+     */
+    public void setListeners(final List<ExtensionListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /** Build the initial snapshot. */
+    public void init() {
+        init = initializer.initialize(this::update, initializationOf(delegate));
+    }
+
+    /** Shutdown */
+    public void shutdown() {
+        init.cancel();
+    }
+
     @Override
     public Extension getExtension(final URI uri) {
-        return new JenaExtension(uri);
+        final JenaExtension known = snapshot().get(uri);
+        return known != null ? known : new JenaExtension(uri);
     }
 
     @Override
     public Collection<Extension> getExtensions() {
-        return delegate.list().stream().map(JenaExtension::new).collect(Collectors.toList());
+        return Collections.unmodifiableList(new ArrayList<>(snapshot().values()));
+    }
+
+    @Override
+    public URI put(final WebResource resource, final boolean asBinary) {
+        final URI uri = delegate.put(resource, asBinary);
+        reindex(uri);
+        notifyListeners();
+        return uri;
+    }
+
+    @Override
+    public URI put(final WebResource resource) {
+        final URI uri = delegate.put(resource);
+        reindex(uri);
+        notifyListeners();
+        return uri;
+    }
+
+    @Override
+    public void delete(final URI uri) {
+        delegate.delete(uri);
+        reindex(uri);
+        notifyListeners();
+    }
+
+    /** Rebuild the snapshot from the full contents of the underlying registry */
+    @Override
+    public void update() {
+        synchronized (this) {
+            final Map<URI, JenaExtension> updated = new LinkedHashMap<>();
+
+            for (final URI uri : delegate.list()) {
+                try {
+                    updated.put(uri, new JenaExtension(uri));
+                } catch (final ResourceNotFoundException e) {
+                    LOG.info("Extension <{}> disappeared while indexing, skipping", uri);
+                }
+            }
+
+            LOG.debug("Indexed {} extensions", updated.size());
+            swap(updated);
+        }
+
+        notifyListeners();
+    }
+
+    /**
+     * Refresh the snapshot in response to a change.
+     * <p>
+     * A known extension is re-read (or dropped, if it no longer exists). Any other resource in the registry's domain
+     * may indicate a change in membership (e.g. the registry container, or a new extension), so the registry is
+     * listed again. Only extensions that were not previously known are read.
+     * </p>
+     * <p>
+     * Any change a listener previously failed to apply is re-delivered, whether or not the snapshot changed.
+     * </p>
+     */
+    @Override
+    public void update(final URI inResponseTo) {
+        if (inResponseTo.getFragment() == null && delegate.hasInDomain(inResponseTo)) {
+            if (snapshot().containsKey(inResponseTo)) {
+                reindex(inResponseTo);
+            } else {
+                updateMembers();
+            }
+        }
+
+        notifyListeners();
+    }
+
+    /** Read extensions added to the registry, and drop any removed from it */
+    private synchronized void updateMembers() {
+        final Map<URI, JenaExtension> updated = new LinkedHashMap<>();
+
+        for (final URI uri : delegate.list()) {
+            final JenaExtension known = snapshot.get(uri);
+            if (known != null) {
+                updated.put(uri, known);
+            } else {
+                try {
+                    updated.put(uri, new JenaExtension(uri));
+                } catch (final ResourceNotFoundException e) {
+                    LOG.info("Extension <{}> disappeared while indexing, skipping", uri);
+                }
+            }
+        }
+
+        swap(updated);
+    }
+
+    /** Re-read a single extension, and swap in a snapshot containing the result */
+    private void reindex(final URI uri) {
+        final Map<URI, JenaExtension> current = snapshot();
+
+        synchronized (this) {
+            final Map<URI, JenaExtension> updated = new LinkedHashMap<>(snapshot);
+            try {
+                LOG.debug("Re-indexing extension <{}>", uri);
+                updated.put(uri, new JenaExtension(uri));
+            } catch (final ResourceNotFoundException e) {
+                if (current.containsKey(uri)) {
+                    LOG.debug("Extension <{}> has been removed", uri);
+                }
+                updated.remove(uri);
+            }
+
+            swap(updated);
+        }
+    }
+
+    /** Replace the snapshot. Callers must hold the lock, and notify listeners once they have released it. */
+    private void swap(final Map<URI, JenaExtension> updated) {
+        snapshot = Collections.unmodifiableMap(updated);
+    }
+
+    /** Give each listener the difference between the snapshot it last applied, and the current one */
+    private void notifyListeners() {
+        synchronized (applied) {
+            final Map<URI, JenaExtension> current = snapshot;
+            if (current == null) {
+                return;
+            }
+
+            for (final ExtensionListener listener : listeners) {
+                final Map<URI, JenaExtension> previous = applied.getOrDefault(listener, Collections.emptyMap());
+                if (previous == current) {
+                    continue;
+                }
+
+                final ExtensionChange change = diff(previous, current);
+                if (!change.isEmpty()) {
+                    try {
+                        listener.onChange(change);
+                    } catch (final Exception e) {
+                        LOG.warn("Extension listener {} failed to apply change, will retry on next update",
+                                listener, e);
+                        continue;
+                    }
+                }
+
+                applied.put(listener, current);
+            }
+        }
+    }
+
+    private static ExtensionChange diff(final Map<URI, JenaExtension> previous,
+            final Map<URI, JenaExtension> updated) {
+        final List<Extension> added = new ArrayList<>();
+        final List<Extension> changed = new ArrayList<>();
+        final List<Extension> removed = new ArrayList<>();
+
+        updated.forEach((uri, ext) -> {
+            final JenaExtension old = previous.get(uri);
+            if (old == null) {
+                added.add(ext);
+            } else if (old != ext && !old.hasSameContent(ext)) {
+                changed.add(ext);
+            }
+        });
+
+        previous.forEach((uri, ext) -> {
+            if (!updated.containsKey(uri)) {
+                removed.add(ext);
+            }
+        });
+
+        final ExtensionChange change = ExtensionChange.of(added, removed, changed);
+        if (!change.isEmpty()) {
+            LOG.debug("Extensions changed: {} added, {} removed, {} changed", added.size(), removed.size(), changed
+                    .size());
+        }
+
+        return change;
+    }
+
+    private Map<URI, JenaExtension> snapshot() {
+        init.await();
+
+        if (snapshot == null) {
+            update();
+        }
+
+        return snapshot;
     }
 
     private class JenaExtension implements Extension {
 
         private final URI uri;
 
-        private Model model;
+        private final byte[] content;
+
+        private final String contentType;
+
+        private final Model model;
 
         public JenaExtension(final URI uri) {
             this.uri = uri;
-            this.model = getModel();
+
+            try (WebResource wr = delegate.get(uri);
+                    InputStream in = wr.representation()) {
+                this.contentType = wr.contentType();
+                this.content = IOUtils.toByteArray(in);
+            } catch (final RuntimeException e) {
+                throw e;
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+
+            this.model = parse(getResource());
+        }
+
+        boolean hasSameContent(final JenaExtension other) {
+            return Arrays.equals(content, other.content) && Objects.equals(contentType, other.contentType);
         }
 
         @Override
@@ -94,7 +366,7 @@ public class JenaExtensionRegistry extends WrappingRegistry implements Extension
 
         @Override
         public WebResource getResource() {
-            return delegate.get(uri);
+            return WebResource.of(new ByteArrayInputStream(content), contentType, uri, null);
         }
 
         @Override
@@ -102,18 +374,6 @@ public class JenaExtensionRegistry extends WrappingRegistry implements Extension
             return uri;
         }
 
-        private Model getModel() {
-            if (model == null) {
-                try (WebResource wr = getResource()) {
-                    model = parse(wr);
-                } catch (final Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-
-            return model;
-        }
-
         @Override
         public boolean isExposing() {
             return model.contains(null, model.getProperty(PROP_EXPOSES_SERVICE));
@@ -180,13 +440,29 @@ public class JenaExtensionRegistry extends WrappingRegistry implements Extension
         }
 
         @Override
-        public Spec intercepted() {
-            return new Spec() {
+        public InterceptSpec intercepted() {
+            return new InterceptSpec() {
 
                 @Override
                 public Set<URI> consumed() {
                     return new HashSet<>(objectResourcesOf(uri.toString(), PROP_CONSUMES_SERVICE, model));
                 }
+
+                @Override
+                public OutgoingMode outgoing() {
+                    final String mode = objectLiteralOf(uri.toString(), PROP_OUTGOING_INTERCEPT_MODE, model);
+
+                    if (mode == null) {
+                        return OutgoingMode.SERIAL;
+                    }
+
+                    try {
+                        return OutgoingMode.valueOf(mode.trim().toUpperCase());
+                    } catch (final IllegalArgumentException e) {
+                        LOG.warn("Unknown outgoing intercept mode '{}' in extension <{}>, using serial", mode, uri);
+                        return OutgoingMode.SERIAL;
+                    }
+                }
             };
         }
     }
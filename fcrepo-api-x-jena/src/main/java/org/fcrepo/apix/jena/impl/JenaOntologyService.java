@@ -20,17 +20,26 @@ package org.fcrepo.apix.jena.impl;
 
 import static org.fcrepo.apix.jena.Util.parse;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
 import java.net.URI;
+import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
+import org.fcrepo.apix.jena.JenaResource;
 import org.fcrepo.apix.model.Ontology;
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.OntologyRegistry;
 import org.fcrepo.apix.model.components.OntologyService;
+import org.fcrepo.apix.model.components.Updateable;
 
-import org.apache.jena.ontology.Individual;
+import org.apache.commons.io.IOUtils;
 import org.apache.jena.ontology.OntModel;
 import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.rdf.model.Model;
@@ -47,16 +56,32 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Uses Jena to parse and provide reasoning over ontologies.
+ * <p>
+ * Ontologies are compiled once per version (see {@link CompiledOntology}): imports are resolved and the class
+ * hierarchy is materialized up front, and the result is shared read-only between requests. Compiled ontologies are
+ * cached by location (for {@link #getOntology(URI)}) or content digest (for {@link #parseOntology(WebResource)}),
+ * and are discarded whenever the underlying ontology registry changes.
+ * </p>
  *
  * @author apb@jhu.edu
  */
 @Component(configurationPolicy = ConfigurationPolicy.REQUIRE)
-public class JenaOntologyService implements OntologyService {
+public class JenaOntologyService implements OntologyService, Updateable {
+
+    static final int DEFAULT_CACHE_SIZE = 100;
 
     private OntologyRegistry registry;
 
     private OntModelSpec defaultSpec = OntModelSpec.OWL_MEM_MICRO_RULE_INF;
 
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    private Map<String, Ont> ontologiesByLocation = lru(DEFAULT_CACHE_SIZE);
+
+    private Map<String, Ont> ontologiesByContent = lru(DEFAULT_CACHE_SIZE);
+
+    private Map<String, Model> importsByIRI = lru(DEFAULT_CACHE_SIZE);
+
     static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
 
     static final String OWL_ONTOLOGY = "http://www.w3.org/2002/07/owl#Ontology";
@@ -73,6 +98,7 @@ public class JenaOntologyService implements OntologyService {
     public void setOntModelSpec(final OntModelSpec spec) {
         defaultSpec = new OntModelSpec(spec);
         defaultSpec.setImportModelGetter(new NullGetter());
+        update();
     }
 
     /** Default constructor */
@@ -90,15 +116,45 @@ public class JenaOntologyService implements OntologyService {
         this.registry = registry;
     }
 
+    /**
+     * Maximum number of compiled ontologies (and imported ontologies) to cache.
+     *
+     * @param size Cache size. Zero or less disables caching.
+     */
+    public void setCacheSize(final int size) {
+        this.cacheSize = size;
+        ontologiesByLocation = lru(size);
+        ontologiesByContent = lru(size);
+        importsByIRI = lru(size);
+    }
+
     @Override
     public Ont getOntology(final URI uri) {
-        return new Ont(resolveImports(ModelFactory.createOntologyModel(defaultSpec, load(uri.toString()))));
+        return cached(ontologiesByLocation, uri.toString(),
+                () -> new Ont(resolveImports(ModelFactory.createOntologyModel(defaultSpec, load(uri.toString())))));
     }
 
     @Override
     public Ont parseOntology(final WebResource ont) {
         try (WebResource ontology = ont) {
-            return new Ont(resolveImports(ModelFactory.createOntologyModel(defaultSpec, parse(ontology))));
+
+            if (ontology instanceof JenaResource && ((JenaResource) ontology).model() != null) {
+                return new Ont(resolveImports(ModelFactory.createOntologyModel(defaultSpec, parse(ontology))));
+            }
+
+            final byte[] content;
+            try (InputStream in = ontology.representation()) {
+                content = IOUtils.toByteArray(in);
+            }
+
+            final String key = ontology.contentType() + " " + ontology.uri() + " " + digest(content);
+
+            return cached(ontologiesByContent, key,
+                    () -> new Ont(resolveImports(ModelFactory.createOntologyModel(defaultSpec, parse(
+                            WebResource.of(new ByteArrayInputStream(content), ontology.contentType(),
+                                    ontology.uri(), null))))));
+        } catch (final RuntimeException e) {
+            throw e;
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -120,7 +176,7 @@ public class JenaOntologyService implements OntologyService {
         while (!unresolvedImports.isEmpty()) {
 
             for (final String unresolved : unresolvedImports) {
-                model.add(load(unresolved));
+                model.add(loadImport(unresolved));
                 resolvedImports.add(unresolved);
 
             }
@@ -138,6 +194,10 @@ public class JenaOntologyService implements OntologyService {
                 Resource::getURI).filterDrop(uri -> resolved.contains(uri)).toSet();
     }
 
+    private Model loadImport(final String iri) {
+        return cached(importsByIRI, iri, () -> load(iri));
+    }
+
     private Model load(final String uri) {
         return load(URI.create(uri));
     }
@@ -180,37 +240,88 @@ public class JenaOntologyService implements OntologyService {
     @Override
     public Set<URI> inferClasses(final URI uri, final WebResource resource, final Ontology ontology) {
 
-        final OntModel model = resolveImports(ont(ontology));
-        model.add(parse(resource));
+        final Set<URI> classes = ((Ont) ontology).compiled().inferClasses(uri.toString(), parse(resource));
 
-        final Individual individual = model.getIndividual(uri.toString());
-
-        if (individual != null) {
-            return individual
-                    .listRDFTypes(false)
-                    .filterKeep(Resource::isURIResource)
-                    .mapWith(Resource::getURI)
-                    .mapWith(URI::create)
-                    .toSet();
-        } else {
+        if (classes.isEmpty()) {
             LOG.info("<{}> does not make any statements about itself, " +
                     "so we can't infer anything about it nor bind extensions to it", uri);
-            return Collections.emptySet();
         }
 
+        return classes;
+    }
+
+    /** Discard all compiled ontologies */
+    @Override
+    public void update() {
+        ontologiesByLocation.clear();
+        ontologiesByContent.clear();
+        importsByIRI.clear();
+    }
+
+    /** Discard compiled ontologies if an ontology in the registry has changed */
+    @Override
+    public void update(final URI inResponseTo) {
+        if (registry.hasInDomain(inResponseTo)) {
+            LOG.debug("Ontology registry changed in response to <{}>, discarding compiled ontologies", inResponseTo);
+            update();
+        }
     }
 
     OntModel ont(final Ontology o) {
         return ((Ont) o).model;
     }
 
+    private <T> T cached(final Map<String, T> cache, final String key, final Supplier<T> value) {
+        if (cacheSize < 1) {
+            return value.get();
+        }
+
+        final T found = cache.get(key);
+        if (found != null) {
+            return found;
+        }
+
+        final T created = value.get();
+        cache.put(key, created);
+        return created;
+    }
+
+    private static <T> Map<String, T> lru(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, T>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, T> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    private static String digest(final byte[] content) {
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(content)).toString(16);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     static class Ont implements Ontology {
 
         final OntModel model;
 
+        private volatile CompiledOntology compiled;
+
         private Ont(final OntModel model) {
             this.model = model;
         }
+
+        CompiledOntology compiled() {
+            if (compiled == null) {
+                compiled = new CompiledOntology(model);
+            }
+            return compiled;
+        }
     }
 
 }
@@ -23,6 +23,7 @@ import static org.fcrepo.apix.jena.Util.objectResourceOf;
 import static org.fcrepo.apix.jena.Util.objectResourcesOf;
 import static org.fcrepo.apix.jena.Util.parse;
 import static org.fcrepo.apix.jena.Util.subjectOf;
+import static org.fcrepo.apix.jena.impl.LdpContainerRegistry.initializationOf;
 import static org.fcrepo.apix.model.Ontologies.RDF_TYPE;
 import static org.fcrepo.apix.model.Ontologies.Service.CLASS_SERVICE;
 import static org.fcrepo.apix.model.Ontologies.Service.CLASS_SERVICE_INSTANCE;
@@ -33,11 +34,14 @@ import static org.fcrepo.apix.model.Ontologies.Service.PROP_HAS_SERVICE_INSTANCE
 import static org.fcrepo.apix.model.Ontologies.Service.PROP_HAS_SERVICE_INSTANCE_REGISTRY;
 import static org.fcrepo.apix.model.Ontologies.Service.PROP_IS_SERVICE_INSTANCE_OF;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -48,9 +52,9 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.fcrepo.apix.jena.JenaResource;
-import org.fcrepo.apix.jena.Util;
 import org.fcrepo.apix.model.Service;
 import org.fcrepo.apix.model.ServiceInstance;
+import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.Initializer;
 import org.fcrepo.apix.model.components.Initializer.Initialization;
 import org.fcrepo.apix.model.components.Registry;
@@ -76,6 +80,16 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Jena-based service registry implementation,
+ * <p>
+ * Keeps an in-memory index of service topology (services, their instance registries, and the endpoints of each
+ * instance), so that selecting a service instance does not require any requests to the repository. Index entries
+ * remember the repository resources they were read from, and are evicted in {@link #update(URI)} when any of those
+ * resources change.
+ * </p>
+ * <p>
+ * The list of services is maintained incrementally as well. A change to a registry member re-reads only that member,
+ * and a change to the registry container re-reads only members that have been added or removed.
+ * </p>
  *
  * @author apb@jhu.edu
  */
@@ -124,11 +138,22 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
     // Index mapping canonical URI to resource URI
     private final ConcurrentHashMap<URI, URI> canonicalUriMap = new ConcurrentHashMap<>();
 
+    // Service topology index: requested service URI to service, and service URI to instance registry.
+    private final ConcurrentHashMap<URI, Indexed<ServiceImpl>> services = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<URI, Indexed<ServiceInstanceRegistry>> instanceRegistries =
+            new ConcurrentHashMap<>();
+
+    // Services declared by each registry member (and by the registry container itself), and what they resolve to.
+    private final Map<URI, Set<URI>> declaredServices = new ConcurrentHashMap<>();
+
+    private final Map<URI, Service> resolvedServices = new ConcurrentHashMap<>();
+
     /** Initial update and re-indexing. */
     public void init() {
         init = initializer.initialize(() -> {
             update();
-        });
+        }, initializationOf(delegate));
     }
 
     /** Shutdown */
@@ -137,29 +162,149 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
     }
 
     @Override
-    public void update() {
+    public synchronized void update() {
+
+        services.clear();
+        instanceRegistries.clear();
+        declaredServices.clear();
+        resolvedServices.clear();
 
         // For all resources in the registry, get the URIs of everything that calls itself a Service, or is explicitly
         // registered as a service
+        super.list().forEach(this::indexDeclarations);
+        indexDeclarations(registryContainer);
+
+        declaredServices.values().stream()
+                .flatMap(Set::stream)
+                .distinct()
+                .forEach(this::resolve);
+
+        reindexCanonical();
+    }
+
+    @Override
+    public void update(final URI uri) {
+        if (!hasInDomain(uri)) {
+            return;
+        }
+
+        evict(uri);
+
+        // Hash URIs are only ever part of some other resource, which will be (or has been) updated itself
+        if (uri.getFragment() != null) {
+            return;
+        }
+
+        final URI resource = representationOf(uri);
+
+        synchronized (this) {
+            if (resource.equals(representationOf(registryContainer))) {
+                // Only a change to the container can add or remove registry members
+                updateMembers();
+            } else if (declaredServices.containsKey(resource)) {
+                updateMember(resource);
+            }
+
+            // Canonical URIs of services described by the changed resource may have changed
+            resolvedServices.keySet().stream()
+                    .filter(service -> representationOf(service).equals(resource))
+                    .collect(Collectors.toList())
+                    .forEach(this::resolve);
+
+            reindexCanonical();
+        }
+    }
+
+    // Index newly added registry members, and forget removed ones.
+    private void updateMembers() {
+        final Set<URI> members = new HashSet<>(super.list());
+
+        declaredServices.keySet().stream()
+                .filter(m -> !members.contains(m) && !m.equals(registryContainer))
+                .collect(Collectors.toList())
+                .forEach(this::forgetMember);
+
+        members.stream()
+                .filter(m -> !declaredServices.containsKey(m))
+                .forEach(this::updateMember);
+
+        updateMember(registryContainer);
+    }
+
+    // Re-read the services declared by a single registry member
+    private void updateMember(final URI member) {
+        final Set<URI> previous = declaredServices.get(member);
+
+        if (!indexDeclarations(member)) {
+            forgetMember(member);
+            return;
+        }
+
+        final Set<URI> declared = declaredServices.get(member);
+
+        if (previous != null) {
+            previous.stream()
+                    .filter(s -> !declared.contains(s))
+                    .forEach(this::forgetIfUndeclared);
+        }
+
+        declared.forEach(this::resolve);
+    }
+
+    private void forgetMember(final URI member) {
+        final Set<URI> previous = declaredServices.remove(member);
+        if (previous != null) {
+            previous.forEach(this::forgetIfUndeclared);
+        }
+    }
+
+    private void forgetIfUndeclared(final URI service) {
+        if (declaredServices.values().stream().noneMatch(d -> d.contains(service))) {
+            resolvedServices.remove(service);
+        }
+    }
+
+    // Record the services declared in a registry member (or the registry container). False if it doesn't exist.
+    private boolean indexDeclarations(final URI member) {
+        final Model model;
+        try {
+            model = parse(get(member));
+        } catch (final ResourceNotFoundException e) {
+            LOG.debug("Registry member <{}> no longer exists", member);
+            return false;
+        }
+
+        if (member.equals(registryContainer)) {
+            declaredServices.put(member, new HashSet<>(objectResourcesOf(null, PROP_CONTAINS_SERVICE, model)));
+        } else {
+            declaredServices.put(member, model.listSubjectsWithProperty(
+                    model.getProperty(RDF_TYPE),
+                    model.getResource(CLASS_SERVICE))
+                    .mapWith(Resource::getURI)
+                    .toSet().stream()
+                    .map(URI::create)
+                    .collect(Collectors.toSet()));
+        }
+
+        return true;
+    }
+
+    // Look up a declared service, and pre-populate the topology index so that the first request to it is fast too.
+    private void resolve(final URI declared) {
+        final Optional<Service> service = attemptLookupService(declared).findFirst();
 
-        final Set<URI> serviceURIs = Stream.concat(super.list().stream()
-                .map(this::get)
-                .map(Util::parse)
-                .flatMap(m -> m.listSubjectsWithProperty(
-                        m.getProperty(RDF_TYPE),
-                        m.getResource(CLASS_SERVICE))
-                        .mapWith(Resource::getURI)
-                        .toSet().stream()
-                        .map(URI::create)),
-                objectResourcesOf(null, PROP_CONTAINS_SERVICE, parse(this.get(
-                        registryContainer))).stream())
-                .collect(
-                        Collectors.toSet());
-
-        // Map canonical URI to service resource. If multiple service resources
-        // indicate the same canonical URI, pick one arbitrarily.
-        final Map<URI, URI> canonical = serviceURIs.stream()
-                .flatMap(this::attemptLookupService)
+        if (service.isPresent()) {
+            resolvedServices.put(declared, service.get());
+            attemptIndexInstances(service.get());
+        } else {
+            resolvedServices.remove(declared);
+        }
+    }
+
+    // Map canonical URI to service resource. If multiple service resources
+    // indicate the same canonical URI, pick one arbitrarily.
+    private void reindexCanonical() {
+        final Map<URI, URI> canonical = resolvedServices.values().stream()
                 .collect(Collectors.toMap(s -> s.canonicalURI(), s -> s.uri(), (a, b) -> a));
 
         canonicalUriMap.putAll(canonical);
@@ -167,12 +312,11 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
         canonicalUriMap.keySet().removeIf(k -> !canonical.containsKey(k));
     }
 
-    @Override
-    public void update(final URI uri) {
-        if (hasInDomain(uri) && uri.getFragment() == null) {
-            // TODO: This can be optimized more. Right now, it re-scans all services,
-            // but at least filters out obvious redundancies (hash URIs) or inapplicable resources
-            update();
+    private void attemptIndexInstances(final Service service) {
+        try {
+            instancesOf(service);
+        } catch (final Exception e) {
+            LOG.debug("Not indexing instances of <{}>: {}", service.uri(), e.getMessage());
         }
     }
 
@@ -187,6 +331,7 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
             patch.setEntity(new InputStreamEntity(patchAddService(uri)));
 
             try (CloseableHttpResponse resp = execute(patch)) {
+                evict(registryContainer);
                 LOG.info("Adding service {} to registry {}", uri, registryContainer);
             }
         } catch (final Exception e) {
@@ -194,7 +339,7 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
                     registryContainer), e);
         }
 
-        update(uri);
+        update(registryContainer);
     }
 
     private InputStream patchAddService(final URI service) {
@@ -231,6 +376,8 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
                 PROP_IS_SERVICE_INSTANCE_OF, service.uri(), CLASS_SERVICE_INSTANCE), UTF_8));
 
         try (CloseableHttpResponse resp = execute(patch)) {
+            evict(service.uri());
+            evict(uri);
             LOG.info("Updating instance registry for {}", service.uri());
         } catch (final Exception e) {
             throw new RuntimeException("Could not update service instance registry", e);
@@ -242,6 +389,10 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
     @Override
     public ServiceInstanceRegistry instancesOf(final Service service) {
         init.await();
+        return instanceRegistries.computeIfAbsent(service.uri(), u -> indexInstances(service)).value;
+    }
+
+    private Indexed<ServiceInstanceRegistry> indexInstances(final Service service) {
         final URI registryURI = objectResourceOf(service.uri().toString(), PROP_HAS_SERVICE_INSTANCE_REGISTRY, parse(
                 service));
 
@@ -253,13 +404,23 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
 
         final Model registry = getRegistry(registryURI, service);
 
-        return new ServiceInstanceRegistry() {
+        final List<URI> instanceURIs = objectResourcesOf(registryURI.toString(), PROP_HAS_SERVICE_INSTANCE,
+                registry);
+
+        final List<ServiceInstance> instances = Collections.unmodifiableList(instanceURIs.stream()
+                .map(uri -> new LdpServiceInstanceImpl(uri, service))
+                .collect(Collectors.toList()));
+
+        final Set<URI> sources = new HashSet<>(Arrays.asList(service.uri(), registryURI));
+        sources.addAll(instanceURIs);
+
+        LOG.debug("Indexed {} instances of service <{}>", instances.size(), service.uri());
+
+        return new Indexed<>(new ServiceInstanceRegistry() {
 
             @Override
             public List<ServiceInstance> instances() {
-                return objectResourcesOf(registryURI.toString(), PROP_HAS_SERVICE_INSTANCE, registry).stream()
-                        .map(uri -> new LdpServiceInstanceImpl(uri, service))
-                        .collect(Collectors.toList());
+                return instances;
             }
 
             @Override
@@ -273,6 +434,7 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
                         PROP_HAS_ENDPOINT, endpoint, CLASS_SERVICE_INSTANCE), UTF_8));
 
                 try (CloseableHttpResponse resp = execute(patch)) {
+                    evict(registryURI);
                     LOG.info("Adding endpoint <{}> to <{}>", endpoint, registryURI);
                 } catch (final Exception e) {
                     throw new RuntimeException(String.format("Failed adding endpoint <%s> to <%s>", endpoint,
@@ -281,26 +443,24 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
 
                 return registryURI;
             }
-        };
+        }, sources);
     }
 
     class LdpServiceInstanceImpl implements ServiceInstance {
 
-        final Model model;
-
-        final String uri;
+        final List<URI> endpoints;
 
         final Service service;
 
         public LdpServiceInstanceImpl(final URI uri, final Service service) {
-            model = parse(get(uri));
-            this.uri = uri.toString();
+            this.endpoints = Collections.unmodifiableList(objectResourcesOf(uri.toString(), PROP_HAS_ENDPOINT,
+                    parse(get(uri))));
             this.service = service;
         }
 
         @Override
         public List<URI> endpoints() {
-            return objectResourcesOf(uri, PROP_HAS_ENDPOINT, model);
+            return endpoints;
         }
 
         @Override
@@ -312,7 +472,10 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
     @Override
     public Service getService(final URI uri) {
         init.await();
-        return new ServiceImpl(uri);
+        return services.computeIfAbsent(uri, u -> {
+            final ServiceImpl service = new ServiceImpl(u);
+            return new Indexed<>(service, new HashSet<>(Arrays.asList(u, service.uri(), resourceURI(u))));
+        }).value;
     }
 
     @Override
@@ -334,7 +497,7 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
         final URI uri;
 
         ServiceImpl(final URI uri) {
-            super(get(resourceURI(uri)));
+            super(buffered(get(resourceURI(uri))));
             this.model = parse(this);
 
             // Sanity check - verify that the uri is a service. If not, and if there is exactly one service, use that.
@@ -380,14 +543,76 @@ public class JenaServiceRegistry extends WrappingRegistry implements ServiceRegi
     }
 
     private static boolean hasSameRepresentation(final URI a, final URI b) {
+        return representationOf(a).equals(representationOf(b));
+    }
+
+    // URI of the resource whose representation contains the given URI, i.e. without any fragment or query.
+    private static URI representationOf(final URI uri) {
         try {
-            return new URI(a.getScheme(), a.getAuthority(), a.getPath(), null, null).equals(new URI(b.getScheme(), b
-                    .getAuthority(), b.getPath(), null, null));
+            return new URI(uri.getScheme(), uri.getAuthority(), uri.getPath(), null, null);
         } catch (final URISyntaxException e) {
             throw new RuntimeException("Shoud never happen", e);
         }
     }
 
+    /** Evict everything in the topology index that was read from the given resource */
+    private void evict(final URI changed) {
+        final URI resource = representationOf(changed);
+        services.values().removeIf(i -> i.sources.contains(resource));
+        instanceRegistries.values().removeIf(i -> i.sources.contains(resource));
+    }
+
+    // Read a resource's representation into memory, so that it can be re-read by anything sharing it.
+    private static WebResource buffered(final WebResource resource) {
+        final byte[] content;
+        try (WebResource r = resource; InputStream in = r.representation()) {
+            content = IOUtils.toByteArray(in);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        return new WebResource() {
+
+            @Override
+            public void close() {
+                // nothing to close
+            }
+
+            @Override
+            public URI uri() {
+                return resource.uri();
+            }
+
+            @Override
+            public InputStream representation() {
+                return new ByteArrayInputStream(content);
+            }
+
+            @Override
+            public String name() {
+                return resource.name();
+            }
+
+            @Override
+            public String contentType() {
+                return resource.contentType();
+            }
+        };
+    }
+
+    /** Index entry, which remembers the resources it was read from. */
+    private static class Indexed<T> {
+
+        final T value;
+
+        final Set<URI> sources;
+
+        Indexed(final T value, final Set<URI> sources) {
+            this.value = value;
+            this.sources = sources.stream().map(JenaServiceRegistry::representationOf).collect(Collectors.toSet());
+        }
+    }
+
     // Try looking in canonical map first
     private URI resourceURI(final URI uri) {
         return Optional.ofNullable(canonicalUriMap.get(uri)).orElse(uri);
@@ -18,6 +18,7 @@
 
 package org.fcrepo.apix.jena.impl;
 
+import static org.fcrepo.apix.jena.Util.validatorOf;
 import static org.fcrepo.apix.model.Ontologies.LDP_CONTAINS;
 
 import java.io.ByteArrayInputStream;
@@ -25,12 +26,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.fcrepo.apix.jena.Util;
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.Initializer;
 import org.fcrepo.apix.model.components.Initializer.Initialization;
 import org.fcrepo.apix.model.components.Registry;
+import org.fcrepo.apix.model.components.Updateable;
 
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
@@ -57,10 +63,16 @@ import org.slf4j.LoggerFactory;
  * individual resources. {@link #put(WebResource)} will issue a PUT or GET to a given container as appropriate to
  * create or update a resource.
  * </p>
+ * <p>
+ * Container membership is cached in memory, so that {@link #contains(URI)} is a simple lookup. The cached membership
+ * is considered stale when {@link #update(URI)} reports a change within the container, or when it is older than the
+ * {@link #setMembershipTtl(long) membership ttl}. Stale membership is revalidated against the container's ETag (or
+ * Last-Modified date), and the container listing is only re-read if it has changed.
+ * </p>
  *
  * @author apb@jhu.edu
  */
-public class LdpContainerRegistry implements Registry {
+public class LdpContainerRegistry implements Registry, Updateable {
 
     private Registry delegate;
 
@@ -78,6 +90,15 @@ public class LdpContainerRegistry implements Registry {
 
     private Initializer initializer;
 
+    private long membershipTtl = TimeUnit.SECONDS.toNanos(30);
+
+    private volatile Membership membership;
+
+    // Incremented upon any change that may affect membership
+    private final AtomicLong changes = new AtomicLong();
+
+    private static final int MAX_REVALIDATE_ATTEMPTS = 3;
+
     private static final Logger LOG = LoggerFactory.getLogger(LdpContainerRegistry.class);
 
     /**
@@ -99,6 +120,15 @@ public class LdpContainerRegistry implements Registry {
         this.client = client;
     }
 
+    /**
+     * Set the maximum time cached container membership may be used without revalidation.
+     *
+     * @param millis Time in ms. Zero or less means membership is always revalidated.
+     */
+    public void setMembershipTtl(final long millis) {
+        this.membershipTtl = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
     /**
      * Set the initializer.
      *
@@ -108,6 +138,17 @@ public class LdpContainerRegistry implements Registry {
         this.initializer = initializer;
     }
 
+    /**
+     * Get the initialization state of a registry, if it is an LDP container registry.
+     *
+     * @param registry the registry.
+     * @return initialization state, or {@link Initialization#NONE} if the registry has no initialization.
+     */
+    static Initialization initializationOf(final Registry registry) {
+        return registry instanceof LdpContainerRegistry ? ((LdpContainerRegistry) registry).init
+                : Initialization.NONE;
+    }
+
     /** Cancel the container creation, if it's running. */
     public void shutdown() {
         init.cancel();
@@ -227,7 +268,13 @@ public class LdpContainerRegistry implements Registry {
                 final int status = response.getStatusLine().getStatusCode();
 
                 if (status == HttpStatus.SC_CREATED) {
-                    return URI.create(response.getFirstHeader(HttpHeaders.LOCATION).getValue());
+                    final URI created = URI.create(response.getFirstHeader(HttpHeaders.LOCATION).getValue());
+                    if (resource.uri() == null || !resource.uri().isAbsolute()) {
+                        added(created);
+                    } else {
+                        changes.incrementAndGet();
+                    }
+                    return created;
                 } else if (status == HttpStatus.SC_NO_CONTENT || status == HttpStatus.SC_OK) {
                     return resource.uri();
                 } else {
@@ -251,16 +298,87 @@ public class LdpContainerRegistry implements Registry {
     @Override
     public Collection<URI> list() {
         init.await();
+        return new HashSet<>(revalidate().members);
+    }
+
+    /*
+     * Revalidate cached membership, re-reading the container listing only if it has changed.
+     *
+     * Membership that changed while revalidating (e.g. a member was added) is revalidated again, so that a listing
+     * read before the change does not replace it.
+     */
+    private Membership revalidate() {
+        for (int attempt = 1;; attempt++) {
+            final long generation = changes.get();
+            final Membership current = membership;
+            final String validator = validatorOf(client, containerId);
+
+            final Membership revalidated;
+            if (current != null && validator != null && validator.equals(current.validator)) {
+                revalidated = new Membership(current.members, validator, generation);
+            } else {
+                revalidated = fetch(validator, generation);
+            }
+
+            synchronized (this) {
+                if (changes.get() == generation) {
+                    membership = revalidated;
+                    return revalidated;
+                }
+            }
+
+            if (attempt >= MAX_REVALIDATE_ATTEMPTS) {
+                LOG.debug("Membership of {} keeps changing, not caching it", containerId);
+                return revalidated;
+            }
+        }
+    }
+
+    private Membership fetch(final String validator, final long generation) {
         try {
             final Model model = Util.parse(delegate.get(containerId));
 
-            return model.listObjectsOfProperty(model.getProperty(LDP_CONTAINS)).mapWith(
-                    RDFNode::asResource)
-                    .mapWith(Resource::getURI).mapWith(URI::create).toSet();
+            return new Membership(model.listObjectsOfProperty(model.getProperty(LDP_CONTAINS))
+                    .mapWith(RDFNode::asResource)
+                    .mapWith(Resource::getURI).mapWith(URI::create).toSet(), validator, generation);
         } catch (final Exception e) {
             throw new RuntimeException("Error reading from " + containerId, e);
         }
+    }
+
+    private synchronized void added(final URI member) {
+        final Membership current = membership;
+        if (current != null) {
+            final Set<URI> members = new HashSet<>(current.members);
+            members.add(member);
+            membership = new Membership(members, current.validator, changed(current.generation));
+        } else {
+            changes.incrementAndGet();
+        }
+    }
 
+    private synchronized void removed(final URI member) {
+        final Membership current = membership;
+        if (current != null) {
+            final Set<URI> members = new HashSet<>(current.members);
+            members.remove(member);
+            membership = new Membership(members, current.validator, changed(current.generation));
+        } else {
+            changes.incrementAndGet();
+        }
+    }
+
+    /*
+     * Record a local change to membership, so that revalidation in progress discards what it read. Returns the
+     * generation of the changed membership, which remains current only if the membership it was derived from was.
+     */
+    private long changed(final long generation) {
+        if (changes.compareAndSet(generation, generation + 1)) {
+            return generation + 1;
+        }
+
+        changes.incrementAndGet();
+        return generation;
     }
 
     @Override
@@ -271,6 +389,7 @@ public class LdpContainerRegistry implements Registry {
             if (status.getStatusCode() != HttpStatus.SC_NO_CONTENT && status.getStatusCode() != HttpStatus.SC_OK) {
                 throw new RuntimeException(String.format("DELETE failed on %s: %s", uri, status));
             }
+            removed(uri);
         } catch (final Exception e) {
             throw new RuntimeException(uri.toString(), e);
         }
@@ -287,7 +406,28 @@ public class LdpContainerRegistry implements Registry {
     @Override
     public boolean contains(final URI id) {
         init.await();
-        return list().contains(id);
+
+        final Membership current = membership;
+        if (current != null && current.generation == changes.get() &&
+                System.nanoTime() - current.validated < membershipTtl) {
+            return current.members.contains(id);
+        }
+
+        return revalidate().members.contains(id);
+    }
+
+    /** Consider cached membership stale. */
+    @Override
+    public void update() {
+        changes.incrementAndGet();
+    }
+
+    /** Consider cached membership stale, if the given resource is within the container. */
+    @Override
+    public void update(final URI inResponseTo) {
+        if (hasInDomain(inResponseTo)) {
+            changes.incrementAndGet();
+        }
     }
 
     private InputStream initialContent() {
@@ -326,4 +466,21 @@ public class LdpContainerRegistry implements Registry {
                 .replaceAll("[:/?#\\[\\]@#%]", "-");
     }
 
+    /* Not modified once created; list() hands out copies */
+    private static class Membership {
+
+        final Set<URI> members;
+
+        final String validator;
+
+        final long generation;
+
+        final long validated = System.nanoTime();
+
+        Membership(final Set<URI> members, final String validator, final long generation) {
+            this.members = members;
+            this.validator = validator;
+            this.generation = generation;
+        }
+    }
 }
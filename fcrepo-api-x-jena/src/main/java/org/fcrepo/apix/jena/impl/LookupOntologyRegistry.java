@@ -18,18 +18,33 @@
 
 package org.fcrepo.apix.jena.impl;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.fcrepo.apix.jena.Util.parse;
 import static org.fcrepo.apix.jena.Util.rdfLanguage;
+import static org.fcrepo.apix.jena.Util.validatorOf;
+import static org.fcrepo.apix.jena.impl.LdpContainerRegistry.initializationOf;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.net.URI;
-import java.util.AbstractMap.SimpleEntry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.BinaryOperator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.fcrepo.apix.model.WebResource;
@@ -39,6 +54,7 @@ import org.fcrepo.apix.model.components.OntologyRegistry;
 import org.fcrepo.apix.model.components.Registry;
 import org.fcrepo.apix.model.components.Updateable;
 
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Resource;
 import org.osgi.service.component.annotations.Reference;
@@ -61,6 +77,13 @@ import org.slf4j.LoggerFactory;
  * message consumer to update the ontology registry in response to ontologies added/removed manually by clients via
  * LDP interactions with the repository.
  * </p>
+ * <p>
+ * Ontologies are fetched and parsed in parallel when indexing. If an {@link #setHttpClient(CloseableHttpClient) http
+ * client} is provided, the ETag (or Last-Modified date) of each ontology is recorded, and an ontology is only
+ * re-fetched when it changes. If an {@link #setIndexSnapshot(String) index snapshot} file is specified, the index is
+ * saved there after each update, and restored from there upon initialization; requests are served immediately from
+ * the restored index while it is brought up to date in the background.
+ * </p>
  *
  * @author apb@jhu.edu
  */
@@ -72,6 +95,9 @@ public class LookupOntologyRegistry implements OntologyRegistry, Updateable {
 
     private final Map<URI, URI> ontologyIRIsToLocation = new ConcurrentHashMap<>();
 
+    // Validator and ontology IRIs of each indexed location
+    private final Map<URI, Indexed> indexed = new ConcurrentHashMap<>();
+
     private Registry registry;
 
     private boolean indexIRIs = true;
@@ -80,8 +106,20 @@ public class LookupOntologyRegistry implements OntologyRegistry, Updateable {
 
     private Initialization init = Initialization.NONE;
 
+    private Initialization revalidation = Initialization.NONE;
+
     private boolean persistAsBinary;
 
+    private CloseableHttpClient client;
+
+    private int indexThreads = 4;
+
+    private ExecutorService indexer;
+
+    private final Object indexerLock = new Object();
+
+    private Path snapshot;
+
     private static final Logger LOG = LoggerFactory.getLogger(LookupOntologyRegistry.class);
 
     /**
@@ -113,6 +151,36 @@ public class LookupOntologyRegistry implements OntologyRegistry, Updateable {
         this.persistAsBinary = binary;
     }
 
+    /**
+     * Set the http client used for determining whether indexed ontologies have changed.
+     * <p>
+     * If not provided, every ontology is re-fetched on each index update.
+     * </p>
+     *
+     * @param client the client.
+     */
+    public void setHttpClient(final CloseableHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Set the maximum number of ontologies to fetch and parse concurrently when indexing.
+     *
+     * @param threads number of threads.
+     */
+    public void setIndexThreads(final int threads) {
+        this.indexThreads = threads;
+    }
+
+    /**
+     * Set the file in which to persist a snapshot of the index.
+     *
+     * @param path Path to the snapshot file. If null or empty, no snapshot is used.
+     */
+    public void setIndexSnapshot(final String path) {
+        this.snapshot = path == null || path.trim().isEmpty() ? null : Paths.get(path.trim());
+    }
+
     @Override
     public WebResource get(final URI id) {
         init.await();
@@ -197,10 +265,11 @@ public class LookupOntologyRegistry implements OntologyRegistry, Updateable {
 
     /**
      * If {@link #isIndexIRIs()} is {@code true}, attempt to read contents of registry in order to index ontologyIRIs.
-     * This method will block until the ontology registry becomes available.
+     * Access to the registry will block until the ontology registry becomes available.
      * <p>
-     * Essentially wraps a call to {@link #update()} with guards to disable indexing altogether, or to naively retry
-     * until the ontology registry becomes available.
+     * Essentially wraps a call to {@link #update()} with guards to disable indexing altogether, or to retry until the
+     * ontology registry becomes available. If an index snapshot can be restored, initialization completes as soon as
+     * it is loaded, and the update happens in the background.
      * </p>
      */
     public void init() {
@@ -210,23 +279,35 @@ public class LookupOntologyRegistry implements OntologyRegistry, Updateable {
                 return;
             }
 
-            for (boolean indexed = false; !indexed;) {
+            if (restoreSnapshot()) {
+                revalidation = initializer.initialize(() -> {
+                    LOG.info("Validating restored ontology index...");
+                    update();
+                });
+            } else {
                 LOG.info("Indexing ontologies...");
                 update();
-                indexed = true;
             }
-        });
+        }, initializationOf(registry));
     }
 
     /** shut down */
     public void shutdown() {
         init.cancel();
+        revalidation.cancel();
+        synchronized (indexerLock) {
+            if (indexer != null) {
+                indexer.shutdownNow();
+            }
+        }
     }
 
     private URI index(final URI ontologyLocation) {
         LOG.debug("Indexing ontology at {}", ontologyLocation);
 
-        for (final URI ontologyIRI : ontologyURIs(load(ontologyLocation))) {
+        final Set<URI> ontologyIRIs = ontologyURIs(load(ontologyLocation));
+
+        for (final URI ontologyIRI : ontologyIRIs) {
             if (ontologyIRIsToLocation.containsKey(ontologyIRI) && !ontologyLocation.equals(
                     ontologyIRIsToLocation.get(ontologyIRI))) {
                 throw new RuntimeException(String.format(
@@ -240,6 +321,9 @@ public class LookupOntologyRegistry implements OntologyRegistry, Updateable {
 
             ontologyIRIsToLocation.put(ontologyIRI, ontologyLocation);
         }
+
+        // No validator, so it will be re-fetched upon the next update
+        indexed.put(ontologyLocation, new Indexed(null, ontologyIRIs));
         return ontologyLocation;
     }
 
@@ -273,24 +357,148 @@ public class LookupOntologyRegistry implements OntologyRegistry, Updateable {
     }
 
     @Override
-    public void update() {
-        final Map<URI, URI> iriMap = registry.list().stream()
-                .flatMap(loc -> ontologyURIs(load(loc)).stream()
-                        .map(uri -> new SimpleEntry<URI, URI>(uri, loc)))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, CONFLICT));
+    public synchronized void update() {
 
-        ontologyIRIsToLocation.putAll(iriMap);
+        final List<URI> locations = registry.list().stream().collect(Collectors.toList());
+
+        // Fetch and parse in parallel; the join preserves list order, so conflicts are reported deterministically
+        final List<CompletableFuture<Indexed>> fetched = locations.stream()
+                .map(loc -> CompletableFuture.supplyAsync(() -> indexedAt(loc), indexer()))
+                .collect(Collectors.toList());
+
+        final Map<URI, Indexed> current = new LinkedHashMap<>();
+        final Map<URI, URI> iriMap = new HashMap<>();
+
+        for (int i = 0; i < locations.size(); i++) {
+            final URI loc = locations.get(i);
+            final Indexed entry = join(fetched.get(i));
+            current.put(loc, entry);
+
+            for (final URI iri : entry.ontologyIRIs) {
+                final URI existing = iriMap.putIfAbsent(iri, loc);
+                if (existing != null && !existing.equals(loc)) {
+                    throw new RuntimeException(
+                            String.format("Resources %s and %s both define the same ontology IRI", existing, loc));
+                }
+            }
+        }
 
+        ontologyIRIsToLocation.putAll(iriMap);
         ontologyIRIsToLocation.keySet().removeIf(iri -> !iriMap.containsKey(iri));
 
-        ontologyIRIsToLocation.entrySet().forEach(e -> LOG.info(
+        indexed.putAll(current);
+        indexed.keySet().retainAll(current.keySet());
+
+        ontologyIRIsToLocation.entrySet().forEach(e -> LOG.debug(
                 "Update: Indexing ontology IRI {} which resolves to location {}", e.getKey(), e.getValue()));
+        LOG.info("Indexed {} ontology IRIs from {} ontologies", iriMap.size(), current.size());
+
+        saveSnapshot();
     }
 
-    private static BinaryOperator<URI> CONFLICT = (v1, v2) -> {
-        throw new RuntimeException(
-                String.format("Resources %s and %s both define the same ontology IRI", v1, v2));
-    };
+    /* Use what has already been indexed for a location if it is unchanged, otherwise fetch and parse it */
+    private Indexed indexedAt(final URI location) {
+        final String validator = validatorOf(client, location);
+        final Indexed known = indexed.get(location);
+
+        if (validator != null && known != null && validator.equals(known.validator)) {
+            return known;
+        }
+
+        return new Indexed(validator, ontologyURIs(load(location)));
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private ExecutorService indexer() {
+        synchronized (indexerLock) {
+            if (indexer == null) {
+                final AtomicInteger count = new AtomicInteger();
+                indexer = Executors.newFixedThreadPool(Math.max(1, indexThreads), r -> {
+                    final Thread t = new Thread(r, "apix-ontology-index-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return indexer;
+        }
+    }
+
+    /*
+     * Snapshot format is one line per location: the location, its validator (may be empty), then its ontology IRIs,
+     * separated by tabs.
+     */
+    private void saveSnapshot() {
+        if (snapshot == null) {
+            return;
+        }
+
+        try {
+            final Path dir = snapshot.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+
+            final Path tmp = Files.createTempFile(dir, "ontology-index", ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, UTF_8)) {
+                for (final Map.Entry<URI, Indexed> entry : indexed.entrySet()) {
+                    out.write(entry.getKey().toString());
+                    out.write('\t');
+                    out.write(entry.getValue().validator != null ? entry.getValue().validator : "");
+                    for (final URI iri : entry.getValue().ontologyIRIs) {
+                        out.write('\t');
+                        out.write(iri.toString());
+                    }
+                    out.newLine();
+                }
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final Exception e) {
+            LOG.warn("Could not save ontology index snapshot to {}", snapshot, e);
+        }
+    }
+
+    private boolean restoreSnapshot() {
+        if (snapshot == null || !Files.exists(snapshot)) {
+            return false;
+        }
+
+        final Map<URI, Indexed> restored = new LinkedHashMap<>();
+        final Map<URI, URI> iriMap = new HashMap<>();
+
+        try {
+            for (final String line : Files.readAllLines(snapshot, UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                final String[] fields = line.split("\t", -1);
+                final URI location = URI.create(fields[0]);
+                final Set<URI> iris = Arrays.stream(fields, 2, fields.length)
+                        .map(URI::create)
+                        .collect(Collectors.toSet());
+
+                restored.put(location, new Indexed(fields[1].isEmpty() ? null : fields[1], iris));
+                iris.forEach(iri -> iriMap.put(iri, location));
+            }
+        } catch (final Exception e) {
+            LOG.warn("Could not restore ontology index snapshot from {}, re-indexing", snapshot, e);
+            return false;
+        }
+
+        indexed.putAll(restored);
+        ontologyIRIsToLocation.putAll(iriMap);
+
+        LOG.info("Restored index of {} ontologies from snapshot {}", restored.size(), snapshot);
+        return true;
+    }
 
     @Override
     public void update(final URI inResponseTo) {
@@ -298,4 +506,16 @@ public class LookupOntologyRegistry implements OntologyRegistry, Updateable {
             update();
         }
     }
+
+    private static class Indexed {
+
+        final String validator;
+
+        final Set<URI> ontologyIRIs;
+
+        Indexed(final String validator, final Set<URI> ontologyIRIs) {
+            this.validator = validator;
+            this.ontologyIRIs = ontologyIRIs;
+        }
+    }
 }
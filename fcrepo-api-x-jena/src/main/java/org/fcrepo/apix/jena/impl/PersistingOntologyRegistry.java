@@ -19,8 +19,11 @@
 package org.fcrepo.apix.jena.impl;
 
 import java.net.URI;
+import java.util.stream.Stream;
 
+import org.fcrepo.apix.model.ExtensionChange;
 import org.fcrepo.apix.model.WebResource;
+import org.fcrepo.apix.model.components.ExtensionListener;
 import org.fcrepo.apix.model.components.ExtensionRegistry;
 import org.fcrepo.apix.model.components.OntologyRegistry;
 import org.fcrepo.apix.model.components.OntologyService;
@@ -33,10 +36,14 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Persists ontologies if not present in a registry.
+ * <p>
+ * Ontologies used by extensions are loaded (and thus persisted) when extensions are added or changed.
+ * </p>
  *
  * @author apb@jhu.edu
  */
-public class PersistingOntologyRegistry extends WrappingRegistry implements OntologyRegistry, Updateable {
+public class PersistingOntologyRegistry extends WrappingRegistry implements OntologyRegistry, Updateable,
+        ExtensionListener {
 
     static final Logger LOG = LoggerFactory.getLogger(PersistingOntologyRegistry.class);
 
@@ -122,15 +129,26 @@ public class PersistingOntologyRegistry extends WrappingRegistry implements Onto
 
     @Override
     public void update() {
-        extensionRegistry.list().forEach(this::update);
+        extensionRegistry.list().forEach(uri -> loadOntologies(uri, extensionRegistry.get(uri)));
     }
 
+    /** Extension changes are handled by {@link #onChange(ExtensionChange)} */
     @Override
     public void update(final URI inResponseTo) {
-        if (doPersist && extensionRegistry.hasInDomain(inResponseTo)) {
-            try (WebResource extension = extensionRegistry.get(inResponseTo)) {
-                LOG.debug("Loading ontologies from <{}>", inResponseTo);
-                ontologyService.parseOntology(extension);
+        // Nothing to do
+    }
+
+    @Override
+    public void onChange(final ExtensionChange change) {
+        Stream.concat(change.added().stream(), change.changed().stream())
+                .forEach(e -> loadOntologies(e.uri(), e.getResource()));
+    }
+
+    private void loadOntologies(final URI uri, final WebResource extension) {
+        if (doPersist) {
+            try (WebResource resource = extension) {
+                LOG.debug("Loading ontologies from <{}>", uri);
+                ontologyService.parseOntology(resource);
             } catch (final Exception e) {
                 throw new RuntimeException(e);
             }
@@ -18,6 +18,9 @@
 
 package org.fcrepo.apix.jena.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.concurrent.CountDownLatch;
@@ -25,9 +28,11 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.fcrepo.apix.model.components.Initializer.Initialization;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -47,6 +52,11 @@ public class InitMgrTest {
         toTest.setRetryWait(10);
     }
 
+    @After
+    public void tearDown() {
+        toTest.shutdown();
+    }
+
     // No exceptions or timeouts should be seen for a quick and easy initialization.
     @Test
     public void successfulInitTest() throws Exception {
@@ -147,6 +157,118 @@ public class InitMgrTest {
 
     }
 
+    // Make sure a task is not run until its dependencies have succeeded
+    @Test
+    public void dependencyTest() throws Exception {
+        final CountDownLatch dependencyReady = new CountDownLatch(1);
+        final AtomicInteger dependentAttempts = new AtomicInteger();
+
+        final Initialization dependency = toTest.initialize(() -> {
+            if (dependencyReady.getCount() > 0) {
+                throw new RuntimeException("Not yet");
+            }
+        });
+
+        final Initialization dependent = toTest.initialize(() -> {
+            dependentAttempts.incrementAndGet();
+        }, dependency, Initialization.NONE);
+
+        Thread.sleep(100);
+        assertEquals(0, dependentAttempts.get());
+
+        dependencyReady.countDown();
+
+        attempt(() -> {
+            dependent.await();
+        });
+
+        dependency.verify();
+        assertEquals(1, dependentAttempts.get());
+        assertTrue(toTest.getTimings().size() >= 2);
+    }
+
+    // A cancelled dependency should fail its dependents, rather than leave them waiting forever.
+    @Test
+    public void cancelledDependencyTest() throws Exception {
+        final Initialization dependency = toTest.initialize(() -> {
+            throw new RuntimeException();
+        });
+
+        final Initialization dependent = toTest.initialize(() -> {
+            // Immediate success
+        }, dependency);
+
+        dependency.cancel();
+
+        try {
+            attempt(() -> {
+                dependent.await();
+            });
+            fail("Should have failed");
+        } catch (final TimeoutException e) {
+            fail("Should not have failed with timeout exception");
+        } catch (final Exception e) {
+            // Expected
+        }
+    }
+
+    // Awaiting an unfinished initialization from within another should fail the waiting attempt, not block it.
+    @Test
+    public void awaitWithinInitializationTest() throws Exception {
+        toTest.setMaxThreads(1);
+
+        final Initialization never = toTest.initialize(() -> {
+            throw new RuntimeException();
+        });
+
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch retried = new CountDownLatch(2);
+
+        final Initialization waiting = toTest.initialize(() -> {
+            attempts.incrementAndGet();
+            retried.countDown();
+            never.await();
+        });
+
+        // With a single thread, this can only succeed if neither task monopolizes the thread
+        assertTrue(retried.await(5, TimeUnit.SECONDS));
+
+        try {
+            waiting.verify();
+            fail("Should not be initialized");
+        } catch (final IllegalStateException e) {
+            // Expected
+        }
+
+        never.cancel();
+        waiting.cancel();
+    }
+
+    // Retry delays should grow exponentially up to the limit, with jitter
+    @Test
+    public void backoffTest() {
+        toTest.setRetryWait(100);
+        toTest.setMaxRetryWait(1000);
+
+        for (int i = 0; i < 100; i++) {
+            final long first = toTest.backoff(1);
+            assertTrue(first >= 50 && first <= 100);
+
+            final long third = toTest.backoff(3);
+            assertTrue(third >= 200 && third <= 400);
+
+            final long capped = toTest.backoff(50);
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+
+        boolean jittered = false;
+        for (int i = 0; i < 100 && !jittered; i++) {
+            jittered = toTest.backoff(5) != toTest.backoff(5);
+        }
+        assertTrue(jittered);
+        assertFalse(toTest.backoff(1) > 100);
+    }
+
     static void attempt(final Runnable task) throws Exception {
         attempt(task, 1, TimeUnit.SECONDS);
     }
@@ -25,18 +25,26 @@ import static org.fcrepo.apix.model.Ontologies.Apix.PROP_BINDS_TO;
 import static org.fcrepo.apix.model.Ontologies.Apix.PROP_CONSUMES_SERVICE;
 import static org.fcrepo.apix.model.Ontologies.Apix.PROP_EXPOSES_SERVICE;
 import static org.fcrepo.apix.model.Ontologies.Apix.PROP_EXPOSES_SERVICE_AT;
+import static org.fcrepo.apix.model.Ontologies.Apix.PROP_OUTGOING_INTERCEPT_MODE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.fcrepo.apix.model.Extension;
+import org.fcrepo.apix.model.Extension.OutgoingMode;
 import org.fcrepo.apix.model.Extension.Scope;
+import org.fcrepo.apix.model.ExtensionChange;
 import org.fcrepo.apix.model.Service;
 import org.fcrepo.apix.model.components.Registry;
+import org.fcrepo.apix.model.components.ResourceNotFoundException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -220,4 +228,132 @@ public class JenaExtensionRegistryTest {
                         Arrays.asList(service1.uri(), service2.uri())));
     }
 
+    @Test
+    public void outgoingInterceptModeTest() {
+        final URI EXTENSION_2_URI = URI.create(EXTENSION_URI + "2");
+        final URI EXTENSION_3_URI = URI.create(EXTENSION_URI + "3");
+
+        when(registryDelegate.get(EXTENSION_URI)).thenReturn(rdfResource(EXTENSION, ""));
+        when(registryDelegate.get(EXTENSION_2_URI)).thenReturn(rdfResource(EXTENSION_2_URI.toString(),
+                ltriple(EXTENSION_2_URI.toString(), PROP_OUTGOING_INTERCEPT_MODE, "async")));
+        when(registryDelegate.get(EXTENSION_3_URI)).thenReturn(rdfResource(EXTENSION_3_URI.toString(),
+                ltriple(EXTENSION_3_URI.toString(), PROP_OUTGOING_INTERCEPT_MODE, "bogus")));
+
+        assertEquals(OutgoingMode.SERIAL, toTest.getExtension(EXTENSION_URI).intercepted().outgoing());
+        assertEquals(OutgoingMode.ASYNC, toTest.getExtension(EXTENSION_2_URI).intercepted().outgoing());
+        assertEquals(OutgoingMode.SERIAL, toTest.getExtension(EXTENSION_3_URI).intercepted().outgoing());
+    }
+
+    // Verify that extensions are read once into a snapshot, and refreshed in response to updates
+    @Test
+    public void snapshotTest() {
+        final String BINDING_CLASS_1 = "test:/binding1";
+        final String BINDING_CLASS_2 = "test:/binding2";
+
+        when(registryDelegate.list()).thenReturn(Arrays.asList(EXTENSION_URI));
+        when(registryDelegate.hasInDomain(EXTENSION_URI)).thenReturn(true);
+        when(registryDelegate.get(EXTENSION_URI)).thenReturn(rdfResource(EXTENSION, triple(EXTENSION,
+                PROP_BINDS_TO, BINDING_CLASS_1)));
+
+        assertEquals(URI.create(BINDING_CLASS_1), toTest.getExtensions().iterator().next().bindingClass());
+        assertEquals(URI.create(BINDING_CLASS_1), toTest.getExtensions().iterator().next().bindingClass());
+        verify(registryDelegate, times(1)).get(EXTENSION_URI);
+
+        when(registryDelegate.get(EXTENSION_URI)).thenReturn(rdfResource(EXTENSION, triple(EXTENSION,
+                PROP_BINDS_TO, BINDING_CLASS_2)));
+        toTest.update(EXTENSION_URI);
+
+        assertEquals(URI.create(BINDING_CLASS_2), toTest.getExtensions().iterator().next().bindingClass());
+        verify(registryDelegate, times(1)).list();
+
+        when(registryDelegate.get(EXTENSION_URI)).thenThrow(new ResourceNotFoundException("gone"));
+        toTest.update(EXTENSION_URI);
+
+        assertTrue(toTest.getExtensions().isEmpty());
+    }
+
+    // Verify that listeners are given the difference between snapshots
+    @Test
+    public void extensionChangeTest() {
+        final String BINDING_CLASS_1 = "test:/binding1";
+        final String BINDING_CLASS_2 = "test:/binding2";
+        final String CONTAINER = "http://example.org/extensions";
+        final String EXTENSION_2 = CONTAINER + "/2";
+        final URI EXTENSION_2_URI = URI.create(EXTENSION_2);
+
+        final List<ExtensionChange> changes = new ArrayList<>();
+        toTest.setListeners(Arrays.asList(changes::add));
+
+        when(registryDelegate.list()).thenReturn(Arrays.asList(EXTENSION_URI));
+        when(registryDelegate.hasInDomain(URI.create(CONTAINER))).thenReturn(true);
+        when(registryDelegate.hasInDomain(EXTENSION_URI)).thenReturn(true);
+        when(registryDelegate.get(EXTENSION_URI)).thenReturn(rdfResource(EXTENSION, triple(EXTENSION,
+                PROP_BINDS_TO, BINDING_CLASS_1)));
+
+        toTest.update();
+        assertEquals(1, changes.size());
+        assertEquals(EXTENSION_URI, changes.get(0).added().iterator().next().uri());
+
+        // Unchanged content results in no change
+        toTest.update(EXTENSION_URI);
+        assertEquals(1, changes.size());
+
+        when(registryDelegate.get(EXTENSION_URI)).thenReturn(rdfResource(EXTENSION, triple(EXTENSION,
+                PROP_BINDS_TO, BINDING_CLASS_2)));
+        toTest.update(EXTENSION_URI);
+        assertEquals(2, changes.size());
+        assertEquals(URI.create(BINDING_CLASS_2), changes.get(1).changed().iterator().next().bindingClass());
+        assertTrue(changes.get(1).added().isEmpty());
+
+        // A new member is read, existing ones are not
+        when(registryDelegate.list()).thenReturn(Arrays.asList(EXTENSION_URI, EXTENSION_2_URI));
+        when(registryDelegate.get(EXTENSION_2_URI)).thenReturn(rdfResource(EXTENSION_2, triple(EXTENSION_2,
+                PROP_BINDS_TO, BINDING_CLASS_1)));
+        toTest.update(URI.create(CONTAINER));
+        assertEquals(3, changes.size());
+        assertEquals(EXTENSION_2_URI, changes.get(2).added().iterator().next().uri());
+        assertTrue(changes.get(2).changed().isEmpty());
+        verify(registryDelegate, times(3)).get(EXTENSION_URI);
+
+        when(registryDelegate.list()).thenReturn(Arrays.asList(EXTENSION_2_URI));
+        toTest.update(URI.create(CONTAINER));
+        assertEquals(4, changes.size());
+        assertEquals(Arrays.asList(EXTENSION_URI), new ArrayList<>(changes.get(3).invalidated()));
+        assertEquals(URI.create(BINDING_CLASS_2), changes.get(3).removed().iterator().next().bindingClass());
+    }
+
+    // Verify that listeners are notified without the registry lock, and a failed change is re-delivered
+    @Test
+    public void failedListenerTest() {
+        final String BINDING_CLASS = "test:/binding";
+        final List<ExtensionChange> changes = new ArrayList<>();
+        final List<Boolean> locked = new ArrayList<>();
+
+        toTest.setListeners(Arrays.asList(change -> {
+            locked.add(Thread.holdsLock(toTest));
+            if (locked.size() == 1) {
+                throw new RuntimeException("Could not load ontologies");
+            }
+            changes.add(change);
+        }));
+
+        when(registryDelegate.list()).thenReturn(Arrays.asList(EXTENSION_URI));
+        when(registryDelegate.hasInDomain(EXTENSION_URI)).thenReturn(true);
+        when(registryDelegate.get(EXTENSION_URI)).thenReturn(rdfResource(EXTENSION, triple(EXTENSION,
+                PROP_BINDS_TO, BINDING_CLASS)));
+
+        toTest.update();
+        assertTrue(changes.isEmpty());
+
+        // Unchanged content, but the failed change is still pending
+        toTest.update(EXTENSION_URI);
+        assertEquals(1, changes.size());
+        assertEquals(EXTENSION_URI, changes.get(0).added().iterator().next().uri());
+
+        // Now applied, so not delivered again
+        toTest.update(URI.create("http://example.org/unrelated"));
+        assertEquals(1, changes.size());
+
+        assertEquals(Arrays.asList(false, false), locked);
+    }
 }
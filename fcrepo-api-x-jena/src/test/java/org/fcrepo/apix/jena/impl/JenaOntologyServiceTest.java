@@ -20,6 +20,10 @@ package org.fcrepo.apix.jena.impl;
 
 import static org.fcrepo.apix.jena.Util.rdfResource;
 import static org.fcrepo.apix.jena.Util.triple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -27,6 +31,7 @@ import static org.mockito.Mockito.when;
 
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.util.Set;
 
 import org.fcrepo.apix.model.Ontology;
 import org.fcrepo.apix.model.WebResource;
@@ -78,6 +83,22 @@ public class JenaOntologyServiceTest {
 
     static final String OWL_ONTOLOGY = "http://www.w3.org/2002/07/owl#Ontology";
 
+    static final String OWL_EQUIVALENT_CLASS = "http://www.w3.org/2002/07/owl#equivalentClass";
+
+    static final String OWL_ON_PROPERTY = "http://www.w3.org/2002/07/owl#onProperty";
+
+    static final String OWL_SOME_VALUES_FROM = "http://www.w3.org/2002/07/owl#someValuesFrom";
+
+    static final String PROP_HAS = "http://example.org/props#has";
+
+    static final String PROP_HAS_PART = "http://example.org/props#hasPart";
+
+    static final String RDFS_DOMAIN = "http://www.w3.org/2000/01/rdf-schema#domain";
+
+    static final String RDFS_RANGE = "http://www.w3.org/2000/01/rdf-schema#range";
+
+    static final String SUBPROPERTY_OF = "http://www.w3.org/2000/01/rdf-schema#subPropertyOf";
+
     static OntologyRegistry ONTOLOGY_REGISTRY = mock(OntologyRegistry.class);
 
     @BeforeClass
@@ -237,4 +258,79 @@ public class JenaOntologyServiceTest {
         assertTrue(toTest.inferClasses(URI.create(individualURI), individual, ontology).contains(URI.create(
                 CLASS_A)));
     }
+
+    // Verify that classes defined by restrictions are inferred from the instance's properties,
+    // and that inference leaves the shared ontology untouched
+    @Test
+    public void inferClassesUsingRestrictionTest() {
+        final Ontology ontology = toTest.parseOntology(rdfResource(null,
+                triple(CLASS_C, OWL_EQUIVALENT_CLASS, "_:restriction").replace("<_:restriction>", "_:restriction") +
+                        "_:restriction <" + OWL_ON_PROPERTY + "> <" + PROP_HAS + "> .\n" +
+                        "_:restriction <" + OWL_SOME_VALUES_FROM + "> <" + CLASS_B + "> .\n"));
+
+        final long ontologySize = toTest.ont(ontology).getBaseModel().size();
+
+        final String individualURI = "test:/individual";
+        final String partURI = "test:/part";
+
+        final WebResource individual = mock(WebResource.class);
+        when(individual.contentType()).thenReturn("application/n-triples");
+        when(individual.representation()).thenReturn(IOUtils.toInputStream(
+                triple(individualURI, PROP_HAS, partURI) + triple(partURI, RDF_TYPE, CLASS_B),
+                Charset.defaultCharset()));
+
+        assertTrue(toTest.inferClasses(URI.create(individualURI), individual, ontology).contains(URI.create(
+                CLASS_C)));
+        assertEquals(ontologySize, toTest.ont(ontology).getBaseModel().size());
+    }
+
+    // Verify that classes implied by domains and ranges are inferred without reasoning over the instance
+    @Test
+    public void inferClassesUsingDomainAndRangeTest() {
+        final Ontology ontology = toTest.parseOntology(rdfResource(null,
+                triple(CLASS_B, SUBCLASS_OF, CLASS_A) +
+                        triple(PROP_HAS, RDFS_DOMAIN, CLASS_B) +
+                        triple(PROP_HAS, RDFS_RANGE, CLASS_C) +
+                        triple(PROP_HAS_PART, SUBPROPERTY_OF, PROP_HAS)));
+
+        assertFalse(((JenaOntologyService.Ont) ontology).compiled().requiresInstanceReasoning());
+
+        final String individualURI = "test:/individual";
+
+        final WebResource subject = mock(WebResource.class);
+        when(subject.contentType()).thenReturn("application/n-triples");
+        when(subject.representation()).thenReturn(IOUtils.toInputStream(
+                triple(individualURI, PROP_HAS_PART, "test:/part"), Charset.defaultCharset()));
+
+        final Set<URI> subjectClasses = toTest.inferClasses(URI.create(individualURI), subject, ontology);
+        assertTrue(subjectClasses.contains(URI.create(CLASS_B)));
+        assertTrue(subjectClasses.contains(URI.create(CLASS_A)));
+        assertFalse(subjectClasses.contains(URI.create(CLASS_C)));
+
+        final WebResource object = mock(WebResource.class);
+        when(object.contentType()).thenReturn("application/n-triples");
+        when(object.representation()).thenReturn(IOUtils.toInputStream(
+                triple("test:/whole", PROP_HAS, individualURI) + triple(individualURI, RDF_TYPE, CLASS_E),
+                Charset.defaultCharset()));
+
+        final Set<URI> objectClasses = toTest.inferClasses(URI.create(individualURI), object, ontology);
+        assertTrue(objectClasses.contains(URI.create(CLASS_C)));
+        assertFalse(objectClasses.contains(URI.create(CLASS_B)));
+    }
+
+    // Verify that compiled ontologies are re-used until the ontology registry changes
+    @Test
+    public void compiledOntologyCacheTest() {
+        final URI changed = URI.create(ONT1);
+        when(ONTOLOGY_REGISTRY.hasInDomain(changed)).thenReturn(true);
+
+        final Ontology first = toTest.getOntology(URI.create(ONT5));
+        assertSame(first, toTest.getOntology(URI.create(ONT5)));
+
+        toTest.update(URI.create("http://example.org/unrelated"));
+        assertSame(first, toTest.getOntology(URI.create(ONT5)));
+
+        toTest.update(changed);
+        assertNotSame(first, toTest.getOntology(URI.create(ONT5)));
+    }
 }
@@ -24,12 +24,17 @@ import static org.fcrepo.apix.model.Ontologies.RDF_TYPE;
 import static org.fcrepo.apix.model.Ontologies.Service.CLASS_LDP_SERVICE_INSTANCE_REGISTRY;
 import static org.fcrepo.apix.model.Ontologies.Service.CLASS_SERVICE;
 import static org.fcrepo.apix.model.Ontologies.Service.PROP_CANONICAL;
+import static org.fcrepo.apix.model.Ontologies.Service.PROP_CONTAINS_SERVICE;
 import static org.fcrepo.apix.model.Ontologies.Service.PROP_HAS_ENDPOINT;
 import static org.fcrepo.apix.model.Ontologies.Service.PROP_HAS_SERVICE_INSTANCE;
 import static org.fcrepo.apix.model.Ontologies.Service.PROP_HAS_SERVICE_INSTANCE_REGISTRY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
@@ -154,4 +159,120 @@ public class JenaServiceRegistryTest {
         assertTrue(instanceURIs.containsAll(Arrays.asList(URI.create(SERVICE_ENDPOINT_1), URI.create(
                 SERVICE_ENDPOINT_2))));
     }
+
+    // Verifies that service topology is read once, and re-read when a resource it came from changes
+    @Test
+    public void instanceIndexTest() {
+        final String SERVICE = "http://example.org/service";
+        final URI SERVICE_URI = URI.create(SERVICE);
+        final String REGISTRY = "http://example.org/service/instances";
+        final URI REGISTRY_URI = URI.create(REGISTRY);
+        final String SERVICE_INSTANCE = REGISTRY + "#instance";
+        final String SERVICE_ENDPOINT_1 = "http://example.org/endpoints/1";
+        final String SERVICE_ENDPOINT_2 = "http://example.org/endpoints/2";
+
+        when(delegate.hasInDomain(any(URI.class))).thenReturn(true);
+        when(delegate.get(SERVICE_URI)).thenReturn(rdfResource(SERVICE,
+                triple(SERVICE, RDF_TYPE, CLASS_SERVICE) +
+                        triple(SERVICE, PROP_HAS_SERVICE_INSTANCE_REGISTRY, REGISTRY)));
+        when(delegate.get(REGISTRY_URI)).thenReturn(rdfResource(REGISTRY,
+                triple(REGISTRY, PROP_HAS_SERVICE_INSTANCE, SERVICE_INSTANCE) +
+                        triple(SERVICE_INSTANCE, PROP_HAS_ENDPOINT, SERVICE_ENDPOINT_1)));
+        when(delegate.get(URI.create(SERVICE_INSTANCE))).thenAnswer(i -> delegate.get(REGISTRY_URI));
+
+        assertEquals(Arrays.asList(URI.create(SERVICE_ENDPOINT_1)), toTest.instancesOf(toTest.getService(
+                SERVICE_URI)).instances().get(0).endpoints());
+        assertEquals(Arrays.asList(URI.create(SERVICE_ENDPOINT_1)), toTest.instancesOf(toTest.getService(
+                SERVICE_URI)).instances().get(0).endpoints());
+
+        verify(delegate, times(1)).get(SERVICE_URI);
+        verify(delegate, times(2)).get(REGISTRY_URI);
+
+        when(delegate.get(REGISTRY_URI)).thenReturn(rdfResource(REGISTRY,
+                triple(REGISTRY, PROP_HAS_SERVICE_INSTANCE, SERVICE_INSTANCE) +
+                        triple(SERVICE_INSTANCE, PROP_HAS_ENDPOINT, SERVICE_ENDPOINT_2)));
+        toTest.update(URI.create(SERVICE_INSTANCE));
+
+        assertEquals(Arrays.asList(URI.create(SERVICE_ENDPOINT_2)), toTest.instancesOf(toTest.getService(
+                SERVICE_URI)).instances().get(0).endpoints());
+        verify(delegate, times(1)).get(SERVICE_URI);
+    }
+
+    // Verifies that a change to one registry member re-reads only that member
+    @Test
+    public void incrementalMemberUpdateTest() {
+        final String CONTAINER = "http://example.org/services";
+        final URI CONTAINER_URI = URI.create(CONTAINER);
+        final String SERVICE_1 = CONTAINER + "/1";
+        final URI SERVICE_1_URI = URI.create(SERVICE_1);
+        final String SERVICE_2 = CONTAINER + "/2";
+        final URI SERVICE_2_URI = URI.create(SERVICE_2);
+        final String CANONICAL = "http://example.org/canonical/1";
+
+        toTest.setRegistryContainer(CONTAINER_URI);
+        when(delegate.hasInDomain(any(URI.class))).thenReturn(true);
+        when(delegate.list()).thenReturn(Arrays.asList(SERVICE_1_URI, SERVICE_2_URI));
+        when(delegate.get(CONTAINER_URI)).thenReturn(rdfResource(CONTAINER, ""));
+        when(delegate.get(SERVICE_1_URI)).thenAnswer(i -> rdfResource(SERVICE_1, triple(SERVICE_1, RDF_TYPE,
+                CLASS_SERVICE)));
+        when(delegate.get(SERVICE_2_URI)).thenAnswer(i -> rdfResource(SERVICE_2, triple(SERVICE_2, RDF_TYPE,
+                CLASS_SERVICE)));
+
+        toTest.update();
+        assertEquals(2, toTest.list().size());
+
+        when(delegate.get(SERVICE_1_URI)).thenAnswer(i -> rdfResource(SERVICE_1,
+                triple(SERVICE_1, RDF_TYPE, CLASS_SERVICE) + triple(SERVICE_1, PROP_CANONICAL, CANONICAL)));
+
+        toTest.update(SERVICE_1_URI);
+
+        assertTrue(toTest.contains(URI.create(CANONICAL)));
+        assertEquals(SERVICE_1_URI, toTest.getService(URI.create(CANONICAL)).uri());
+        verify(delegate, times(1)).list();
+        verify(delegate, times(1)).get(CONTAINER_URI);
+
+        // Read for its declarations, then as a service, during the initial update only
+        verify(delegate, times(2)).get(SERVICE_2_URI);
+    }
+
+    // Verifies that a change to the registry container indexes added members and forgets removed ones
+    @Test
+    public void incrementalMembershipUpdateTest() {
+        final String CONTAINER = "http://example.org/services";
+        final URI CONTAINER_URI = URI.create(CONTAINER);
+        final String SERVICE_1 = CONTAINER + "/1";
+        final URI SERVICE_1_URI = URI.create(SERVICE_1);
+        final String SERVICE_2 = CONTAINER + "/2";
+        final URI SERVICE_2_URI = URI.create(SERVICE_2);
+        final String EXTERNAL = "http://example.org/external";
+        final URI EXTERNAL_URI = URI.create(EXTERNAL);
+
+        toTest.setRegistryContainer(CONTAINER_URI);
+        when(delegate.hasInDomain(any(URI.class))).thenReturn(true);
+        when(delegate.list()).thenReturn(Arrays.asList(SERVICE_1_URI));
+        when(delegate.get(CONTAINER_URI)).thenAnswer(i -> rdfResource(CONTAINER, ""));
+        when(delegate.get(SERVICE_1_URI)).thenAnswer(i -> rdfResource(SERVICE_1, triple(SERVICE_1, RDF_TYPE,
+                CLASS_SERVICE)));
+        when(delegate.get(SERVICE_2_URI)).thenAnswer(i -> rdfResource(SERVICE_2, triple(SERVICE_2, RDF_TYPE,
+                CLASS_SERVICE)));
+        when(delegate.get(EXTERNAL_URI)).thenAnswer(i -> rdfResource(EXTERNAL, triple(EXTERNAL, RDF_TYPE,
+                CLASS_SERVICE)));
+
+        toTest.update();
+        assertTrue(toTest.contains(SERVICE_1_URI));
+
+        // Member 1 is removed, member 2 added, and an external service explicitly registered
+        when(delegate.list()).thenReturn(Arrays.asList(SERVICE_2_URI));
+        when(delegate.get(CONTAINER_URI)).thenAnswer(i -> rdfResource(CONTAINER, triple(CONTAINER,
+                PROP_CONTAINS_SERVICE, EXTERNAL)));
+
+        toTest.update(CONTAINER_URI);
+
+        assertFalse(toTest.contains(SERVICE_1_URI));
+        assertTrue(toTest.contains(SERVICE_2_URI));
+        assertTrue(toTest.contains(EXTERNAL_URI));
+
+        // Removed members aren't re-read
+        verify(delegate, times(2)).get(SERVICE_1_URI);
+    }
 }
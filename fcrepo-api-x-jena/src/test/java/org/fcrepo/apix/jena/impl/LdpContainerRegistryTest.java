@@ -32,6 +32,7 @@ import java.net.URI;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.Registry;
@@ -46,9 +47,11 @@ import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -206,6 +209,123 @@ public class LdpContainerRegistryTest {
         assertTrue(expectedMembers.containsAll(members));
     }
 
+    // Verifies that membership is answered from memory, and is revalidated by ETag after changes are reported
+    @Test
+    public void containsTest() throws Exception {
+        final URI containerURI = URI.create("http://example.org/container");
+        final URI member = URI.create("http://example.org/container/member");
+        final URI notMember = URI.create("http://example.org/container/other");
+
+        toTest.setContainer(containerURI);
+        toTest.setRegistryDelegate(registryDelegate);
+        toTest.setHttpClient(client);
+        toTest.setCreateContainer(false);
+        toTest.init();
+
+        final String rdf = String.format("<%s> <%s> <%s> .", containerURI, LDP_CONTAINS, member);
+        when(registryDelegate.get(containerURI)).then(i -> WebResource.of(IOUtils.toInputStream(rdf, "UTF-8"),
+                "application/n-triples"));
+        when(headStatus.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(headResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+
+        assertTrue(toTest.contains(member));
+        assertFalse(toTest.contains(notMember));
+        assertTrue(toTest.contains(member));
+
+        verify(registryDelegate, times(1)).get(containerURI);
+        verify(client, times(1)).execute(isA(HttpHead.class));
+
+        // A reported change causes revalidation, but the container is unchanged so is not re-read
+        toTest.update(notMember);
+        assertTrue(toTest.contains(member));
+        verify(client, times(2)).execute(isA(HttpHead.class));
+        verify(registryDelegate, times(1)).get(containerURI);
+
+        // Changes outside the container are irrelevant
+        toTest.update(URI.create("http://example.org/elsewhere"));
+        assertTrue(toTest.contains(member));
+        verify(client, times(2)).execute(isA(HttpHead.class));
+
+        // Now the container has changed, so it is re-read
+        when(headResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v2\""));
+        toTest.update();
+        assertTrue(toTest.contains(member));
+        verify(registryDelegate, times(2)).get(containerURI);
+    }
+
+    // Verifies that membership is revalidated once it is older than the ttl
+    @Test
+    public void membershipTtlTest() throws Exception {
+        final URI containerURI = URI.create("http://example.org/container");
+        final URI member = URI.create("http://example.org/container/member");
+
+        toTest.setContainer(containerURI);
+        toTest.setRegistryDelegate(registryDelegate);
+        toTest.setHttpClient(client);
+        toTest.setCreateContainer(false);
+        toTest.setMembershipTtl(0);
+        toTest.init();
+
+        final String rdf = String.format("<%s> <%s> <%s> .", containerURI, LDP_CONTAINS, member);
+        when(registryDelegate.get(containerURI)).then(i -> WebResource.of(IOUtils.toInputStream(rdf, "UTF-8"),
+                "application/n-triples"));
+        when(headStatus.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(headResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+
+        assertTrue(toTest.contains(member));
+        assertTrue(toTest.contains(member));
+
+        verify(client, times(2)).execute(isA(HttpHead.class));
+        verify(registryDelegate, times(1)).get(containerURI);
+    }
+
+    // Verifies that a listing read before a member was added does not replace membership that includes it
+    @SuppressWarnings("unchecked")
+    @Test
+    public void addedDuringRevalidationTest() throws Exception {
+        final URI containerURI = URI.create("http://example.org/container");
+        final URI member = URI.create("http://example.org/container/member");
+        final URI created = URI.create("http://example.org/container/created");
+
+        toTest.setContainer(containerURI);
+        toTest.setRegistryDelegate(registryDelegate);
+        toTest.setHttpClient(client);
+        toTest.setCreateContainer(false);
+        toTest.init();
+
+        final String before = String.format("<%s> <%s> <%s> .", containerURI, LDP_CONTAINS, member);
+        final String after = before + String.format("\n<%s> <%s> <%s> .", containerURI, LDP_CONTAINS, created);
+        final AtomicInteger reads = new AtomicInteger();
+
+        when(headStatus.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(headResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+        when(entityStatus.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
+        when(entityResponse.getFirstHeader(HttpHeaders.LOCATION)).thenReturn(new BasicHeader(HttpHeaders.LOCATION,
+                created.toString()));
+        when(client.execute(isA(HttpPost.class), isA(ResponseHandler.class))).then(i -> ((ResponseHandler<?>) i
+                .getArguments()[1]).handleResponse(entityResponse));
+
+        // The second read races with the creation of a new member, and returns the listing from before it
+        when(registryDelegate.get(containerURI)).then(i -> {
+            if (reads.incrementAndGet() == 2) {
+                toTest.put(WebResource.of(IOUtils.toInputStream("", "UTF-8"), "text/turtle"));
+                return WebResource.of(IOUtils.toInputStream(before, "UTF-8"), "application/n-triples");
+            }
+            return WebResource.of(IOUtils.toInputStream(reads.get() == 1 ? before : after, "UTF-8"),
+                    "application/n-triples");
+        });
+
+        assertTrue(toTest.contains(member));
+        assertFalse(toTest.contains(created));
+
+        when(headResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v2\""));
+        toTest.update();
+
+        assertTrue(toTest.contains(member));
+        assertTrue(toTest.contains(created));
+        verify(registryDelegate, times(3)).get(containerURI);
+    }
+
     @Test
     public void domainTest() {
         final String CONTAINER = "http://example.org/container";
@@ -18,24 +18,40 @@
 
 package org.fcrepo.apix.jena.impl;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.Registry;
 import org.fcrepo.apix.test.SynchronousInitializer;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
@@ -55,6 +71,18 @@ public class LookupOntologyRegistryTest {
     @Mock
     Registry delegate;
 
+    @Mock
+    CloseableHttpClient client;
+
+    @Mock
+    CloseableHttpResponse response;
+
+    @Mock
+    StatusLine status;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setUp() {
         toTest.setInitializer(new SynchronousInitializer());
@@ -152,6 +180,89 @@ public class LookupOntologyRegistryTest {
         verifyZeroInteractions(delegate);
     }
 
+    // Verifies that ontologies are fetched concurrently when indexing
+    @Test
+    public void parallelIndexTest() throws Exception {
+        final int count = 4;
+        final List<URI> locations = new ArrayList<>();
+
+        // Each fetch can only proceed once all of them are in progress
+        final CyclicBarrier allFetching = new CyclicBarrier(count);
+
+        for (int i = 0; i < count; i++) {
+            final URI location = URI.create("http://example.org/location/" + i);
+            locations.add(location);
+            when(delegate.get(location)).then(invocation -> {
+                allFetching.await(5, TimeUnit.SECONDS);
+                return ontologyAt(location);
+            });
+        }
+        when(delegate.list()).thenReturn(locations);
+
+        toTest.setIndexThreads(count);
+        toTest.setRegistryDelegate(delegate);
+        toTest.init();
+
+        for (final URI location : locations) {
+            assertTrue(toTest.contains(ontologyIRIOf(location)));
+        }
+
+        toTest.shutdown();
+    }
+
+    // Verifies that an index snapshot is restored upon initialization, and that only changed ontologies are re-read
+    @Test
+    public void snapshotTest() throws Exception {
+        final URI location = URI.create("http://example.org/location");
+        final File snapshot = new File(folder.getRoot(), "index/snapshot.tsv");
+
+        when(delegate.list()).thenReturn(Arrays.asList(location));
+        when(delegate.get(location)).then(invocation -> ontologyAt(location));
+        when(client.execute(any(HttpUriRequest.class))).thenReturn(response);
+        when(response.getStatusLine()).thenReturn(status);
+        when(status.getStatusCode()).thenReturn(200);
+        when(response.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+
+        toTest.setRegistryDelegate(delegate);
+        toTest.setHttpClient(client);
+        toTest.setIndexSnapshot(snapshot.getPath());
+        toTest.init();
+
+        assertTrue(snapshot.exists());
+        verify(delegate, times(1)).get(location);
+
+        // Restart from the snapshot; the ontology is unchanged, so it is not fetched again
+        final LookupOntologyRegistry restarted = new LookupOntologyRegistry();
+        restarted.setInitializer(new SynchronousInitializer());
+        restarted.setRegistryDelegate(delegate);
+        restarted.setHttpClient(client);
+        restarted.setIndexSnapshot(snapshot.getPath());
+        restarted.init();
+
+        assertTrue(restarted.contains(ontologyIRIOf(location)));
+        verify(delegate, times(1)).get(location);
+
+        // Now it has changed, so it is
+        when(response.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v2\""));
+        restarted.update();
+
+        assertTrue(restarted.contains(ontologyIRIOf(location)));
+        verify(delegate, times(2)).get(location);
+
+        toTest.shutdown();
+        restarted.shutdown();
+    }
+
+    private static URI ontologyIRIOf(final URI location) {
+        return URI.create(location + "#Ontology");
+    }
+
+    private static WebResource ontologyAt(final URI location) {
+        return WebResource.of(new ByteArrayInputStream(String.format(
+                "<%s> a <http://www.w3.org/2002/07/owl#Ontology> .", ontologyIRIOf(location)).getBytes(UTF_8)),
+                "text/turtle", location, null);
+    }
+
     private class ReadableResource implements WebResource {
 
         private final byte[] content;
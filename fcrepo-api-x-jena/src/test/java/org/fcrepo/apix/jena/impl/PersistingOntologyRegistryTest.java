@@ -28,7 +28,10 @@ import static org.mockito.Mockito.when;
 
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Collections;
 
+import org.fcrepo.apix.model.Extension;
+import org.fcrepo.apix.model.ExtensionChange;
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.ExtensionRegistry;
 import org.fcrepo.apix.model.components.OntologyRegistry;
@@ -62,6 +65,9 @@ public class PersistingOntologyRegistryTest {
     @Mock
     WebResource resource;
 
+    @Mock
+    Extension extension;
+
     final URI ontologyIRI = URI.create("http://example.org/ontologyIRI");
 
     final URI extensionURI = URI.create("test:extension");
@@ -81,6 +87,8 @@ public class PersistingOntologyRegistryTest {
         when(ontologyRegistry.get(ontologyIRI)).thenReturn(resource);
         when(extensionRegistry.hasInDomain(extensionURI)).thenReturn(true);
         when(extensionRegistry.get(extensionURI)).thenReturn(resource);
+        when(extension.uri()).thenReturn(extensionURI);
+        when(extension.getResource()).thenReturn(resource);
     }
 
     @Test
@@ -113,20 +121,40 @@ public class PersistingOntologyRegistryTest {
     }
 
     @Test
-    public void updateExtensionInDomainTest() {
-        toTest.update(extensionURI);
+    public void extensionAddedTest() {
+        toTest.onChange(ExtensionChange.of(Arrays.asList(extension), Collections.emptyList(), Collections
+                .emptyList()));
 
         verify(ontologyService).parseOntology(eq(resource));
+        verifyZeroInteractions(extensionRegistry);
     }
 
     @Test
-    public void updateExtensionInDomainNotPersistingTest() {
+    public void extensionChangedNotPersistingTest() {
         toTest.setDoPersist(false);
 
-        toTest.update(extensionURI);
+        toTest.onChange(ExtensionChange.of(Collections.emptyList(), Collections.emptyList(), Arrays.asList(
+                extension)));
 
         verifyZeroInteractions(extensionRegistry);
         verifyZeroInteractions(ontologyRegistry);
+        verifyZeroInteractions(ontologyService);
+    }
+
+    @Test
+    public void extensionRemovedTest() {
+        toTest.onChange(ExtensionChange.of(Collections.emptyList(), Arrays.asList(extension), Collections
+                .emptyList()));
+
+        verifyZeroInteractions(ontologyService);
+    }
+
+    // Extension changes are not handled as resource updates
+    @Test
+    public void updateExtensionInDomainTest() {
+        toTest.update(extensionURI);
+
+        verifyZeroInteractions(ontologyService);
     }
 
     @Test
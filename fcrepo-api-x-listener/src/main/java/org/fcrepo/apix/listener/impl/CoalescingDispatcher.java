@@ -0,0 +1,145 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.listener.impl;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fcrepo.apix.model.components.Updateable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces updated resource URIs, and dispatches them to {@link Updateable}s in batches.
+ * <p>
+ * The first URI submitted after a batch has been dispatched starts a window of a fixed duration. URIs submitted
+ * during that window are collected (each distinct URI at most once), and dispatched together when it closes. Each
+ * {@link Updateable} is given the batch on a separate thread, so a slow one does not hold up the others. A batch is
+ * dispatched to all {@link Updateable}s before the next one, so each sees updates in order.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class CoalescingDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingDispatcher.class);
+
+    private final Collection<Updateable> toUpdate;
+
+    private final long windowMillis;
+
+    private final ScheduledExecutorService batcher;
+
+    private final ExecutorService workers;
+
+    private Set<URI> pending = new LinkedHashSet<>();
+
+    private boolean scheduled;
+
+    /**
+     * Create a dispatcher.
+     *
+     * @param toUpdate Updateables to dispatch to. May change over time.
+     * @param windowMillis Time in milliseconds to collect URIs before dispatching them.
+     * @param threads Maximum number of Updateables to update concurrently.
+     */
+    CoalescingDispatcher(final Collection<Updateable> toUpdate, final long windowMillis, final int threads) {
+        this.toUpdate = toUpdate;
+        this.windowMillis = windowMillis;
+        this.batcher = Executors.newSingleThreadScheduledExecutor(named("apix-update-batch"));
+        this.workers = Executors.newFixedThreadPool(threads, named("apix-update"));
+    }
+
+    /**
+     * Submit the URI of a resource that may have changed.
+     *
+     * @param uri resource URI.
+     */
+    synchronized void submit(final URI uri) {
+        pending.add(uri);
+
+        if (!scheduled) {
+            scheduled = true;
+            batcher.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Stop dispatching. Pending URIs are discarded. */
+    void shutdown() {
+        batcher.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void flush() {
+        final Set<URI> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashSet<>();
+            scheduled = false;
+        }
+
+        LOG.debug("Dispatching {} updated resources", batch.size());
+
+        final List<Future<?>> dispatched = new ArrayList<>();
+        for (final Updateable updateable : new ArrayList<>(toUpdate)) {
+            dispatched.add(workers.submit(() -> batch.forEach(uri -> update(updateable, uri))));
+        }
+
+        for (final Future<?> f : dispatched) {
+            try {
+                f.get();
+            } catch (final ExecutionException e) {
+                LOG.warn("Update failed", e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void update(final Updateable updateable, final URI uri) {
+        try {
+            updateable.update(uri);
+        } catch (final Exception x) {
+            LOG.warn(String.format("Update to <%s> failed", uri), x);
+        }
+    }
+
+    private static ThreadFactory named(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            final Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -32,24 +32,30 @@ import org.fcrepo.camel.processor.EventProcessor;
 
 import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * Listens for updates to repository resources and notifies {@link Updateable}s
+ * <p>
+ * Updated resources are coalesced over a short window, so that a burst of events (e.g. from a bulk ingest) results
+ * in each {@link Updateable} seeing each distinct resource only once. {@link Updateable}s are notified concurrently.
+ * </p>
  *
  * @author apb@jhu.edu
  */
 public class UpdateListener extends RouteBuilder {
 
-    private static final Logger LOG = LoggerFactory.getLogger(UpdateListener.class);
-
     private List<Updateable> toUpdate;
 
     private static final String TYPE_REPOSITORY_RESOURCE = "http://fedora.info/definitions/v4/repository#Resource";
 
     private RoutingFactory routing;
 
+    private long coalesceWindow = 500;
+
+    private int maxThreads = 4;
+
+    private CoalescingDispatcher dispatcher;
+
     /**
      * Set the list of services to update
      *
@@ -68,6 +74,36 @@ public class UpdateListener extends RouteBuilder {
         this.routing = routing;
     }
 
+    /**
+     * Set the time to collect updated resources before notifying Updateables.
+     *
+     * @param millis window in milliseconds.
+     */
+    public void setCoalesceWindow(final long millis) {
+        this.coalesceWindow = millis;
+    }
+
+    /**
+     * Set the maximum number of Updateables to notify concurrently.
+     *
+     * @param threads number of threads.
+     */
+    public void setMaxThreads(final int threads) {
+        this.maxThreads = threads;
+    }
+
+    /** Start dispatching updates */
+    public void init() {
+        dispatcher = new CoalescingDispatcher(toUpdate, coalesceWindow, maxThreads);
+    }
+
+    /** Stop dispatching updates */
+    public void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
     @Override
     public void configure() throws Exception {
 
@@ -79,13 +115,7 @@ public class UpdateListener extends RouteBuilder {
                 .filter(header(FCREPO_RESOURCE_TYPE).contains(TYPE_REPOSITORY_RESOURCE))
 
                 .process(USE_FCREPO_URIS)
-                .process(e -> toUpdate.forEach(u -> {
-                    try {
-                        u.update(URI.create(e.getIn().getHeader(FCREPO_URI, String.class)));
-                    } catch (final Exception x) {
-                        LOG.warn(String.format("Update to <%s> failed", e.getIn().getHeader(FCREPO_URI)), x);
-                    }
-                }));
+                .process(e -> dispatcher.submit(URI.create(e.getIn().getHeader(FCREPO_URI, String.class))));
     }
 
     private final Processor USE_FCREPO_URIS = ex -> {
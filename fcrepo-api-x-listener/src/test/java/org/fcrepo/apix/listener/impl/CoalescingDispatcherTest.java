@@ -0,0 +1,112 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.listener.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.fcrepo.apix.model.components.Updateable;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests coalescing and dispatch of updates.
+ *
+ * @author apb@jhu.edu
+ */
+public class CoalescingDispatcherTest {
+
+    CoalescingDispatcher toTest;
+
+    @After
+    public void tearDown() {
+        toTest.shutdown();
+    }
+
+    // Verifies that repeated updates to a resource within the window are dispatched once, to each Updateable
+    @Test
+    public void coalesceTest() throws Exception {
+        final URI resource1 = URI.create("http://example.org/1");
+        final URI resource2 = URI.create("http://example.org/2");
+
+        final CountDownLatch done = new CountDownLatch(4);
+        final Updateable updateable1 = mock(Updateable.class);
+        final Updateable updateable2 = mock(Updateable.class);
+        doAnswer(i -> {
+            done.countDown();
+            return null;
+        }).when(updateable1).update(any(URI.class));
+        doAnswer(i -> {
+            done.countDown();
+            return null;
+        }).when(updateable2).update(any(URI.class));
+
+        toTest = new CoalescingDispatcher(Arrays.asList(updateable1, updateable2), 200, 2);
+
+        for (int i = 0; i < 1000; i++) {
+            toTest.submit(resource1);
+            toTest.submit(resource2);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        verify(updateable1, times(1)).update(resource1);
+        verify(updateable1, times(1)).update(resource2);
+        verify(updateable2, times(1)).update(resource1);
+        verify(updateable2, times(1)).update(resource2);
+    }
+
+    // Verifies that a slow or failing Updateable does not prevent others from being updated
+    @Test
+    public void independentUpdateablesTest() throws Exception {
+        final URI resource = URI.create("http://example.org/resource");
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch updated = new CountDownLatch(1);
+
+        final Updateable slow = mock(Updateable.class);
+        doAnswer(i -> {
+            release.await();
+            throw new RuntimeException("failed");
+        }).when(slow).update(resource);
+
+        final Updateable fast = mock(Updateable.class);
+        doAnswer(i -> {
+            updated.countDown();
+            return null;
+        }).when(fast).update(resource);
+
+        toTest = new CoalescingDispatcher(Arrays.asList(slow, fast), 0, 2);
+        toTest.submit(resource);
+
+        assertTrue(updated.await(10, TimeUnit.SECONDS));
+        assertEquals(1, release.getCount());
+        release.countDown();
+    }
+}
@@ -64,7 +64,7 @@ public interface Extension {
      *
      * @return Specification.
      */
-    public Spec intercepted();
+    public InterceptSpec intercepted();
 
     /**
      * The URI (location) of the extension.
@@ -97,6 +97,19 @@ public interface Extension {
 
     }
 
+    /**
+     * Implementation specification for an intercepting extension.
+     */
+    public interface InterceptSpec extends Spec {
+
+        /**
+         * How the extension is invoked on outgoing responses.
+         *
+         * @return outgoing intercept mode, never null.
+         */
+        public OutgoingMode outgoing();
+    }
+
     /**
      * Implementation specification for a service-exposing specification.
      */
@@ -137,4 +150,18 @@ public interface Extension {
         REPOSITORY,
         EXTERNAL
     }
+
+    /**
+     * Invocation mode of an intercepting extension on outgoing responses.
+     * <p>
+     * {@link #SERIAL} extensions may modify the response, and are invoked one after another. {@link #CONCURRENT} and
+     * {@link #ASYNC} extensions only observe the response; their responses are ignored. Concurrent extensions are
+     * invoked in parallel before the response is sent to the client, asynchronous extensions after.
+     * </p>
+     */
+    public enum OutgoingMode {
+        SERIAL,
+        CONCURRENT,
+        ASYNC
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.model;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Difference between two states of an extension registry.
+ *
+ * @author apb@jhu.edu
+ */
+public interface ExtensionChange {
+
+    /**
+     * Extensions that did not previously exist.
+     *
+     * @return added extensions.
+     */
+    public Collection<Extension> added();
+
+    /**
+     * Extensions that no longer exist, as they were before removal.
+     *
+     * @return removed extensions.
+     */
+    public Collection<Extension> removed();
+
+    /**
+     * Extensions whose content has changed, as they are now.
+     *
+     * @return changed extensions.
+     */
+    public Collection<Extension> changed();
+
+    /**
+     * Determine if nothing has changed.
+     *
+     * @return true if there are no added, removed, or changed extensions.
+     */
+    public default boolean isEmpty() {
+        return added().isEmpty() && removed().isEmpty() && changed().isEmpty();
+    }
+
+    /**
+     * URIs of extensions whose previous state is no longer valid, i.e. those removed or changed.
+     *
+     * @return URIs of removed or changed extensions.
+     */
+    public default Set<URI> invalidated() {
+        return Stream.concat(removed().stream(), changed().stream())
+                .map(Extension::uri)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Create a new ExtensionChange instance.
+     *
+     * @param added Added extensions.
+     * @param removed Removed extensions.
+     * @param changed Changed extensions.
+     * @return the change.
+     */
+    public static ExtensionChange of(final Collection<Extension> added, final Collection<Extension> removed,
+            final Collection<Extension> changed) {
+        return new ExtensionChange() {
+
+            @Override
+            public Collection<Extension> added() {
+                return Collections.unmodifiableCollection(added);
+            }
+
+            @Override
+            public Collection<Extension> removed() {
+                return Collections.unmodifiableCollection(removed);
+            }
+
+            @Override
+            public Collection<Extension> changed() {
+                return Collections.unmodifiableCollection(changed);
+            }
+        };
+    }
+}
@@ -74,6 +74,8 @@ public interface Ontologies {
         String PROP_IS_SERVICE_INSTANCE_REGISTRY_FOR = NS + "isServiceInstanceRegistryFor";
 
         String PROP_HAS_SERVICE_INSTANCE_REGISTRY = NS + "hasServiceInstanceRegistry";
+
+        String PROP_LOAD_BALANCER = NS + "loadBalancer";
     }
 
     public interface Apix {
@@ -99,5 +101,7 @@ public interface Ontologies {
         String PROP_CONSUMES_SERVICE = NS + "consumesService";
 
         String PROP_EXPOSES_SERVICE_AT = NS + "exposesServiceAt";
+
+        String PROP_OUTGOING_INTERCEPT_MODE = NS + "outgoingInterceptMode";
     }
 }
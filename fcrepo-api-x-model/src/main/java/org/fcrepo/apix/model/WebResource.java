@@ -53,6 +53,19 @@ public interface WebResource extends AutoCloseable {
      */
     public String name();
 
+    /**
+     * Entity tag of the representation of this resource.
+     * <p>
+     * If present, this is a strong entity tag (including quotes) that changes whenever the bytes of the
+     * representation do.
+     * </p>
+     *
+     * @return entity tag, may be null if unknown.
+     */
+    public default String etag() {
+        return null;
+    }
+
     /**
      * Retrieve a byte stream of the resource.
      * <p>
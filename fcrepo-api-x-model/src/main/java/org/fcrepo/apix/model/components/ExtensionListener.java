@@ -0,0 +1,41 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.model.components;
+
+import org.fcrepo.apix.model.ExtensionChange;
+
+/**
+ * Component that maintains state derived from extensions.
+ * <p>
+ * Rather than re-reading the extension registry whenever it may have changed, a listener is told exactly which
+ * extensions were added, removed, or changed. Extension registries compute this difference once, and notify all
+ * listeners with it.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public interface ExtensionListener {
+
+    /**
+     * Apply a change to the extension registry.
+     *
+     * @param change extensions that have been added, removed, or changed.
+     */
+    public void onChange(ExtensionChange change);
+}
@@ -39,6 +39,27 @@ public interface Initializer {
      */
     Initialization initialize(final Runnable task);
 
+    /**
+     * Run an initialization task once the given initializations have succeeded.
+     * <p>
+     * The default implementation simply awaits each dependency from within the task. Implementations may instead
+     * defer running the task until its dependencies are complete, so that it does not tie up resources while
+     * waiting.
+     * </p>
+     *
+     * @param task The task to run
+     * @param dependencies Initializations that must succeed before the task is run.
+     * @return initialization state
+     */
+    default Initialization initialize(final Runnable task, final Initialization... dependencies) {
+        return initialize(() -> {
+            for (final Initialization dependency : dependencies) {
+                dependency.await();
+            }
+            task.run();
+        });
+    }
+
     /**
      * Represents initialization state.
      * <p>
@@ -19,6 +19,7 @@
 package org.fcrepo.apix.model.components;
 
 import java.net.URI;
+import java.util.Collection;
 
 import org.fcrepo.apix.model.WebResource;
 
@@ -39,4 +40,20 @@ public interface ServiceDiscovery {
      */
     WebResource getServiceDocumentFor(URI resource, Routing routing, String... contentType);
 
+    /**
+     * Produce service documents for several resources, as N-Quads.
+     * <p>
+     * The service document of each resource is in its own named graph, named by the URI of the service document.
+     * Containers may be traversed, so that the service documents of their members (and their members' members, and
+     * so on) are included as well. Service documents are generated as the representation is read, so it should be
+     * read promptly, and closed when done.
+     * </p>
+     *
+     * @param resources Repository resource URIs
+     * @param depth Number of levels of container membership to traverse; zero for only the given resources.
+     * @param routing the {@code Routing} for the repository {@code resources}
+     * @return Serialized service documents.
+     */
+    WebResource getServiceDocumentsFor(Collection<URI> resources, int depth, Routing routing);
+
 }
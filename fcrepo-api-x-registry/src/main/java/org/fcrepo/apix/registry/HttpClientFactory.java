@@ -23,6 +23,10 @@ import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -37,9 +41,13 @@ import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,8 +66,26 @@ public class HttpClientFactory {
 
     private int socketTimeout = 1000;
 
+    private int maxConnections = 100;
+
+    private int maxConnectionsPerRoute = 20;
+
+    private long connectionTtl = -1;
+
+    private long maxIdleTime = 60000;
+
+    private int validateAfterInactivity = 2000;
+
+    private long keepAlive = 30000;
+
+    private long statsInterval = 0;
+
     private Map<String, String> props = new HashMap<>();
 
+    private final List<PoolingHttpClientConnectionManager> pools = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService statsLogger;
+
     static final Pattern pattern = Pattern.compile("^auth\\.(https?)\\.(\\d+)\\.(.+$)");
 
     private static final Logger LOG = LoggerFactory.getLogger(HttpClientFactory.class);
@@ -82,6 +108,69 @@ public class HttpClientFactory {
         this.socketTimeout = timeout;
     }
 
+    /**
+     * Maximum number of pooled connections, across all routes.
+     *
+     * @param max maximum total connections.
+     */
+    public void setMaxConnections(final int max) {
+        this.maxConnections = max;
+    }
+
+    /**
+     * Maximum number of pooled connections to any single route (host:port).
+     *
+     * @param max maximum connections per route.
+     */
+    public void setMaxConnectionsPerRoute(final int max) {
+        this.maxConnectionsPerRoute = max;
+    }
+
+    /**
+     * Total time to live of a pooled connection, in milliseconds.
+     *
+     * @param ttl milliseconds, or non-positive for no limit.
+     */
+    public void setConnectionTtl(final long ttl) {
+        this.connectionTtl = ttl;
+    }
+
+    /**
+     * Time after which an idle connection is evicted from the pool, in milliseconds.
+     *
+     * @param idle milliseconds, or non-positive to disable idle eviction.
+     */
+    public void setMaxIdleTime(final long idle) {
+        this.maxIdleTime = idle;
+    }
+
+    /**
+     * Period of inactivity after which a pooled connection is re-validated before being leased.
+     *
+     * @param inactivity milliseconds, or non-positive to disable validation.
+     */
+    public void setValidateAfterInactivity(final int inactivity) {
+        this.validateAfterInactivity = inactivity;
+    }
+
+    /**
+     * Time to keep a connection alive if the server does not specify a Keep-Alive timeout.
+     *
+     * @param keepAlive milliseconds, or non-positive to keep connections alive indefinitely.
+     */
+    public void setKeepAlive(final long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Interval at which connection pool statistics are logged.
+     *
+     * @param interval milliseconds, or non-positive to disable logging.
+     */
+    public void setStatsInterval(final long interval) {
+        this.statsInterval = interval;
+    }
+
     /**
      * Configuration properties.
      *
@@ -114,7 +203,30 @@ public class HttpClientFactory {
                     authSpec.scheme), new UsernamePasswordCredentials(authSpec.username(), authSpec.passwd()));
         }
 
-        return HttpClientBuilder.create().setDefaultRequestConfig(config)
+        // Closing the client shuts down its pool, which then no longer counts towards pool statistics
+        final PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(
+                connectionTtl, TimeUnit.MILLISECONDS) {
+
+            @Override
+            public void shutdown() {
+                pools.remove(this);
+                super.shutdown();
+            }
+        };
+        pool.setMaxTotal(maxConnections);
+        pool.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        pool.setValidateAfterInactivity(validateAfterInactivity);
+        pools.add(pool);
+
+        final HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(pool)
+                .setKeepAliveStrategy(keepAliveStrategy());
+
+        if (maxIdleTime > 0) {
+            builder.evictExpiredConnections().evictIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+        }
+
+        return builder.setDefaultRequestConfig(config)
                 .addInterceptorLast(new HttpRequestInterceptor() {
 
                     @Override
@@ -144,6 +256,64 @@ public class HttpClientFactory {
                 .build();
     }
 
+    /**
+     * Start periodic logging of connection pool statistics, if configured.
+     */
+    public synchronized void init() {
+        if (statsInterval > 0 && statsLogger == null) {
+            statsLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "apix-http-pool-stats");
+                t.setDaemon(true);
+                return t;
+            });
+            statsLogger.scheduleAtFixedRate(() -> LOG.info("Http connection pool: {}", getPoolStats()),
+                    statsInterval, statsInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop logging connection pool statistics.
+     */
+    public synchronized void shutdown() {
+        if (statsLogger != null) {
+            statsLogger.shutdownNow();
+            statsLogger = null;
+        }
+    }
+
+    /**
+     * Get connection pool statistics.
+     * <p>
+     * Totals the leased, pending, and available connections of all open clients created by this factory.
+     * </p>
+     *
+     * @return connection pool statistics.
+     */
+    public PoolStats getPoolStats() {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+
+        for (final PoolingHttpClientConnectionManager pool : pools) {
+            final PoolStats stats = pool.getTotalStats();
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+            max += stats.getMax();
+        }
+
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            final long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(
+                    response, context);
+            return serverKeepAlive > 0 || keepAlive <= 0 ? serverKeepAlive : keepAlive;
+        };
+    }
+
     List<AuthSpec> getAuthSpecs() {
         return props.keySet().stream()
                 .filter(k -> k.startsWith("auth.http"))
@@ -0,0 +1,482 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.registry.impl;
+
+import static org.apache.http.HttpHeaders.ACCEPT;
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+import static org.apache.http.HttpHeaders.ETAG;
+import static org.apache.http.HttpHeaders.IF_MODIFIED_SINCE;
+import static org.apache.http.HttpHeaders.IF_NONE_MATCH;
+import static org.apache.http.HttpHeaders.LAST_MODIFIED;
+import static org.apache.http.HttpStatus.SC_GONE;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.fcrepo.apix.registry.impl.HttpRegistry.RDF_MEDIA_TYPES;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.fcrepo.apix.model.WebResource;
+import org.fcrepo.apix.model.components.Registry;
+import org.fcrepo.apix.model.components.ResourceNotFoundException;
+import org.fcrepo.apix.model.components.Updateable;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry that caches the representations of resources it retrieves.
+ * <p>
+ * Representations are cached along with their <code>ETag</code> and <code>Last-Modified</code> values, and are
+ * revalidated with a conditional GET (<code>If-None-Match</code>, or <code>If-Modified-Since</code>) when requested
+ * again. Representations are kept in an in-memory LRU bounded by total size in bytes. If a
+ * {@link #setDiskStore(String) disk store} is specified, representations evicted from memory are kept there, again
+ * bounded by total size, and survive restarts.
+ * </p>
+ * <p>
+ * A cached representation may optionally be served without revalidation for a short time after it was last
+ * validated; see {@link #setFreshness(long)}. Cached representations are discarded upon {@link #update(URI)}.
+ * </p>
+ * <p>
+ * All other registry operations are passed through to the delegate registry.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class CachingRegistry implements Registry, Updateable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingRegistry.class);
+
+    static final String FCR_METADATA = "/fcr:metadata";
+
+    private Registry delegate;
+
+    private CloseableHttpClient client;
+
+    private long maxBytes = 16 * 1024 * 1024;
+
+    private long maxEntryBytes = 1024 * 1024;
+
+    private long freshness = 0;
+
+    private DiskStore disk;
+
+    private long maxDiskBytes = 256 * 1024 * 1024;
+
+    private long bytes = 0;
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Set the registry to which all but GET is delegated.
+     *
+     * @param delegate the delegate registry.
+     */
+    public void setRegistryDelegate(final Registry delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Set the underlying httpClient used for retrieving representations.
+     *
+     * @param client closeable http client.
+     */
+    public void setHttpClient(final CloseableHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Set the maximum total size of representations cached in memory.
+     *
+     * @param bytes size in bytes. Zero or less disables caching in memory.
+     */
+    public void setMaxBytes(final long bytes) {
+        this.maxBytes = bytes;
+    }
+
+    /**
+     * Set the size of the largest representation that will be cached.
+     *
+     * @param bytes size in bytes.
+     */
+    public void setMaxEntryBytes(final long bytes) {
+        this.maxEntryBytes = bytes;
+    }
+
+    /**
+     * Set the time after validation that a cached representation may be served without revalidating it.
+     *
+     * @param millis time in ms. Zero or less means always revalidate.
+     */
+    public void setFreshness(final long millis) {
+        this.freshness = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Set the directory in which to store representations evicted from memory.
+     *
+     * @param directory Path to the directory. If null or empty, representations are not stored on disk.
+     */
+    public void setDiskStore(final String directory) {
+        if (directory == null || directory.trim().isEmpty()) {
+            disk = null;
+        } else {
+            disk = new DiskStore(directory.trim());
+        }
+    }
+
+    /**
+     * Set the maximum total size of representations stored on disk.
+     *
+     * @param bytes size in bytes.
+     */
+    public void setMaxDiskBytes(final long bytes) {
+        this.maxDiskBytes = bytes;
+    }
+
+    /** Index any representations already in the disk store. */
+    public void init() {
+        if (disk != null) {
+            disk.init(maxDiskBytes);
+        }
+    }
+
+    @Override
+    public WebResource get(final URI id) {
+        final String key = id.toString();
+        final Entry cached = lookup(key);
+
+        if (cached != null && freshness > 0 && cached.validated != Entry.NEVER &&
+                System.nanoTime() - cached.validated < freshness) {
+            return cached.resource(id);
+        }
+
+        final HttpGet get = new HttpGet(id);
+        get.setHeader(ACCEPT, RDF_MEDIA_TYPES);
+        if (cached != null && cached.etag != null) {
+            get.setHeader(IF_NONE_MATCH, cached.etag);
+        } else if (cached != null && cached.lastModified != null) {
+            get.setHeader(IF_MODIFIED_SINCE, cached.lastModified);
+        }
+
+        final CloseableHttpResponse response;
+        try {
+            response = client.execute(get);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        boolean close = true;
+        try {
+            final int code = response.getStatusLine().getStatusCode();
+
+            if (code == SC_NOT_MODIFIED && cached != null) {
+                LOG.debug("Cached representation of {} is still valid", id);
+                final Entry revalidated = cached.revalidated(response);
+                store(key, revalidated);
+                return revalidated.resource(id);
+            } else if (code == SC_NOT_FOUND || code == SC_GONE) {
+                remove(key);
+                throw new ResourceNotFoundException("HTTP " + code + ": " + id);
+            } else if (code != SC_OK) {
+                throw new RuntimeException(String.format("Error performing GET on %s: %s; %s", id,
+                        response.getStatusLine(), body(response)));
+            }
+
+            final String contentType = valueOf(response, CONTENT_TYPE);
+            final InputStream content = response.getEntity() != null ? response.getEntity().getContent()
+                    : new ByteArrayInputStream(new byte[0]);
+
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            if (copy(content, buffer, maxEntryBytes + 1) > maxEntryBytes) {
+                // Too big to cache, so stream the remainder from the response
+                remove(key);
+                close = false;
+                return streamed(id, contentType, new SequenceInputStream(
+                        new ByteArrayInputStream(buffer.toByteArray()), content), response);
+            }
+
+            final Entry entry = new Entry(buffer.toByteArray(), contentType, valueOf(response, ETAG), valueOf(
+                    response, LAST_MODIFIED));
+
+            if (entry.etag != null || entry.lastModified != null) {
+                store(key, entry);
+            } else {
+                remove(key);
+            }
+
+            return entry.resource(id);
+        } catch (final IOException e) {
+            throw new RuntimeException("Error reading from " + id, e);
+        } finally {
+            if (close) {
+                try {
+                    response.close();
+                } catch (final IOException e) {
+                    // nothing
+                }
+            }
+        }
+    }
+
+    /** Discard all cached representations. */
+    @Override
+    public synchronized void update() {
+        memory.clear();
+        bytes = 0;
+        if (disk != null) {
+            disk.clear();
+        }
+    }
+
+    /** Discard any cached representation of the given resource, or of its description. */
+    @Override
+    public void update(final URI inResponseTo) {
+        final String uri = inResponseTo.toString();
+        final String base = uri.endsWith(FCR_METADATA) ? uri.substring(0, uri.length() - FCR_METADATA.length())
+                : uri;
+        remove(base);
+        remove(base + FCR_METADATA);
+    }
+
+    @Override
+    public boolean contains(final URI uri) {
+        return delegate.contains(uri);
+    }
+
+    @Override
+    public URI put(final WebResource resource, final boolean asBinary) {
+        return delegate.put(resource, asBinary);
+    }
+
+    @Override
+    public URI put(final WebResource resource) {
+        return delegate.put(resource);
+    }
+
+    @Override
+    public boolean canWrite() {
+        return delegate.canWrite();
+    }
+
+    @Override
+    public Collection<URI> list() {
+        return delegate.list();
+    }
+
+    @Override
+    public void delete(final URI uri) {
+        delegate.delete(uri);
+        update(uri);
+    }
+
+    @Override
+    public boolean hasInDomain(final URI uri) {
+        return delegate.hasInDomain(uri);
+    }
+
+    private synchronized Entry lookup(final String key) {
+        final Entry entry = memory.get(key);
+        if (entry != null || disk == null) {
+            return entry;
+        }
+
+        return disk.get(key);
+    }
+
+    private synchronized void store(final String key, final Entry entry) {
+        remove(key);
+
+        if (maxBytes > 0 && entry.body.length <= maxBytes) {
+            memory.put(key, entry);
+            bytes += entry.body.length;
+        } else if (disk != null) {
+            disk.put(key, entry);
+        }
+
+        // Evict least recently used, keeping them on disk if possible.
+        for (final Iterator<Map.Entry<String, Entry>> i = memory.entrySet().iterator(); i.hasNext() &&
+                bytes > maxBytes;) {
+            final Map.Entry<String, Entry> eldest = i.next();
+            i.remove();
+            bytes -= eldest.getValue().body.length;
+            if (disk != null) {
+                disk.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    private synchronized void remove(final String key) {
+        final Entry removed = memory.remove(key);
+        if (removed != null) {
+            bytes -= removed.body.length;
+        }
+        if (disk != null) {
+            disk.remove(key);
+        }
+    }
+
+    private static long copy(final InputStream in, final ByteArrayOutputStream out, final long limit)
+            throws IOException {
+        final byte[] buf = new byte[8192];
+        long total = 0;
+        int read;
+        while (total < limit && (read = in.read(buf, 0, (int) Math.min(buf.length, limit - total))) != -1) {
+            out.write(buf, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    private static String valueOf(final HttpResponse response, final String header) {
+        final Header h = response.getFirstHeader(header);
+        return h != null ? h.getValue() : null;
+    }
+
+    private static String body(final HttpResponse response) {
+        try {
+            return EntityUtils.toString(response.getEntity());
+        } catch (final Exception e) {
+            return "";
+        }
+    }
+
+    private static WebResource streamed(final URI id, final String contentType, final InputStream content,
+            final CloseableHttpResponse response) {
+        return new WebResource() {
+
+            @Override
+            public URI uri() {
+                return id;
+            }
+
+            @Override
+            public InputStream representation() {
+                return new FilterInputStream(content) {
+
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        response.close();
+                    }
+                };
+            }
+
+            @Override
+            public String name() {
+                return null;
+            }
+
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public void close() throws Exception {
+                response.close();
+            }
+        };
+    }
+
+    /** A cached representation */
+    static class Entry {
+
+        /** Validation time of entries that must be validated before use */
+        static final long NEVER = Long.MIN_VALUE;
+
+        final byte[] body;
+
+        final String contentType;
+
+        final String etag;
+
+        final String lastModified;
+
+        final long validated;
+
+        Entry(final byte[] body, final String contentType, final String etag, final String lastModified) {
+            this(body, contentType, etag, lastModified, System.nanoTime());
+        }
+
+        Entry(final byte[] body, final String contentType, final String etag, final String lastModified,
+                final long validated) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.validated = validated;
+        }
+
+        /* A 304 response may carry updated validators */
+        Entry revalidated(final HttpResponse response) {
+            final String newEtag = valueOf(response, ETAG);
+            final String newLastModified = valueOf(response, LAST_MODIFIED);
+            return new Entry(body, contentType, newEtag != null ? newEtag : etag,
+                    newLastModified != null ? newLastModified : lastModified);
+        }
+
+        WebResource resource(final URI id) {
+            return new WebResource() {
+
+                @Override
+                public URI uri() {
+                    return id;
+                }
+
+                @Override
+                public InputStream representation() {
+                    return new ByteArrayInputStream(body);
+                }
+
+                @Override
+                public String name() {
+                    return null;
+                }
+
+                @Override
+                public String contentType() {
+                    return contentType;
+                }
+
+                @Override
+                public void close() throws Exception {
+                    // nothing
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.registry.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fcrepo.apix.registry.impl.CachingRegistry.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directory of cached representations, bounded in total size.
+ * <p>
+ * Each representation is stored in its own file, named after a digest of its URI. Least recently used files are
+ * deleted when the size bound is exceeded. Failures to read or write are logged, and otherwise treated as cache
+ * misses. Not thread safe; {@link CachingRegistry} synchronizes access.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class DiskStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskStore.class);
+
+    private static final String SUFFIX = ".entry";
+
+    private final Path dir;
+
+    private long maxBytes = Long.MAX_VALUE;
+
+    private long bytes = 0;
+
+    // File name to size, in access order
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(64, 0.75f, true);
+
+    DiskStore(final String directory) {
+        this.dir = Paths.get(directory);
+    }
+
+    /* Index existing files, oldest first */
+    void init(final long maxBytes) {
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(dir);
+
+            final List<Path> existing = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+                files.forEach(existing::add);
+            }
+            existing.sort(Comparator.comparing(DiskStore::lastModified));
+
+            for (final Path file : existing) {
+                final long size = Files.size(file);
+                sizes.put(file.getFileName().toString(), size);
+                bytes += size;
+            }
+
+            LOG.info("Found {} cached representations in {}", sizes.size(), dir);
+            trim();
+        } catch (final IOException e) {
+            LOG.warn("Could not initialize disk cache in {}", dir, e);
+        }
+    }
+
+    Entry get(final String key) {
+        final String name = nameOf(key);
+        if (sizes.get(name) == null) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(dir.resolve(name)))) {
+            if (!key.equals(in.readUTF())) {
+                return null;
+            }
+
+            final String contentType = readNullable(in);
+            final String etag = readNullable(in);
+            final String lastModified = readNullable(in);
+            final byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+
+            return new Entry(body, contentType, etag, lastModified, Entry.NEVER);
+        } catch (final IOException e) {
+            LOG.warn("Could not read cached representation of {}", key, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    void put(final String key, final Entry entry) {
+        final String name = nameOf(key);
+
+        try {
+            Files.createDirectories(dir);
+            final Path tmp = Files.createTempFile(dir, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeUTF(key);
+                writeNullable(out, entry.contentType);
+                writeNullable(out, entry.etag);
+                writeNullable(out, entry.lastModified);
+                out.writeInt(entry.body.length);
+                out.write(entry.body);
+            }
+
+            final long size = Files.size(tmp);
+            Files.move(tmp, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            final Long replaced = sizes.put(name, size);
+            bytes += size - (replaced != null ? replaced : 0);
+            trim();
+        } catch (final IOException e) {
+            LOG.warn("Could not store cached representation of {}", key, e);
+        }
+    }
+
+    void remove(final String key) {
+        delete(nameOf(key));
+    }
+
+    void clear() {
+        new ArrayList<>(sizes.keySet()).forEach(this::delete);
+    }
+
+    private void trim() {
+        for (final Iterator<Map.Entry<String, Long>> i = sizes.entrySet().iterator(); i.hasNext() &&
+                bytes > maxBytes;) {
+            final Map.Entry<String, Long> eldest = i.next();
+            i.remove();
+            bytes -= eldest.getValue();
+            deleteFile(eldest.getKey());
+        }
+    }
+
+    private void delete(final String name) {
+        final Long size = sizes.remove(name);
+        if (size != null) {
+            bytes -= size;
+            deleteFile(name);
+        }
+    }
+
+    private void deleteFile(final String name) {
+        try {
+            Files.deleteIfExists(dir.resolve(name));
+        } catch (final IOException e) {
+            LOG.warn("Could not delete cached representation {}", dir.resolve(name), e);
+        }
+    }
+
+    private static String nameOf(final String key) {
+        try {
+            final StringBuilder name = new StringBuilder();
+            for (final byte b : MessageDigest.getInstance("SHA-256").digest(key.getBytes(UTF_8))) {
+                name.append(String.format("%02x", b));
+            }
+            return name.append(SUFFIX).toString();
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long lastModified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
+    private static String readNullable(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -26,6 +26,12 @@ import java.util.TreeMap;
 
 import org.fcrepo.apix.registry.HttpClientFactory.AuthSpec;
 
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.pool.PoolStats;
+
 import org.junit.Test;
 
 /**
@@ -76,6 +82,37 @@ public class HttpClentFactoryTest {
         assertEquals(passwd2, specs.get(1).passwd());
     }
 
+    @Test
+    public void poolStatsTest() throws Exception {
+        final HttpClientFactory toTest = new HttpClientFactory();
+        toTest.setMaxConnections(7);
+        toTest.setMaxConnectionsPerRoute(3);
+
+        try (CloseableHttpClient client1 = toTest.getClient(); CloseableHttpClient client2 = toTest.getClient()) {
+            final PoolStats stats = toTest.getPoolStats();
+            assertEquals(14, stats.getMax());
+            assertEquals(0, stats.getLeased());
+            assertEquals(0, stats.getPending());
+            assertEquals(0, stats.getAvailable());
+
+            client1.close();
+            assertEquals(7, toTest.getPoolStats().getMax());
+        }
+        assertEquals(0, toTest.getPoolStats().getMax());
+    }
+
+    @Test
+    public void keepAliveTest() {
+        final HttpClientFactory toTest = new HttpClientFactory();
+        toTest.setKeepAlive(1234);
+
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        assertEquals(1234, toTest.keepAliveStrategy().getKeepAliveDuration(response, null));
+
+        response.addHeader("Keep-Alive", "timeout=5");
+        assertEquals(5000, toTest.keepAliveStrategy().getKeepAliveDuration(response, null));
+    }
+
     @Test
     public void noAuthSpecsTest() {
         final HttpClientFactory toTest = new HttpClientFactory();
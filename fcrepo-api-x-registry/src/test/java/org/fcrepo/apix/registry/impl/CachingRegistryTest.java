@@ -0,0 +1,228 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.registry.impl;
+
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_NOT_MODIFIED;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fcrepo.apix.model.WebResource;
+import org.fcrepo.apix.model.components.ResourceNotFoundException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the caching registry.
+ *
+ * @author apb@jhu.edu
+ */
+public class CachingRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    CachingRegistry toTest;
+
+    CloseableHttpClient client;
+
+    // Current state of each resource on the server: content, and ETag.
+    final Map<URI, String[]> server = new HashMap<>();
+
+    // Requests made to the server
+    final List<HttpUriRequest> requests = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(CloseableHttpClient.class);
+        when(client.execute(any(HttpUriRequest.class))).then(i -> {
+            final HttpUriRequest request = (HttpUriRequest) i.getArguments()[0];
+            requests.add(request);
+            return respond(request);
+        });
+
+        toTest = new CachingRegistry();
+        toTest.setHttpClient(client);
+    }
+
+    // Verify that a cached representation is revalidated, and re-used if unchanged
+    @Test
+    public void revalidateTest() throws Exception {
+        final URI uri = URI.create("http://example.org/resource");
+        server.put(uri, new String[] { "CONTENT", "\"v1\"" });
+
+        assertEquals("CONTENT", content(toTest.get(uri)));
+        assertNull(requests.get(0).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+
+        assertEquals("CONTENT", content(toTest.get(uri)));
+        assertEquals("\"v1\"", requests.get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+
+        server.put(uri, new String[] { "CHANGED", "\"v2\"" });
+        assertEquals("CHANGED", content(toTest.get(uri)));
+        assertEquals("\"v2\"", validatorSentWith(toTest, uri));
+    }
+
+    // Verify that update(URI) discards the cached representation
+    @Test
+    public void invalidateTest() throws Exception {
+        final URI uri = URI.create("http://example.org/resource");
+        server.put(uri, new String[] { "CONTENT", "\"v1\"" });
+
+        toTest.get(uri);
+        toTest.update(uri);
+        toTest.get(uri);
+
+        assertNull(requests.get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    // Verify that fresh representations are served without any request
+    @Test
+    public void freshnessTest() throws Exception {
+        final URI uri = URI.create("http://example.org/resource");
+        server.put(uri, new String[] { "CONTENT", "\"v1\"" });
+        toTest.setFreshness(60000);
+
+        toTest.get(uri);
+        assertEquals("CONTENT", content(toTest.get(uri)));
+        assertEquals(1, requests.size());
+    }
+
+    // Verify that representations evicted from memory are kept on disk, and survive a restart.
+    @Test
+    public void diskStoreTest() throws Exception {
+        final URI uri1 = URI.create("http://example.org/resource/1");
+        final URI uri2 = URI.create("http://example.org/resource/2");
+        server.put(uri1, new String[] { "CONTENT1", "\"v1\"" });
+        server.put(uri2, new String[] { "CONTENT2", "\"v2\"" });
+
+        final File dir = folder.newFolder();
+
+        toTest.setMaxBytes(10);
+        toTest.setDiskStore(dir.getPath());
+        toTest.init();
+
+        toTest.get(uri1);
+        toTest.get(uri2);
+
+        assertEquals("\"v1\"", validatorSentWith(toTest, uri1));
+        assertEquals("\"v2\"", validatorSentWith(toTest, uri2));
+
+        final CachingRegistry restarted = new CachingRegistry();
+        restarted.setHttpClient(client);
+        restarted.setMaxBytes(10);
+        restarted.setDiskStore(dir.getPath());
+        restarted.init();
+
+        assertEquals("CONTENT1", content(restarted.get(uri1)));
+        assertEquals("\"v1\"", requests.get(requests.size() - 1).getFirstHeader(HttpHeaders.IF_NONE_MATCH)
+                .getValue());
+    }
+
+    // Verify that representations too large to cache are still served
+    @Test
+    public void tooLargeTest() throws Exception {
+        final URI uri = URI.create("http://example.org/resource");
+        server.put(uri, new String[] { "CONTENT", "\"v1\"" });
+        toTest.setMaxEntryBytes(3);
+
+        assertEquals("CONTENT", content(toTest.get(uri)));
+        assertNull(validatorSentWith(toTest, uri));
+    }
+
+    // Verify that missing resources are reported as such, and not cached
+    @Test
+    public void notFoundTest() throws Exception {
+        final URI uri = URI.create("http://example.org/resource");
+        server.put(uri, new String[] { "CONTENT", "\"v1\"" });
+        toTest.get(uri);
+
+        server.remove(uri);
+        try {
+            toTest.get(uri);
+            fail("Should have thrown an exception");
+        } catch (final ResourceNotFoundException e) {
+            // expected
+        }
+
+        server.put(uri, new String[] { "CONTENT", "\"v1\"" });
+        assertNull(validatorSentWith(toTest, uri));
+    }
+
+    private String validatorSentWith(final CachingRegistry registry, final URI uri) throws Exception {
+        registry.get(uri).close();
+        final HttpUriRequest last = requests.get(requests.size() - 1);
+        return last.getFirstHeader(HttpHeaders.IF_NONE_MATCH) != null ? last.getFirstHeader(
+                HttpHeaders.IF_NONE_MATCH).getValue() : null;
+    }
+
+    private static String content(final WebResource resource) throws Exception {
+        try (WebResource r = resource) {
+            return IOUtils.toString(r.representation(), "UTF-8");
+        }
+    }
+
+    private CloseableHttpResponse respond(final HttpUriRequest request) {
+        final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        final StatusLine status = mock(StatusLine.class);
+        when(response.getStatusLine()).thenReturn(status);
+
+        final String[] state = server.get(request.getURI());
+        if (state == null) {
+            when(status.getStatusCode()).thenReturn(SC_NOT_FOUND);
+            return response;
+        }
+
+        when(response.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, state[1]));
+
+        if (request.getFirstHeader(HttpHeaders.IF_NONE_MATCH) != null && request.getFirstHeader(
+                HttpHeaders.IF_NONE_MATCH).getValue().equals(state[1])) {
+            when(status.getStatusCode()).thenReturn(SC_NOT_MODIFIED);
+            return response;
+        }
+
+        when(status.getStatusCode()).thenReturn(SC_OK);
+        when(response.getFirstHeader(HttpHeaders.CONTENT_TYPE)).thenReturn(new BasicHeader(
+                HttpHeaders.CONTENT_TYPE, "text/turtle"));
+        when(response.getEntity()).thenReturn(new ByteArrayEntity(state[0].getBytes()));
+        return response;
+    }
+}
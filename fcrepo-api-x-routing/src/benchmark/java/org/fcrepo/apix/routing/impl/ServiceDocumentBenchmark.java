@@ -0,0 +1,130 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.fcrepo.apix.model.Extension;
+import org.fcrepo.apix.model.Extension.Scope;
+import org.fcrepo.apix.model.Extension.ServiceExposureSpec;
+import org.fcrepo.apix.model.WebResource;
+import org.fcrepo.apix.model.components.ExtensionBinding;
+import org.fcrepo.apix.model.components.Routing;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares streamed service documents with those built as a model and serialized by Jena.
+ * <p>
+ * Only compiled with the <code>benchmark</code> profile. See the README for running it.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceDocumentBenchmark {
+
+    static final URI RESOURCE_URI = URI.create("http://example.org/fcrepo/rest/resource");
+
+    /** Media type of the service document */
+    @Param({ "text/turtle", "application/n-triples", "application/ld+json" })
+    public String type;
+
+    /** Number of services exposed on the resource */
+    @Param({ "1", "10", "50" })
+    public int services;
+
+    /** Whether to use the streaming serializer */
+    @Param({ "true", "false" })
+    public boolean streaming;
+
+    ServiceDocumentGenerator generator;
+
+    Routing routing;
+
+    /** Bind exposing extensions to a resource. */
+    @Setup
+    public void setUp() {
+        routing = mock(Routing.class);
+        when(routing.serviceDocFor(RESOURCE_URI)).thenReturn(URI.create(RESOURCE_URI + "/svc:list"));
+        when(routing.interceptUriFor(RESOURCE_URI)).thenReturn(URI.create("http://example.org/apix/resource"));
+
+        final List<Extension> extensions = new ArrayList<>();
+        for (int i = 0; i < services; i++) {
+            final ServiceExposureSpec spec = mock(ServiceExposureSpec.class);
+            when(spec.exposedService()).thenReturn(URI.create("http://example.org/services/" + i));
+            when(spec.scope()).thenReturn(i % 2 == 0 ? Scope.RESOURCE : Scope.REPOSITORY);
+            when(routing.endpointFor(eq(spec), any(URI.class))).thenReturn(URI.create(
+                    "http://example.org/apix/resource/svc:" + i));
+
+            final Extension extension = mock(Extension.class);
+            when(extension.isExposing()).thenReturn(true);
+            when(extension.exposed()).thenReturn(spec);
+            extensions.add(extension);
+        }
+
+        final ExtensionBinding binding = mock(ExtensionBinding.class);
+        when(binding.getExtensionsFor(RESOURCE_URI)).thenReturn(extensions);
+
+        generator = new ServiceDocumentGenerator();
+        generator.setExtensionBinding(binding);
+        generator.setRelativeURIs(true);
+        generator.setInterceptURIs(true);
+        generator.setCacheSize(0);
+        generator.setStreamingSerializer(streaming);
+    }
+
+    /**
+     * Generate and read a service document.
+     *
+     * @return the serialized document.
+     * @throws Exception if anything fails.
+     */
+    @Benchmark
+    public byte[] serviceDocument() throws Exception {
+        try (WebResource doc = generator.getServiceDocumentFor(RESOURCE_URI, routing, type);
+                InputStream in = doc.representation()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
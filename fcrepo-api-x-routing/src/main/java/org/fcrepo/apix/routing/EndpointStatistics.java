@@ -0,0 +1,143 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counters and latencies of service endpoints.
+ *
+ * @author apb@jhu.edu
+ */
+public class EndpointStatistics {
+
+    /** Weight of the most recent latency sample in the moving average. */
+    static final double EWMA_ALPHA = 0.2;
+
+    private final Map<URI, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Get the counters for an endpoint.
+     *
+     * @param endpoint the endpoint.
+     * @return Counters, which will be all zero if the endpoint hasn't seen any requests.
+     */
+    public Counters of(final URI endpoint) {
+        return counters.computeIfAbsent(endpoint, e -> new Counters());
+    }
+
+    /**
+     * Get the counters of all endpoints that have seen requests.
+     *
+     * @return Unmodifiable map of endpoint to counters.
+     */
+    public Map<URI, Counters> all() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * Record the start of a request to an endpoint.
+     *
+     * @param endpoint the endpoint.
+     */
+    public void started(final URI endpoint) {
+        of(endpoint).inFlight.incrementAndGet();
+    }
+
+    /**
+     * Record the completion of a request to an endpoint.
+     *
+     * @param endpoint the endpoint.
+     * @param latencyNanos Time taken by the request.
+     * @param success Whether the request succeeded.
+     */
+    public void completed(final URI endpoint, final long latencyNanos, final boolean success) {
+        final Counters c = of(endpoint);
+        c.inFlight.decrementAndGet();
+        c.requests.incrementAndGet();
+        if (!success) {
+            c.failures.incrementAndGet();
+        }
+        c.recordLatency(TimeUnit.NANOSECONDS.toMicros(latencyNanos) / 1000.0);
+    }
+
+    /** Request counters of a single endpoint. */
+    public static class Counters {
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        final AtomicLong requests = new AtomicLong();
+
+        final AtomicLong failures = new AtomicLong();
+
+        private volatile double latencyEwma;
+
+        synchronized void recordLatency(final double millis) {
+            latencyEwma = requests.get() <= 1 ? millis : latencyEwma + EWMA_ALPHA * (millis - latencyEwma);
+        }
+
+        /**
+         * Number of requests currently outstanding.
+         *
+         * @return in-flight count.
+         */
+        public int inFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * Number of completed requests.
+         *
+         * @return request count.
+         */
+        public long requests() {
+            return requests.get();
+        }
+
+        /**
+         * Number of completed requests that failed.
+         *
+         * @return failure count.
+         */
+        public long failures() {
+            return failures.get();
+        }
+
+        /**
+         * Exponentially weighted moving average of request latency.
+         *
+         * @return latency in milliseconds, or zero if no requests have completed.
+         */
+        public double latencyEwma() {
+            return latencyEwma;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("inFlight=%d, requests=%d, failures=%d, latencyEwma=%.1fms",
+                    inFlight(), requests(), failures(), latencyEwma());
+        }
+    }
+}
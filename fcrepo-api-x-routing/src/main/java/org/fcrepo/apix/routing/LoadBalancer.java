@@ -0,0 +1,43 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Strategy for choosing one of a service's endpoints for a request.
+ * <p>
+ * A load balancer instance is dedicated to a single service, and may keep state (e.g. a round-robin position)
+ * between invocations. Implementations must be thread safe.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public interface LoadBalancer {
+
+    /**
+     * Choose an endpoint.
+     *
+     * @param endpoints Candidate endpoints; never empty.
+     * @param stats Observed request statistics of endpoints.
+     * @return The chosen endpoint, one of the candidates.
+     */
+    URI select(List<URI> endpoints, EndpointStatistics stats);
+}
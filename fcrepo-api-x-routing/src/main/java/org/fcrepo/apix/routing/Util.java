@@ -95,11 +95,19 @@ public abstract class Util {
      * @return URI of a service instance endpoint
      */
     public static URI interceptingServiceInstance(final Extension extension, final ServiceRegistry serviceRegistry) {
-        final URI consumedServiceURI = exactlyOne(extension.intercepted().consumed(),
+        return instance(interceptedService(extension), serviceRegistry);
+    }
+
+    /**
+     * Find the service consumed by an intercepting extension.
+     *
+     * @param extension The extension
+     * @return URI of the consumed service.
+     */
+    public static URI interceptedService(final Extension extension) {
+        return exactlyOne(extension.intercepted().consumed(),
                 "Exposed services must have exactly one consumed service in extension: " +
                         extension.uri());
-        return instance(consumedServiceURI, serviceRegistry);
-
     }
 
     private static URI instance(final URI serviceURI, final ServiceRegistry serviceRegistry) {
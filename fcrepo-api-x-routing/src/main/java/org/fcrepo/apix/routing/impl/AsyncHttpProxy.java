@@ -0,0 +1,295 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.http.common.HttpProtocolHeaderFilterStrategy;
+import org.apache.camel.spi.HeaderFilterStrategy;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.MessageHelper;
+import org.apache.camel.util.URISupport;
+import org.apache.camel.util.UnsafeUriCharactersEncoder;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.InputStreamContentProvider;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking HTTP proxy to Fedora.
+ * <p>
+ * Sends the request using Jetty's asynchronous HTTP client, and returns without waiting for a response. The exchange
+ * is completed as soon as response headers arrive, with the response body as a stream. Used in a route from a Jetty
+ * consumer, this means no thread is held while waiting on Fedora; the suspended request is resumed by a Jetty
+ * continuation.
+ * </p>
+ * <p>
+ * Only that wait is non-blocking. Request and response bodies are streamed (never buffered in full), but with
+ * blocking reads and writes, so a thread is held for as long as a body is being transferred.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class AsyncHttpProxy implements AsyncProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncHttpProxy.class);
+
+    /** Hop-by-hop headers, which are not forwarded */
+    static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "proxy-connection", "te",
+            "trailer", "trailers", "transfer-encoding", "upgrade"));
+
+    private static final HeaderFilterStrategy PROTOCOL_HEADERS = new HttpProtocolHeaderFilterStrategy();
+
+    private String proxyURI;
+
+    private int maxConnectionsPerDestination = 256;
+
+    private long connectTimeout = 15000;
+
+    private long idleTimeout = 60000;
+
+    private HttpClient client;
+
+    /**
+     * Set the URI requests are proxied to.
+     * <p>
+     * The request path and query are appended to this URI.
+     * </p>
+     *
+     * @param uri proxy URI.
+     */
+    public void setProxyURI(final URI uri) {
+        this.proxyURI = uri.toString().replaceFirst("/$", "");
+    }
+
+    /**
+     * Set the maximum number of connections to Fedora.
+     *
+     * @param max maximum connections.
+     */
+    public void setMaxConnections(final int max) {
+        this.maxConnectionsPerDestination = max;
+    }
+
+    /**
+     * Set the connect timeout.
+     *
+     * @param millis timeout in milliseconds.
+     */
+    public void setConnectTimeout(final long millis) {
+        this.connectTimeout = millis;
+    }
+
+    /**
+     * Set the time after which an idle connection, or a stalled request, is closed.
+     *
+     * @param millis timeout in milliseconds.
+     */
+    public void setIdleTimeout(final long millis) {
+        this.idleTimeout = millis;
+    }
+
+    /**
+     * Start the http client.
+     *
+     * @throws Exception if the client could not be started.
+     */
+    public void init() throws Exception {
+        final QueuedThreadPool threads = new QueuedThreadPool();
+        threads.setName("apix-proxy");
+        threads.setDaemon(true);
+
+        client = new HttpClient();
+        client.setExecutor(threads);
+        client.setFollowRedirects(false);
+        client.setMaxConnectionsPerDestination(maxConnectionsPerDestination);
+        client.setConnectTimeout(connectTimeout);
+        client.setIdleTimeout(idleTimeout);
+
+        // Content is proxied as-is, so never decode it
+        client.getContentDecoderFactories().clear();
+
+        client.start();
+    }
+
+    /**
+     * Stop the http client.
+     *
+     * @throws Exception if the client could not be stopped.
+     */
+    public void shutdown() throws Exception {
+        if (client != null) {
+            client.stop();
+        }
+    }
+
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+    @Override
+    public boolean process(final Exchange exchange, final AsyncCallback callback) {
+        final Request request;
+        try {
+            request = request(exchange.getIn());
+        } catch (final RuntimeException e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        request.send(new InputStreamResponseListener() {
+
+            @Override
+            public void onHeaders(final Response response) {
+                super.onHeaders(response);
+
+                if (done.compareAndSet(false, true)) {
+                    respond(exchange, response, getInputStream());
+                    callback.done(false);
+                }
+            }
+
+            @Override
+            public void onComplete(final Result result) {
+                super.onComplete(result);
+
+                if (result.isFailed()) {
+                    if (done.compareAndSet(false, true)) {
+                        exchange.setException(new IOException("Error proxying to " + request.getURI(),
+                                result.getFailure()));
+                        callback.done(false);
+                    } else {
+                        LOG.warn("Error streaming response from {}", request.getURI(), result.getFailure());
+                    }
+                }
+            }
+        });
+
+        return false;
+    }
+
+    private Request request(final Message in) {
+        final String path = in.getHeader(Exchange.HTTP_PATH, "", String.class);
+        final String query = in.getHeader(Exchange.HTTP_QUERY, String.class);
+
+        final Request request = client.newRequest(UnsafeUriCharactersEncoder.encodeHttpURI(
+                proxyURI + path + (query != null && !query.isEmpty() ? "?" + query : "")))
+                .method(in.getHeader(Exchange.HTTP_METHOD, "GET", String.class));
+
+        // The Jetty consumer maps query parameters to headers; as with the http4 producer in bridge mode, these
+        // must not be sent as headers, else a client could set any request header via the query string.
+        final Set<String> queryParams = queryParams(query);
+
+        for (final Map.Entry<String, Object> header : in.getHeaders().entrySet()) {
+            if (isForwarded(header.getKey()) && !queryParams.contains(header.getKey())) {
+                for (final Object value : values(header.getValue())) {
+                    request.header(header.getKey(), value.toString());
+                }
+            }
+        }
+
+        if (hasContent(in)) {
+            final InputStream body = in.getBody(InputStream.class);
+            if (body != null) {
+                request.content(new InputStreamContentProvider(body));
+            }
+        }
+
+        return request;
+    }
+
+    private static void respond(final Exchange exchange, final Response response, final InputStream body) {
+        final Message out = exchange.getOut();
+
+        for (final HttpField field : response.getHeaders()) {
+            if (isForwarded(field.getName())) {
+                final Object existing = out.getHeader(field.getName());
+                if (existing == null) {
+                    out.setHeader(field.getName(), field.getValue());
+                } else {
+                    final List<Object> values = new ArrayList<>(values(existing));
+                    values.add(field.getValue());
+                    out.setHeader(field.getName(), values);
+                }
+            }
+        }
+
+        // As with the http4 producer, carry over request headers (e.g. the request path) not describing the request
+        MessageHelper.copyHeaders(exchange.getIn(), out, PROTOCOL_HEADERS, false);
+
+        out.setHeader(Exchange.HTTP_RESPONSE_CODE, response.getStatus());
+        out.setBody(body);
+    }
+
+    static boolean isForwarded(final String header) {
+        final String name = header.toLowerCase();
+        return !name.startsWith("camel") && !name.startsWith("org.apache.camel") && !HOP_BY_HOP.contains(name);
+    }
+
+    static Set<String> queryParams(final String query) {
+        if (query == null || query.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        try {
+            return URISupport.parseQuery(query, false, true).keySet();
+        } catch (final URISyntaxException e) {
+            throw new RuntimeException("Could not parse query " + query, e);
+        }
+    }
+
+    private static boolean hasContent(final Message in) {
+        final Long length = in.getHeader(Exchange.CONTENT_LENGTH, Long.class);
+        return (length != null && length > 0) || in.getHeader("Transfer-Encoding") != null;
+    }
+
+    private static Collection<?> values(final Object value) {
+        if (value instanceof Collection) {
+            return (Collection<?>) value;
+        }
+        return Arrays.asList(value);
+    }
+}
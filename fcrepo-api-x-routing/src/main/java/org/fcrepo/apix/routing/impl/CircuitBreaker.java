@@ -0,0 +1,106 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+/**
+ * Circuit breaker for a single endpoint.
+ * <p>
+ * A closed breaker lets all requests through. After a number of consecutive failures it opens, ejecting the
+ * endpoint from selection. Once it has been open for long enough it becomes half open, allowing a single trial
+ * request whose outcome closes or re-opens it. A trial whose outcome is never recorded (e.g. because the request was
+ * abandoned after its endpoint was selected) times out after the same open period, allowing another trial.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private boolean trialInFlight;
+
+    private long trialStartedAt;
+
+    CircuitBreaker(final int failureThreshold, final long openNanos) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /** Whether the endpoint may be selected for a request at the given time */
+    synchronized boolean isAvailable(final long now) {
+        switch (state) {
+        case OPEN:
+            return now - openedAt >= openNanos;
+        case HALF_OPEN:
+            return !trialInFlight || now - trialStartedAt >= openNanos;
+        default:
+            return true;
+        }
+    }
+
+    /** Note that the endpoint was selected for a request */
+    synchronized void selected(final long now) {
+        if (state != State.CLOSED && isAvailable(now)) {
+            state = State.HALF_OPEN;
+            trialInFlight = true;
+            trialStartedAt = now;
+        }
+    }
+
+    synchronized void succeeded() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void failed(final long now) {
+        consecutiveFailures++;
+        trialInFlight = false;
+
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    synchronized int consecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("state=%s, consecutiveFailures=%d", state, consecutiveFailures);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.fcrepo.apix.model.Ontologies.LDP_CONTAINS;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lazily enumerates repository resources, and the members of containers among them.
+ * <p>
+ * Resources are enumerated depth-first. Members of a resource are only looked up (via its <code>ldp:contains</code>
+ * triples) when the resource is reached, and is fewer than the maximum depth away from one of the starting resources.
+ * Resources that aren't RDF sources, or that can't be retrieved, have no members.
+ * </p>
+ * <p>
+ * Containment is a tree, so visited resources are not remembered: memory use depends on the depth of the traversal
+ * and the number of members of containers along the way, not on the number of resources enumerated. Only the
+ * starting resources are de-duplicated, and are not enumerated again if they are also members of one another.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class ContainmentTraversal implements Iterator<URI> {
+
+    static final String PREFER_CONTAINMENT =
+            "return=representation; include=\"http://www.w3.org/ns/ldp#PreferContainment\"; " +
+                    "omit=\"http://www.w3.org/ns/ldp#PreferMembership\"";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContainmentTraversal.class);
+
+    private final CloseableHttpClient client;
+
+    private final int maxDepth;
+
+    private final Deque<Member> pending = new ArrayDeque<>();
+
+    private final Set<URI> starting;
+
+    /**
+     * Traverse from the given resources.
+     *
+     * @param client http client, used to look up members. May be null if depth is zero.
+     * @param resources starting resources.
+     * @param depth maximum depth of traversal; zero for only the starting resources.
+     */
+    ContainmentTraversal(final CloseableHttpClient client, final Collection<URI> resources, final int depth) {
+        if (depth > 0 && client == null) {
+            throw new IllegalStateException("No http client to look up members of containers");
+        }
+
+        this.client = client;
+        this.maxDepth = depth;
+        this.starting = new LinkedHashSet<>(resources);
+        starting.forEach(r -> pending.add(new Member(r, 0)));
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public URI next() {
+        final Member next = pending.poll();
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+
+        if (next.depth < maxDepth) {
+            final List<URI> members = membersOf(next.uri);
+            for (int i = members.size() - 1; i >= 0; i--) {
+                if (!starting.contains(members.get(i))) {
+                    pending.push(new Member(members.get(i), next.depth + 1));
+                }
+            }
+        }
+
+        return next.uri;
+    }
+
+    private List<URI> membersOf(final URI container) {
+        final List<URI> members = new ArrayList<>();
+
+        final HttpGet get = new HttpGet(container);
+        get.setHeader(HttpHeaders.ACCEPT, "application/n-triples");
+        get.setHeader("Prefer", PREFER_CONTAINMENT);
+
+        try (CloseableHttpResponse response = client.execute(get)) {
+            final int status = response.getStatusLine().getStatusCode();
+
+            if (status != 200 || response.getEntity() == null || !"application/n-triples".equals(ContentType
+                    .getOrDefault(response.getEntity()).getMimeType())) {
+                LOG.debug("<{}> has no members (status {})", container, status);
+                return members;
+            }
+
+            final Model model = ModelFactory.createDefaultModel();
+            try (InputStream in = response.getEntity().getContent()) {
+                RDFDataMgr.read(model, in, container.toString(), Lang.NTRIPLES);
+            }
+
+            model.listObjectsOfProperty(model.getResource(container.toString()), model.getProperty(LDP_CONTAINS))
+                    .filterKeep(RDFNode::isURIResource)
+                    .forEachRemaining(m -> members.add(URI.create(m.asResource().getURI())));
+        } catch (final Exception e) {
+            LOG.warn("Could not look up members of <{}>", container, e);
+        }
+
+        return members;
+    }
+
+    private static class Member {
+
+        final URI uri;
+
+        final int depth;
+
+        Member(final URI uri, final int depth) {
+            this.uri = uri;
+            this.depth = depth;
+        }
+    }
+}
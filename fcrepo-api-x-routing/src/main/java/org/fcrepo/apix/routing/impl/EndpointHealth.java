@@ -0,0 +1,201 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the health of service instance endpoints with per-endpoint circuit breakers.
+ * <p>
+ * Breakers are driven passively by the outcome of requests routed to endpoints; a request fails if it results in an
+ * error or 5xx response, or takes longer than the slow request threshold. Optionally, all known endpoints are also
+ * actively probed at a fixed interval with a lightweight request (<code>HEAD</code> by default).
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class EndpointHealth {
+
+    static final Logger LOG = LoggerFactory.getLogger(EndpointHealth.class);
+
+    private final Map<URI, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private int failureThreshold = 5;
+
+    private long openMillis = 30000;
+
+    private long slowRequestMillis = 0;
+
+    private long probeIntervalMillis = 0;
+
+    private String probeMethod = "HEAD";
+
+    private CloseableHttpClient client;
+
+    private ScheduledExecutorService prober;
+
+    /**
+     * Set the number of consecutive failures that eject an endpoint.
+     *
+     * @param failures Number of failures.
+     */
+    public void setFailureThreshold(final int failures) {
+        this.failureThreshold = failures;
+    }
+
+    /**
+     * Set how long an ejected endpoint waits before it may be tried again.
+     *
+     * @param millis Time in milliseconds.
+     */
+    public void setOpenMillis(final long millis) {
+        this.openMillis = millis;
+    }
+
+    /**
+     * Set the latency above which a request is considered failed.
+     *
+     * @param millis Time in milliseconds; zero or less to never consider slow requests as failed.
+     */
+    public void setSlowRequestMillis(final long millis) {
+        this.slowRequestMillis = millis;
+    }
+
+    /**
+     * Set the interval for actively probing endpoints.
+     *
+     * @param millis Time in milliseconds; zero or less disables probing.
+     */
+    public void setProbeIntervalMillis(final long millis) {
+        this.probeIntervalMillis = millis;
+    }
+
+    /**
+     * Set the HTTP method used for probing endpoints.
+     *
+     * @param method HTTP method, e.g. HEAD or OPTIONS.
+     */
+    public void setProbeMethod(final String method) {
+        this.probeMethod = method;
+    }
+
+    /**
+     * Set the http client used for probing endpoints.
+     *
+     * @param client the client.
+     */
+    public void setHttpClient(final CloseableHttpClient client) {
+        this.client = client;
+    }
+
+    /** Start probing, if enabled. */
+    public void init() {
+        if (probeIntervalMillis > 0 && client != null) {
+            prober = Executors.newSingleThreadScheduledExecutor();
+            prober.scheduleWithFixedDelay(this::probe, probeIntervalMillis, probeIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Stop probing */
+    public void shutdown() {
+        if (prober != null) {
+            prober.shutdownNow();
+        }
+    }
+
+    /**
+     * Determine if an endpoint may be selected.
+     *
+     * @param endpoint the endpoint.
+     * @return false if the endpoint has been ejected.
+     */
+    public boolean isAvailable(final URI endpoint) {
+        return breaker(endpoint).isAvailable(System.nanoTime());
+    }
+
+    /**
+     * Note that an endpoint has been selected for a request.
+     *
+     * @param endpoint the endpoint.
+     */
+    public void selected(final URI endpoint) {
+        breaker(endpoint).selected(System.nanoTime());
+    }
+
+    /**
+     * Record the outcome of a request to an endpoint.
+     *
+     * @param endpoint the endpoint.
+     * @param latencyNanos Time taken by the request.
+     * @param success Whether the request succeeded.
+     */
+    public void record(final URI endpoint, final long latencyNanos, final boolean success) {
+        final boolean slow = slowRequestMillis > 0 && TimeUnit.NANOSECONDS.toMillis(latencyNanos) > slowRequestMillis;
+
+        if (success && !slow) {
+            breaker(endpoint).succeeded();
+        } else {
+            final CircuitBreaker breaker = breaker(endpoint);
+            breaker.failed(System.nanoTime());
+            if (breaker.state() == CircuitBreaker.State.OPEN) {
+                LOG.debug("Endpoint <{}> is unhealthy: {}", endpoint, breaker);
+            }
+        }
+    }
+
+    /**
+     * Health of all known endpoints.
+     *
+     * @return Unmodifiable map of endpoint to circuit breaker.
+     */
+    Map<URI, CircuitBreaker> breakers() {
+        return Collections.unmodifiableMap(breakers);
+    }
+
+    private CircuitBreaker breaker(final URI endpoint) {
+        return breakers.computeIfAbsent(endpoint, e -> new CircuitBreaker(failureThreshold, TimeUnit.MILLISECONDS
+                .toNanos(openMillis)));
+    }
+
+    void probe() {
+        for (final URI endpoint : breakers.keySet()) {
+            final long start = System.nanoTime();
+            try (CloseableHttpResponse response = client.execute(RequestBuilder.create(probeMethod).setUri(endpoint)
+                    .build())) {
+                record(endpoint, System.nanoTime() - start, response.getStatusLine().getStatusCode() < 500);
+            } catch (final Exception e) {
+                LOG.debug("Probe of <{}> failed: {}", endpoint, e.getMessage());
+                record(endpoint, System.nanoTime() - start, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.fcrepo.apix.routing.EndpointStatistics;
+import org.fcrepo.apix.routing.EndpointStatistics.Counters;
+import org.fcrepo.apix.routing.LoadBalancer;
+
+/**
+ * Chooses the endpoint with the lowest expected latency.
+ * <p>
+ * Expected latency is the moving average of observed latency, scaled by the number of requests already in flight.
+ * Endpoints that have not seen any requests yet are preferred, so that every endpoint gets measured.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class EwmaLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "ewma";
+
+    @Override
+    public URI select(final List<URI> endpoints, final EndpointStatistics stats) {
+        final int start = ThreadLocalRandom.current().nextInt(endpoints.size());
+
+        URI best = null;
+        double lowest = Double.MAX_VALUE;
+
+        for (int i = 0; i < endpoints.size(); i++) {
+            final URI candidate = endpoints.get((start + i) % endpoints.size());
+            final Counters counters = stats.of(candidate);
+            final double cost = counters.latencyEwma() * (counters.inFlight() + 1);
+
+            if (cost < lowest) {
+                best = candidate;
+                lowest = cost;
+            }
+        }
+
+        return best;
+    }
+}
@@ -23,14 +23,18 @@ import static org.fcrepo.apix.routing.Util.segment;
 import static org.fcrepo.apix.routing.Util.terminal;
 
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.fcrepo.apix.model.Extension;
 import org.fcrepo.apix.model.Extension.Scope;
+import org.fcrepo.apix.model.ExtensionChange;
+import org.fcrepo.apix.model.components.ExtensionListener;
 import org.fcrepo.apix.model.components.ExtensionRegistry;
 import org.fcrepo.apix.model.components.Initializer;
 import org.fcrepo.apix.model.components.Initializer.Initialization;
@@ -49,7 +53,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author apb@jhu.edu
  */
-public class ExposedServiceUriAnalyzer implements Updateable {
+public class ExposedServiceUriAnalyzer implements Updateable, ExtensionListener {
 
     private ExtensionRegistry extensions;
 
@@ -63,7 +67,10 @@ public class ExposedServiceUriAnalyzer implements Updateable {
 
     private Initialization init = Initialization.NONE;
 
-    private final Map<String, Extension> endpoints = new ConcurrentHashMap<>();
+    private volatile PathTrie endpoints = new PathTrie(Collections.emptyMap());
+
+    // Exposing extensions, by extension URI
+    private final Map<URI, Extension> exposing = new HashMap<>();
 
     private static final Logger LOG = LoggerFactory.getLogger(ExposedServiceUriAnalyzer.class);
 
@@ -125,11 +132,52 @@ public class ExposedServiceUriAnalyzer implements Updateable {
     }
 
     @Override
-    public void update() {
-        final Map<String, Extension> exts = extensions.list().stream()
-                .map(extensions::getExtension)
-                .filter(Extension::isExposing)
-                .filter(e -> e.exposed().scope() != Scope.EXTERNAL)
+    public synchronized void update() {
+        exposing.clear();
+        for (final URI uri : extensions.list()) {
+            final Extension e = extensions.getExtension(uri);
+            if (isExposedInternally(e)) {
+                exposing.put(uri, e);
+            }
+        }
+
+        reindex();
+    }
+
+    /** Extension changes are handled by {@link #onChange(ExtensionChange)} */
+    @Override
+    public void update(final URI inResponseTo) {
+        // Nothing to do
+    }
+
+    /**
+     * Apply a change to extensions.
+     * <p>
+     * Exposed paths are only re-indexed if an exposing extension was added, removed, or changed.
+     * </p>
+     */
+    @Override
+    public synchronized void onChange(final ExtensionChange change) {
+        boolean modified = exposing.keySet().removeAll(change.invalidated());
+
+        for (final Extension e : Stream.concat(change.added().stream(), change.changed().stream())
+                .filter(ExposedServiceUriAnalyzer::isExposedInternally)
+                .collect(Collectors.toList())) {
+            exposing.put(e.uri(), e);
+            modified = true;
+        }
+
+        if (modified) {
+            reindex();
+        }
+    }
+
+    private static boolean isExposedInternally(final Extension e) {
+        return e.isExposing() && e.exposed().scope() != Scope.EXTERNAL;
+    }
+
+    private void reindex() {
+        final Map<String, Extension> exts = exposing.values().stream()
                 .collect(Collectors.toMap(e -> e.exposed().exposedAt().getPath(), e -> e, (e1, e2) -> {
                     // If there's a clash, ignore the one whose URI is lexically greatest
                     LOG.warn("Expose path '{}' defined by two extensions: <{}> and <{}>; " +
@@ -138,17 +186,7 @@ public class ExposedServiceUriAnalyzer implements Updateable {
                     return e1.uri().compareTo(e2.uri()) <= 0 ? e1 : e2;
                 }));
 
-        endpoints.putAll(exts);
-
-        endpoints.keySet().removeIf(k -> !exts.containsKey(k));
-    }
-
-    @Override
-    public void update(final URI inResponseTo) {
-        if (extensions.hasInDomain(inResponseTo)) {
-            // TODO: This can be optimized more
-            update();
-        }
+        endpoints = new PathTrie(exts);
     }
 
     /**
@@ -169,47 +207,17 @@ public class ExposedServiceUriAnalyzer implements Updateable {
 
             LOG.debug("ANALYZER: raw path: {}", rawPath);
 
-            LOG.debug("ANALYZER: candidates: {}", endpoints.keySet());
-
-            final List<String> matches = new ArrayList<String>(
-                    endpoints.keySet().stream()
-                            .filter(rawPath::contains)
-                            .collect(Collectors.toList()));
+            final Match match = endpoints.match(rawPath);
 
-            LOG.debug("ANALYZER: matches: {}", matches);
-
-            if (matches.isEmpty()) {
+            if (match == null) {
                 return null;
-            } else if (matches.size() > 1) {
-                // If one is resource and one is repository-scoped, see if we can sort that out.
-
-                final List<String> repositoryScoped = matches.stream()
-                        .filter(rawPath::startsWith)
-                        .collect(Collectors.toList());
-                final List<String> resourceScoped = matches.stream()
-                        .filter(m -> endpoints.get(m).exposed().scope().equals(Scope.RESOURCE))
-                        .collect(Collectors.toList());
-
-                if (repositoryScoped.size() == 1) {
-                    matches.retainAll(repositoryScoped);
-                } else if (resourceScoped.size() == 1) {
-                    matches.retainAll(resourceScoped);
-                } else {
-                    throw new RuntimeException(String.format("Resource URI %s matches multiple extensions: %s",
-                            requestURI, matches));
-                }
             }
 
-            final String exposeSegment = matches.get(0);
-            final Extension extension = endpoints.get(exposeSegment);
+            LOG.debug("ANALYZER: match: <{}> at offset {}", match.extension.uri(), match.offset);
 
-            final int exposeStart = rawPath.indexOf(exposeSegment);
+            final Extension extension = match.extension;
 
-            String resourcePath = "";
-
-            if (exposeStart > 0) {
-                resourcePath = rawPath.substring(0, exposeStart - 1);
-            }
+            final String resourcePath = match.offset > 0 ? rawPath.substring(0, match.offset - 1) : "";
 
             LOG.debug("ANALYZER: Resource path '{}'", resourcePath);
 
@@ -240,6 +248,147 @@ public class ExposedServiceUriAnalyzer implements Updateable {
         return append(fcrepoBaseURI, path);
     }
 
+    /**
+     * Routing automaton of exposed service path segments.
+     * <p>
+     * An exposed service URI is the expose path, followed by the path of a resource, followed by the exposed path of
+     * a service, so an exposed path may begin at any segment of the request path. Rather than walking the trie from
+     * every segment, it is compiled into an Aho-Corasick automaton over path segments, so that a single left-to-right
+     * pass over the request path finds the leftmost, then longest, exposed path composed of whole segments.
+     * Repository-scoped services only match at the beginning of the path, since they are not relative to any
+     * resource.
+     * </p>
+     */
+    static class PathTrie {
+
+        private final Node root = new Node(0);
+
+        PathTrie(final Map<String, Extension> exposedPaths) {
+            exposedPaths.forEach(this::put);
+            link();
+        }
+
+        private void put(final String exposedAt, final Extension extension) {
+            final String normalized = segment(exposedAt);
+
+            if (normalized.isEmpty()) {
+                LOG.warn("Ignoring empty expose path defined by extension <{}>", extension.uri());
+                return;
+            }
+
+            Node node = root;
+            for (final String seg : normalized.split("/")) {
+                final int depth = node.depth + 1;
+                node = node.children.computeIfAbsent(seg, k -> new Node(depth));
+            }
+            node.extension = extension;
+        }
+
+        /* Breadth-first, link each node to the node of its longest proper suffix, and to its nearest output */
+        private void link() {
+            final Deque<Node> queue = new ArrayDeque<>();
+            root.fail = root;
+            for (final Node child : root.children.values()) {
+                child.fail = root;
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                final Node node = queue.remove();
+                node.output = node.fail.extension != null ? node.fail : node.fail.output;
+
+                for (final Map.Entry<String, Node> child : node.children.entrySet()) {
+                    child.getValue().fail = next(node.fail, child.getKey());
+                    queue.add(child.getValue());
+                }
+            }
+        }
+
+        private Node next(final Node from, final String segment) {
+            Node node = from;
+            while (true) {
+                final Node child = node.children.get(segment);
+                if (child != null) {
+                    return child;
+                } else if (node == root) {
+                    return root;
+                }
+                node = node.fail;
+            }
+        }
+
+        Match match(final String path) {
+            final String[] segments = path.split("/", -1);
+
+            Node state = root;
+            Extension found = null;
+            int foundStart = Integer.MAX_VALUE;
+            int foundLength = 0;
+
+            for (int i = 0; i < segments.length; i++) {
+                state = next(state, segments[i]);
+
+                // No match found from here on can start at or before the one already found
+                if (i - state.depth + 1 > foundStart) {
+                    break;
+                }
+
+                for (Node out = state.extension != null ? state : state.output; out != null; out = out.output) {
+                    final int start = i - out.depth + 1;
+                    if ((start < foundStart || (start == foundStart && out.depth > foundLength)) &&
+                            (start == 0 || out.extension.exposed().scope() != Scope.REPOSITORY)) {
+                        found = out.extension;
+                        foundStart = start;
+                        foundLength = out.depth;
+                    }
+                }
+            }
+
+            if (found == null) {
+                return null;
+            }
+
+            int offset = 0;
+            for (int i = 0; i < foundStart; i++) {
+                offset += segments[i].length() + 1;
+            }
+            return new Match(found, offset);
+        }
+
+        private static class Node {
+
+            final Map<String, Node> children = new HashMap<>();
+
+            /** Number of segments from the root */
+            final int depth;
+
+            Extension extension;
+
+            /** Node of the longest proper suffix of this node's path that is also in the trie */
+            Node fail;
+
+            /** Nearest node, following suffixes, that has an extension */
+            Node output;
+
+            Node(final int depth) {
+                this.depth = depth;
+            }
+        }
+    }
+
+    static class Match {
+
+        final Extension extension;
+
+        /** Character offset of the exposed path within the matched path */
+        final int offset;
+
+        Match(final Extension extension, final int offset) {
+            this.extension = extension;
+            this.offset = offset;
+        }
+    }
+
     public class ServiceExposingBinding {
 
         public Extension extension;
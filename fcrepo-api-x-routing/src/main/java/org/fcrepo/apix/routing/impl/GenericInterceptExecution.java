@@ -20,7 +20,7 @@ package org.fcrepo.apix.routing.impl;
 
 import static org.apache.camel.builder.PredicateBuilder.and;
 import static org.fcrepo.apix.routing.Util.append;
-import static org.fcrepo.apix.routing.Util.interceptingServiceInstance;
+import static org.fcrepo.apix.routing.Util.interceptedService;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,30 +28,48 @@ import java.io.PushbackInputStream;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.fcrepo.apix.model.Extension;
+import org.fcrepo.apix.model.Extension.OutgoingMode;
+import org.fcrepo.apix.model.ExtensionChange;
 import org.fcrepo.apix.model.components.ExtensionBinding;
+import org.fcrepo.apix.model.components.ExtensionListener;
 import org.fcrepo.apix.model.components.ExtensionRegistry;
+import org.fcrepo.apix.model.components.Initializer;
+import org.fcrepo.apix.model.components.Initializer.Initialization;
 import org.fcrepo.apix.model.components.ServiceRegistry;
 import org.fcrepo.apix.model.components.Updateable;
 
 import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
 import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.Rejectable;
+import org.apache.camel.ThreadPoolRejectedPolicy;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.builder.ThreadPoolBuilder;
 import org.apache.camel.processor.aggregate.AggregationStrategy;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.IOHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * @author apb@jhu.edu
  */
-public class GenericInterceptExecution extends RouteBuilder implements Updateable {
+public class GenericInterceptExecution extends RouteBuilder implements Updateable, ExtensionListener {
 
     public static final String ROUTE_INTERCEPT_INCOMING = "direct:intercept_incoming";
 
@@ -63,12 +81,18 @@ public class GenericInterceptExecution extends RouteBuilder implements Updateabl
 
     public static final String ROUTE_INVOKE_SERVICE = "direct:intercept_invoke";
 
+    public static final String ROUTE_INVOKE_OBSERVER = "direct:intercept_invoke_observer";
+
     public static final String HEADER_INVOKE_STATUS = "CamelApixInvokeStatusCode";
 
     public static final String HEADER_SERVICE_ENDPOINTS = "CamelApixServiceEndpoints";
 
     public static final String HEADER_SERVICE_ENDPOINTS_OUTGOING = "CamelApixServiceEndpointsOutgoing";
 
+    public static final String HEADER_SERVICE_ENDPOINTS_CONCURRENT = "CamelApixServiceEndpointsConcurrent";
+
+    public static final String HEADER_SERVICE_ENDPOINTS_ASYNC = "CamelApixServiceEndpointsAsync";
+
     public static final String HTTP_HEADER_MODALITY = "Apix-Modality";
 
     public static final String MODALITY_INTERCEPT_INCOMING = "intercept; incoming";
@@ -83,8 +107,30 @@ public class GenericInterceptExecution extends RouteBuilder implements Updateabl
 
     private ServiceRegistry serviceRegistry;
 
+    private ServiceInstanceSelector selector;
+
     private URI proxyURI;
 
+    private ProducerTemplate observers;
+
+    private ExecutorService asyncObservers;
+
+    private int asyncObserverThreads = 4;
+
+    private int asyncObserverMaxQueued = 100;
+
+    private int spoolThreshold = 128 * 1024;
+
+    private int bypassCacheSize = 10000;
+
+    private long bypassTtl = 60000;
+
+    private UnboundResourceCache unbound = new UnboundResourceCache(bypassCacheSize, bypassTtl);
+
+    private Initializer initializer;
+
+    private Initialization init = Initialization.NONE;
+
     /**
      * Set the extension binding.
      *
@@ -112,6 +158,15 @@ public class GenericInterceptExecution extends RouteBuilder implements Updateabl
         this.serviceRegistry = registry;
     }
 
+    /**
+     * Set the service instance selector.
+     *
+     * @param selector The selector.
+     */
+    public void setServiceInstanceSelector(final ServiceInstanceSelector selector) {
+        this.selector = selector;
+    }
+
     /**
      * Set Fedora's baseURI.
      *
@@ -121,10 +176,92 @@ public class GenericInterceptExecution extends RouteBuilder implements Updateabl
         this.proxyURI = uri;
     }
 
+    /**
+     * Set the largest message body that will be buffered in memory, when a body needs to be read more than once.
+     * <p>
+     * Larger bodies are spooled to a temporary file, so that heap use does not grow with the size of the content.
+     * </p>
+     *
+     * @param bytes threshold in bytes.
+     */
+    public void setSpoolThreshold(final int bytes) {
+        this.spoolThreshold = bytes;
+    }
+
+    /**
+     * Set the number of threads notifying async outgoing observers.
+     *
+     * @param threads number of threads.
+     */
+    public void setAsyncObserverThreads(final int threads) {
+        this.asyncObserverThreads = threads;
+    }
+
+    /**
+     * Set the maximum number of notifications to async outgoing observers waiting for a thread.
+     * <p>
+     * Each waiting notification holds on to a copy of the response body, so when the queue is full, further
+     * notifications are dropped.
+     * </p>
+     *
+     * @param notifications number of notifications.
+     */
+    public void setAsyncObserverMaxQueued(final int notifications) {
+        this.asyncObserverMaxQueued = notifications;
+    }
+
+    /**
+     * Set the maximum number of resources remembered as having no intercepting extensions bound.
+     * <p>
+     * Requests to these resources bypass intercept routing entirely. Zero disables the bypass.
+     * </p>
+     *
+     * @param size number of resources.
+     */
+    public void setBypassCacheSize(final int size) {
+        this.bypassCacheSize = size;
+        this.unbound = new UnboundResourceCache(bypassCacheSize, bypassTtl);
+    }
+
+    /**
+     * Set how long a resource is remembered as having no intercepting extensions bound.
+     * <p>
+     * Changes to the resource itself, or to extensions, are noticed immediately. This bounds how long changes that
+     * indirectly affect binding (e.g. to ontologies) may go unnoticed.
+     * </p>
+     *
+     * @param millis time in milliseconds.
+     */
+    public void setBypassTtl(final long millis) {
+        this.bypassTtl = millis;
+        this.unbound = new UnboundResourceCache(bypassCacheSize, bypassTtl);
+    }
+
+    /**
+     * Set the initializer.
+     *
+     * @param initializer the initializer.
+     */
+    public void setInitializer(final Initializer initializer) {
+        this.initializer = initializer;
+    }
+
+    /** Initialize */
+    public void init() {
+        init = initializer.initialize(() -> {
+            update();
+        });
+    }
+
+    /** Shutdown */
+    public void shutdown() {
+        init.cancel();
+    }
+
     private final Collection<Extension> extensions = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
     @Override
-    public void update() {
+    public synchronized void update() {
         final List<Extension> found = extensionRegistry.list().stream()
                 .map(extensionRegistry::getExtension)
                 .filter(Extension::isIntercepting)
@@ -132,12 +269,52 @@ public class GenericInterceptExecution extends RouteBuilder implements Updateabl
 
         extensions.addAll(found);
         extensions.removeIf(x -> !found.contains(x));
+        unbound.clear();
     }
 
+    /**
+     * Forget that the given resource has no intercepting extensions, as that may have changed.
+     * <p>
+     * Changes to extensions are handled by {@link #onChange(ExtensionChange)}.
+     * </p>
+     */
     @Override
     public void update(final URI inResponseTo) {
-        // TODO: optimize later
-        update();
+        if (!extensionRegistry.hasInDomain(inResponseTo)) {
+            unbound.invalidate(inResponseTo);
+        }
+    }
+
+    @Override
+    public synchronized void onChange(final ExtensionChange change) {
+        final Set<URI> invalidated = change.invalidated();
+        boolean modified = extensions.removeIf(e -> invalidated.contains(e.uri()));
+
+        for (final Extension e : Stream.concat(change.added().stream(), change.changed().stream())
+                .filter(Extension::isIntercepting)
+                .collect(Collectors.toList())) {
+            modified |= extensions.add(e);
+        }
+
+        if (modified) {
+            unbound.clear();
+        }
+    }
+
+    /**
+     * Determines if a request may need to be intercepted.
+     * <p>
+     * False only if there are no intercepting extensions, or the requested resource is known to have none bound to
+     * it. Such requests can be proxied directly to Fedora.
+     * </p>
+     */
+    public final Predicate INTERCEPTED = ex -> {
+        init.await();
+        return !extensions.isEmpty() && !unbound.isUnbound(resourceOf(ex), System.nanoTime());
+    };
+
+    private URI resourceOf(final Exchange ex) {
+        return append(proxyURI, ex.getIn().getHeader(Exchange.HTTP_PATH));
     }
 
     /**
@@ -161,11 +338,22 @@ public class GenericInterceptExecution extends RouteBuilder implements Updateabl
                 .to(ROUTE_PERFORM_INCOMING)
                 .end();
 
+        observers = getContext().createProducerTemplate();
+
+        // Rejected notifications are dropped, see AsyncObservation
+        asyncObservers = new ThreadPoolBuilder(getContext())
+                .poolSize(asyncObserverThreads)
+                .maxPoolSize(asyncObserverThreads)
+                .maxQueueSize(asyncObserverMaxQueued)
+                .rejectedPolicy(ThreadPoolRejectedPolicy.Abort)
+                .build(this, "apix-async-observers");
+
         from(ROUTE_INTERCEPT_OUTGOING).id("intercept-outgoing")
                 .setHeader(HTTP_HEADER_MODALITY).constant(MODALITY_INTERCEPT_OUTGOING)
                 .setHeader(HEADER_SERVICE_ENDPOINTS).header(HEADER_SERVICE_ENDPOINTS_OUTGOING)
                 .setHeader(Exchange.HTTP_METHOD).constant("POST")
-                .to(ROUTE_PERFORM_OUTGOING);
+                .to(ROUTE_PERFORM_OUTGOING)
+                .process(NOTIFY_OBSERVERS);
 
         from(ROUTE_PERFORM_OUTGOING)
                 .choice().when(simple("${in.headers.CamelApixServiceEndpoints.size} > 0"))
@@ -178,27 +366,155 @@ public class GenericInterceptExecution extends RouteBuilder implements Updateabl
                 .process(e -> e.getIn().setHeader(
                         Exchange.HTTP_URI,
                         e.getIn().getHeader(HEADER_SERVICE_ENDPOINTS, Queue.class).remove()))
+                .process(selector.REQUEST_STARTED)
+                .doTry()
                 .to("http://localhost?throwExceptionOnFailure=false" +
                         "&disableStreamCache=true" +
-                        "&preserveHostHeader=true");
+                        "&preserveHostHeader=true")
+                .doFinally().process(selector.REQUEST_COMPLETED).end();
+
+        from(ROUTE_INVOKE_OBSERVER).id("intercept-invoke-observer")
+                .process(selector.REQUEST_STARTED)
+                .doTry()
+                .to("http://localhost?throwExceptionOnFailure=false" +
+                        "&disableStreamCache=true" +
+                        "&preserveHostHeader=true")
+                .doFinally().process(selector.REQUEST_COMPLETED).end()
+                .choice().when(simple("${in.header.CamelhttpResponseCode} not range '200..299'"))
+                .process(e -> LOG.warn("Outgoing intercept:  Observer {} returned {}",
+                        e.getIn().getHeader(Exchange.HTTP_URI),
+                        e.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE)));
     }
 
     final Processor GET_ENDPOINTS = (ex -> {
-        final URI fedoraResource = append(proxyURI, ex.getIn().getHeader(Exchange.HTTP_PATH));
+        final URI fedoraResource = resourceOf(ex);
 
         if (extensions.size() > 0) {
-            final List<URI> exts =
-                    binding.getExtensionsFor(fedoraResource, extensions)
-                            .stream()
-                            .map(e -> interceptingServiceInstance(e, serviceRegistry))
-                            .collect(Collectors.toList());
+            final long now = System.nanoTime();
+            final long generation = unbound.generation();
+            final Collection<Extension> bound = binding.getExtensionsFor(fedoraResource, extensions);
+            if (bound.isEmpty()) {
+                unbound.unbound(fedoraResource, now, generation);
+            }
+
+            final List<URI> exts = new LinkedList<>();
+            final Map<OutgoingMode, List<URI>> outgoing = new EnumMap<>(OutgoingMode.class);
+            for (final OutgoingMode mode : OutgoingMode.values()) {
+                outgoing.put(mode, new LinkedList<>());
+            }
+
+            for (final Extension e : bound) {
+                final URI endpoint = selector.select(interceptedService(e));
+                exts.add(endpoint);
+                outgoing.get(e.intercepted().outgoing()).add(endpoint);
+            }
 
             ex.getIn().setHeader(HEADER_SERVICE_ENDPOINTS, new LinkedList<>(exts));
-            ex.getIn().setHeader(HEADER_SERVICE_ENDPOINTS_OUTGOING, new LinkedList<>(exts));
+            ex.getIn().setHeader(HEADER_SERVICE_ENDPOINTS_OUTGOING, outgoing.get(OutgoingMode.SERIAL));
+            ex.getIn().setHeader(HEADER_SERVICE_ENDPOINTS_CONCURRENT, outgoing.get(OutgoingMode.CONCURRENT));
+            ex.getIn().setHeader(HEADER_SERVICE_ENDPOINTS_ASYNC, outgoing.get(OutgoingMode.ASYNC));
+        }
+    });
+
+    // Send the (final) response to observe-only outgoing extensions. Concurrent observers are awaited, async ones
+    // are not. Either way, their responses are ignored.
+    @SuppressWarnings("unchecked")
+    final Processor NOTIFY_OBSERVERS = (ex -> {
+        final List<URI> concurrent = ex.getIn().getHeader(HEADER_SERVICE_ENDPOINTS_CONCURRENT, List.class);
+        final List<URI> async = ex.getIn().getHeader(HEADER_SERVICE_ENDPOINTS_ASYNC, List.class);
 
+        if ((concurrent == null || concurrent.isEmpty()) && (async == null || async.isEmpty())) {
+            return;
+        }
+
+        // Spool the body, so that it can be sent to observers as well as the client
+        final SpooledBody body = SpooledBody.spool(ex.getIn().getBody(InputStream.class), spoolThreshold);
+        ex.getIn().setBody(body.open());
+        ex.addOnCompletion(new SynchronizationAdapter() {
+
+            @Override
+            public void onDone(final Exchange exchange) {
+                body.release();
+            }
+        });
+
+        final List<Future<Exchange>> pending = new LinkedList<>();
+        if (concurrent != null) {
+            concurrent.forEach(endpoint -> pending.add(observe(ex, body, endpoint)));
+        }
+
+        if (async != null) {
+            async.forEach(endpoint -> asyncObservers.execute(new AsyncObservation(observation(ex, body, endpoint),
+                    body)));
+        }
+
+        for (final Future<Exchange> observed : pending) {
+            try {
+                observed.get();
+            } catch (final ExecutionException e) {
+                LOG.warn("Outgoing intercept:  Observer failed", e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     });
 
+    private Future<Exchange> observe(final Exchange ex, final SpooledBody body, final URI endpoint) {
+        return observers.asyncCallback(ROUTE_INVOKE_OBSERVER, observation(ex, body, endpoint),
+                new SynchronizationAdapter() {
+
+                    @Override
+                    public void onDone(final Exchange exchange) {
+                        body.release();
+                    }
+                });
+    }
+
+    /* Copy of the exchange to send to an observer, retaining the body */
+    private static Exchange observation(final Exchange ex, final SpooledBody body, final URI endpoint) {
+        final Exchange copy = ex.copy();
+        copy.getIn().setHeader(Exchange.HTTP_URI, endpoint.toString());
+        copy.getIn().removeHeaders("CamelApixServiceEndpoints*");
+        copy.getIn().setBody(body.retain().open());
+        return copy;
+    }
+
+    /**
+     * Notification of an async observer, which is dropped if there are too many waiting.
+     */
+    private class AsyncObservation implements Runnable, Rejectable {
+
+        final Exchange observation;
+
+        final SpooledBody body;
+
+        AsyncObservation(final Exchange observation, final SpooledBody body) {
+            this.observation = observation;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            try {
+                observers.send(ROUTE_INVOKE_OBSERVER, observation);
+                if (observation.getException() != null) {
+                    LOG.warn("Outgoing intercept:  Observer failed", observation.getException());
+                }
+            } finally {
+                body.release();
+            }
+        }
+
+        @Override
+        public void reject() {
+            LOG.warn("Outgoing intercept:  Too many async observer notifications pending, not notifying {}",
+                    observation.getIn().getHeader(Exchange.HTTP_URI));
+            IOHelper.close(observation.getIn().getBody(InputStream.class));
+            body.release();
+        }
+    }
+
     // Handle the response from an extension invocation for
     final AggregationStrategy INCOMING_HANDLE_RESPONSE = ((req, resp) -> {
 
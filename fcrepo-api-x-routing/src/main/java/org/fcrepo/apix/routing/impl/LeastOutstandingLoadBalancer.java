@@ -0,0 +1,59 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.fcrepo.apix.routing.EndpointStatistics;
+import org.fcrepo.apix.routing.LoadBalancer;
+
+/**
+ * Chooses the endpoint with the fewest requests in flight.
+ * <p>
+ * Ties are broken by starting the scan at a random position, so that idle endpoints share load evenly.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class LeastOutstandingLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "least-outstanding";
+
+    @Override
+    public URI select(final List<URI> endpoints, final EndpointStatistics stats) {
+        final int start = ThreadLocalRandom.current().nextInt(endpoints.size());
+
+        URI best = null;
+        int fewest = Integer.MAX_VALUE;
+
+        for (int i = 0; i < endpoints.size(); i++) {
+            final URI candidate = endpoints.get((start + i) % endpoints.size());
+            final int inFlight = stats.of(candidate).inFlight();
+
+            if (inFlight < fewest) {
+                best = candidate;
+                fewest = inFlight;
+            }
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.fcrepo.apix.routing.EndpointStatistics;
+import org.fcrepo.apix.routing.LoadBalancer;
+
+/**
+ * Picks two endpoints at random, and chooses the one with fewer requests in flight.
+ *
+ * @author apb@jhu.edu
+ */
+public class PowerOfTwoChoicesLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "power-of-two";
+
+    @Override
+    public URI select(final List<URI> endpoints, final EndpointStatistics stats) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        final int first = random.nextInt(endpoints.size());
+        final int second = (first + 1 + random.nextInt(endpoints.size() - 1)) % endpoints.size();
+
+        final URI a = endpoints.get(first);
+        final URI b = endpoints.get(second);
+
+        return stats.of(b).inFlight() < stats.of(a).inFlight() ? b : a;
+    }
+}
@@ -30,21 +30,21 @@ import static org.fcrepo.apix.routing.Util.segment;
 import static org.fcrepo.apix.routing.impl.GenericInterceptExecution.ROUTE_INTERCEPT_INCOMING;
 import static org.fcrepo.apix.routing.impl.GenericInterceptExecution.ROUTE_INTERCEPT_OUTGOING;
 
+import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
 
 import org.fcrepo.apix.model.Extension;
 import org.fcrepo.apix.model.Extension.Scope;
-import org.fcrepo.apix.model.ServiceInstance;
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.ResourceNotFoundException;
 import org.fcrepo.apix.model.components.RoutingFactory;
 import org.fcrepo.apix.model.components.ServiceDiscovery;
-import org.fcrepo.apix.model.components.ServiceInstanceRegistry;
 import org.fcrepo.apix.model.components.ServiceRegistry;
 import org.fcrepo.apix.routing.impl.ExposedServiceUriAnalyzer.ServiceExposingBinding;
 
@@ -52,7 +52,7 @@ import org.apache.camel.Exchange;
 import org.apache.camel.Predicate;
 import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.commons.io.IOUtils;
+import org.apache.camel.support.SynchronizationAdapter;
 import org.apache.http.client.ClientProtocolException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,8 +66,6 @@ public class RoutingImpl extends RouteBuilder {
 
     static final Logger LOG = LoggerFactory.getLogger(RoutingImpl.class);
 
-    private final Random random = new Random();
-
     private URI fcrepoBaseURI;
 
     public static final String EXECUTION_EXPOSE_MODALITY = "direct:execute_expose";
@@ -88,6 +86,12 @@ public class RoutingImpl extends RouteBuilder {
 
     public static final String ROUTE_HTTP_ERROR = "direct:http_error";
 
+    public static final String ROUTE_PROXY_FEDORA = "direct:proxy_fcrepo";
+
+    public static final String ROUTE_BYPASS_INTERCEPT = "direct:bypass_intercept";
+
+    public static final String ROUTE_INVOKE_SERVICE_INSTANCE = "direct:invoke_service_instance";
+
     public static final String BINDING = "CamelApixServiceExposureBinding";
 
     private ExposedServiceUriAnalyzer analyzer;
@@ -96,12 +100,20 @@ public class RoutingImpl extends RouteBuilder {
 
     private ServiceRegistry serviceRegistry;
 
+    private ServiceInstanceSelector selector;
+
     private RoutingFactory routing;
 
     private String interceptPath;
 
     private String proxyPath;
 
+    private AsyncHttpProxy asyncProxy;
+
+    private GenericInterceptExecution interceptExecution;
+
+    private int maxBatchDepth = 1;
+
     /**
      * Set Fedora's baseURI.
      *
@@ -129,6 +141,15 @@ public class RoutingImpl extends RouteBuilder {
         this.serviceRegistry = registry;
     }
 
+    /**
+     * Set the service instance selector.
+     *
+     * @param selector The selector.
+     */
+    public void setServiceInstanceSelector(final ServiceInstanceSelector selector) {
+        this.selector = selector;
+    }
+
     /**
      * Set the URI analyzer.
      *
@@ -165,6 +186,45 @@ public class RoutingImpl extends RouteBuilder {
         this.proxyPath = path;
     }
 
+    /**
+     * Set the non-blocking proxy to Fedora.
+     * <p>
+     * If present, requests that are not intercepted are proxied to Fedora without holding a thread while waiting for
+     * Fedora to respond. Otherwise, they are proxied using the (blocking) http4 component.
+     * </p>
+     *
+     * @param proxy The proxy.
+     */
+    public void setAsyncProxy(final AsyncHttpProxy proxy) {
+        this.asyncProxy = proxy;
+    }
+
+    /**
+     * Set the intercept execution.
+     * <p>
+     * If present, requests to resources that have no intercepting extensions bound to them bypass intercept routing.
+     * Otherwise, all requests in the intercept path are routed through it.
+     * </p>
+     *
+     * @param execution The intercept execution.
+     */
+    public void setInterceptExecution(final GenericInterceptExecution execution) {
+        this.interceptExecution = execution;
+    }
+
+    /**
+     * Set the maximum depth to which batch service document requests may traverse containers.
+     * <p>
+     * Members of containers are listed by API-X itself, not on behalf of the client, so a deep traversal of a large
+     * repository is both expensive and able to enumerate resources the client could not otherwise list.
+     * </p>
+     *
+     * @param depth A non-negative number, or 'infinity'.
+     */
+    public void setMaxBatchDepth(final String depth) {
+        this.maxBatchDepth = depth(depth);
+    }
+
     private String interceptBase;
 
     @Override
@@ -177,7 +237,13 @@ public class RoutingImpl extends RouteBuilder {
         from("jetty:http://{{apix.listen.host}}:{{apix.port}}/{{apix.discoveryPath}}" +
                 "?matchOnUriPrefix=true&optionsEnabled=true")
                         .routeId("service-doc-endpoint")
-                        .process(WRITE_SERVICE_DOC);
+                        .choice()
+                        .when(header(Exchange.HTTP_METHOD).isEqualTo("POST")).process(WRITE_SERVICE_DOCS)
+                        .otherwise().process(WRITE_SERVICE_DOC);
+
+        from("jetty:http://{{apix.listen.host}}:{{apix.port}}/{{apix.statusPath}}")
+                .routeId("status-endpoint").routeDescription("Status of service instance endpoints")
+                .process(WRITE_STATUS);
 
         from("jetty:http://{{apix.listen.host}}:{{apix.port}}/{{apix.exposePath}}" +
                 "?matchOnUriPrefix=true" +
@@ -190,22 +256,40 @@ public class RoutingImpl extends RouteBuilder {
                         .when(header(EXPOSING_EXTENSION).isNull()).to(EXTENSION_NOT_FOUND)
                         .otherwise().to(EXECUTION_EXPOSE_MODALITY);
 
+        // Requests proxied asynchronously are suspended until Fedora responds, however long that takes.
         from("jetty:http://{{apix.listen.host}}:{{apix.port}}/{{apix.proxyPath}}?" +
                 "matchOnUriPrefix=true" +
                 "&bridgeEndpoint=true" +
                 "&disableStreamCache=true" +
-                "&optionsEnabled=true")
+                "&optionsEnabled=true" +
+                "&continuationTimeout=0")
                         .routeId("endpoint-proxy").routeDescription("Endpoint for proxy to Fedora")
 
                         .choice()
-                        .when(IN_INTERCEPT_PATH).to(ROUTE_INTERCEPT)
-                        .otherwise().doTry()
-                        .to("{{fcrepo.proxyURI}}" +
-                                "?bridgeEndpoint=true" +
-                                "&disableStreamCache=true" +
-                                "&throwExceptionOnFailure=false" +
-                                "&preserveHostHeader=true")
-                        .doCatch(ClientProtocolException.class).to(ROUTE_HTTP_ERROR);
+                        .when(and(IN_INTERCEPT_PATH, INTERCEPTED)).to(ROUTE_INTERCEPT)
+                        .when(IN_INTERCEPT_PATH).to(ROUTE_BYPASS_INTERCEPT)
+                        .otherwise().to(ROUTE_PROXY_FEDORA);
+
+        from(ROUTE_BYPASS_INTERCEPT).routeId("bypass-intercept")
+                .routeDescription("Proxy to Fedora for resources with no intercepting extensions")
+                .to(ROUTE_PROXY_FEDORA)
+                .process(ADD_SERVICE_HEADER);
+
+        if (asyncProxy != null) {
+            from(ROUTE_PROXY_FEDORA).routeId("proxy-fedora-async")
+                    .doTry()
+                    .process(asyncProxy)
+                    .doCatch(IOException.class).to(ROUTE_HTTP_ERROR);
+        } else {
+            from(ROUTE_PROXY_FEDORA).routeId("proxy-fedora")
+                    .doTry()
+                    .to("{{fcrepo.proxyURI}}" +
+                            "?bridgeEndpoint=true" +
+                            "&disableStreamCache=true" +
+                            "&throwExceptionOnFailure=false" +
+                            "&preserveHostHeader=true")
+                    .doCatch(ClientProtocolException.class).to(ROUTE_HTTP_ERROR);
+        }
 
         from("direct:http_error").routeId("http-error")
                 .process(e -> LOG.warn("HTTP Error proxying to {}", e.getIn().getHeader(Exchange.HTTP_PATH)))
@@ -249,10 +333,18 @@ public class RoutingImpl extends RouteBuilder {
                 .setHeader(Exchange.HTTP_PATH).simple("${in.header." + BINDING + ".additionalPath}")
                 .setHeader(Exchange.HTTP_URI).header(SERVICE_INSTANCE_URI)
                 .choice().when(header(SERVICE_INSTANCE_URI).isNull()).to(ROUTE_INSTANCE_NOT_FOUND)
-                .otherwise().to("http://localhost" +
+                .otherwise().to(ROUTE_INVOKE_SERVICE_INSTANCE);
+
+        from(ROUTE_INVOKE_SERVICE_INSTANCE)
+                .routeId("apix-invoke-service-instance")
+                .routeDescription("Invokes the selected service instance endpoint")
+                .process(selector.REQUEST_STARTED)
+                .doTry()
+                .to("http://localhost" +
                         "?preserveHostHeader=true" +
                         "&disableStreamCache=true" +
-                        "&throwExceptionOnFailure=false");
+                        "&throwExceptionOnFailure=false")
+                .doFinally().process(selector.REQUEST_COMPLETED).end();
 
     }
 
@@ -260,6 +352,10 @@ public class RoutingImpl extends RouteBuilder {
         return segment(ex.getIn().getHeader(Exchange.HTTP_PATH, String.class)).startsWith(interceptBase);
     };
 
+    final Predicate INTERCEPTED = ex -> {
+        return interceptExecution == null || interceptExecution.INTERCEPTED.matches(ex);
+    };
+
     final Processor ANALYZE_URI = (ex -> {
         final ServiceExposingBinding binding = analyzer.match(
                 URI.create(ex.getIn().getHeader(Exchange.HTTP_URL, String.class)));
@@ -292,13 +388,128 @@ public class RoutingImpl extends RouteBuilder {
         final URI resource = fcrepoResourceFromPath(ex.getIn().getHeader(Exchange.HTTP_PATH,
                 String.class));
 
-        try (WebResource serviceDoc = serviceDiscovery
-                .getServiceDocumentFor(resource, routing.of(requestUri(ex)), accept)) {
-            ex.getOut().setBody(IOUtils.toByteArray(serviceDoc.representation()));
-            ex.getOut().setHeader(Exchange.CONTENT_TYPE, serviceDoc.contentType());
+        final WebResource serviceDoc = serviceDiscovery
+                .getServiceDocumentFor(resource, routing.of(requestUri(ex)), accept);
+
+        final String etag = serviceDoc.etag();
+        ex.getOut().setHeader("Vary", "Accept");
+        if (etag != null) {
+            ex.getOut().setHeader("ETag", etag);
+
+            if (matches(etag, ex.getIn().getHeader("If-None-Match", String.class))) {
+                serviceDoc.close();
+                ex.getOut().setHeader(Exchange.HTTP_RESPONSE_CODE, 304);
+                ex.getOut().setBody(null);
+                return;
+            }
+        }
+
+        // Stream the document; it is closed once the response has been written
+        ex.addOnCompletion(new SynchronizationAdapter() {
+
+            @Override
+            public void onDone(final Exchange exchange) {
+                try {
+                    serviceDoc.close();
+                } catch (final Exception e) {
+                    LOG.warn("Could not close service document for {}", resource, e);
+                }
+            }
+        });
+
+        ex.getOut().setBody(serviceDoc.representation());
+        ex.getOut().setHeader(Exchange.CONTENT_TYPE, serviceDoc.contentType());
+    });
+
+    /*
+     * Service documents of resources listed in the request body (text/uri-list), or of the resource in the request
+     * path if none are listed. Containers are traversed to the depth given by the 'depth' query parameter
+     * (default 0, or 'infinity'), which may not exceed the configured maximum.
+     */
+    final Processor WRITE_SERVICE_DOCS = (ex -> {
+        final String body = ex.getIn().getBody(String.class);
+        final String depthParam = ex.getIn().getHeader("depth", "0", String.class);
+
+        final List<URI> resources = new ArrayList<>();
+        final int depth;
+        try {
+            depth = depth(depthParam);
+            if (depth > maxBatchDepth) {
+                throw new IllegalArgumentException(String.format("Depth %s exceeds the maximum of %s", depthParam,
+                        maxBatchDepth == Integer.MAX_VALUE ? "infinity" : maxBatchDepth));
+            }
+            for (final URI uri : uriList(body)) {
+                resources.add(routing.of(requestUri(ex)).nonProxyURIFor(uri));
+            }
+        } catch (final IllegalArgumentException | ResourceNotFoundException e) {
+            ex.getOut().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+            ex.getOut().setBody(e.getMessage());
+            return;
+        }
+
+        if (resources.isEmpty()) {
+            resources.add(fcrepoResourceFromPath(ex.getIn().getHeader(Exchange.HTTP_PATH, String.class)));
         }
+
+        final WebResource serviceDocs = serviceDiscovery.getServiceDocumentsFor(resources, depth, routing.of(
+                requestUri(ex)));
+
+        ex.addOnCompletion(new SynchronizationAdapter() {
+
+            @Override
+            public void onDone(final Exchange exchange) {
+                try {
+                    serviceDocs.close();
+                } catch (final Exception e) {
+                    LOG.warn("Could not close service documents", e);
+                }
+            }
+        });
+
+        ex.getOut().setBody(serviceDocs.representation());
+        ex.getOut().setHeader(Exchange.CONTENT_TYPE, serviceDocs.contentType());
     });
 
+    /* Traversal depth from a 'depth' parameter: a non-negative number, or 'infinity' */
+    static int depth(final String param) {
+        if ("infinity".equalsIgnoreCase(param)) {
+            return Integer.MAX_VALUE;
+        }
+
+        final int depth = Integer.parseInt(param.trim());
+        if (depth < 0) {
+            throw new IllegalArgumentException("Negative depth " + depth);
+        }
+        return depth;
+    }
+
+    /* URIs in a text/uri-list, ignoring comments and blank lines */
+    static List<URI> uriList(final String body) {
+        final List<URI> uris = new ArrayList<>();
+        if (body == null) {
+            return uris;
+        }
+
+        for (final String line : body.split("\\r?\\n")) {
+            if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                uris.add(URI.create(line.trim()));
+            }
+        }
+        return uris;
+    }
+
+    /* Whether an If-None-Match header matches the given entity tag, using weak comparison */
+    static boolean matches(final String etag, final String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        final String opaque = etag.replaceFirst("^W/", "");
+        return Arrays.stream(ifNoneMatch.split("\\s*,\\s*"))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals("*") || tag.replaceFirst("^W/", "").equals(opaque));
+    }
+
     final Processor SELECT_SERVICE_INSTANCE = (ex -> {
         final Extension extension = ex.getIn().getHeader(EXPOSING_EXTENSION, Extension.class);
 
@@ -310,19 +521,7 @@ public class RoutingImpl extends RouteBuilder {
                         extension.uri());
 
         try {
-            final ServiceInstanceRegistry instanceRegistry = serviceRegistry.instancesOf(serviceRegistry.getService(
-                    consumedServiceURI));
-
-            if (instanceRegistry == null) {
-                throw new ResourceNotFoundException("No instance registry for service " + consumedServiceURI);
-            }
-
-            final ServiceInstance instance = oneOf(instanceRegistry.instances(),
-                    "There must be at least one service instance for " + consumedServiceURI);
-
-            ex.getIn().setHeader(SERVICE_INSTANCE_URI, oneOf(
-                    instance.endpoints(),
-                    "There must be at least one endpoint for instances of " + consumedServiceURI));
+            ex.getIn().setHeader(SERVICE_INSTANCE_URI, selector.select(consumedServiceURI));
         } catch (final ResourceNotFoundException e) {
             LOG.warn("No instances of service {}; {}", consumedServiceURI, e.getMessage());
             ex.setProperty(PROP_MESSAGE, e.getMessage());
@@ -330,6 +529,19 @@ public class RoutingImpl extends RouteBuilder {
 
     });
 
+    final Processor WRITE_STATUS = (ex -> {
+        final StringBuilder status = new StringBuilder();
+        final EndpointHealth health = selector.getEndpointHealth();
+
+        selector.getStatistics().all().forEach((endpoint, counters) -> status.append(String.format(
+                "<%s> %s%s%n", endpoint, counters, health != null && health.breakers().containsKey(endpoint)
+                        ? ", " + health.breakers().get(endpoint)
+                        : "")));
+
+        ex.getOut().setBody(status.toString());
+        ex.getOut().setHeader(Exchange.CONTENT_TYPE, "text/plain");
+    });
+
     @SuppressWarnings("unchecked")
     final Processor ADD_SERVICE_HEADER = (ex -> {
 
@@ -372,12 +584,4 @@ public class RoutingImpl extends RouteBuilder {
 
         return of.iterator().next();
     }
-
-    private <T> T oneOf(final List<T> of, final String errMsg) {
-        if (of.isEmpty()) {
-            throw new ResourceNotFoundException(errMsg);
-        }
-
-        return of.get(random.nextInt(of.size()));
-    }
 }
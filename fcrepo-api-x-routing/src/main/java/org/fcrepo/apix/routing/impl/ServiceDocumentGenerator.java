@@ -18,6 +18,7 @@
 
 package org.fcrepo.apix.routing.impl;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.fcrepo.apix.model.Extension.Scope.RESOURCE;
 import static org.fcrepo.apix.model.Ontologies.ORE_AGGREGATES;
 import static org.fcrepo.apix.model.Ontologies.ORE_DESCRIBES;
@@ -32,10 +33,19 @@ import static org.fcrepo.apix.model.Ontologies.Service.PROP_SERVICE_INSTANCE_EXP
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URI;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -44,17 +54,17 @@ import org.fcrepo.apix.model.Extension;
 import org.fcrepo.apix.model.Extension.ServiceExposureSpec;
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.ExtensionBinding;
+import org.fcrepo.apix.model.components.ExtensionRegistry;
 import org.fcrepo.apix.model.components.Routing;
 import org.fcrepo.apix.model.components.ServiceDiscovery;
 
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.RDFWriter;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFLanguages;
-import org.apache.jena.util.ResourceUtils;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Reference;
@@ -63,6 +73,20 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Generates service documents for resources.
+ * <p>
+ * Service documents are deterministic: fragment identifiers of service instances are derived from the exposed
+ * service and its endpoint, so the same bound extensions and routing always produce the same bytes. Each document
+ * has a strong entity tag derived from everything it contains, and serialized documents are cached by resource and
+ * media type, and re-used for as long as their entity tag is unchanged.
+ * </p>
+ * <p>
+ * Turtle, N-Triples, and JSON-LD documents are written straight from the list of exposed services by
+ * {@link ServiceDocumentSerializer}; other serializations are built as an RDF model and written by Jena.
+ * </p>
+ * <p>
+ * Batches of service documents (for indexers and crawlers) are written as N-Quads, one named graph per service
+ * document, as they are read.
+ * </p>
  *
  * @author apb@jhu.edu
  */
@@ -73,10 +97,29 @@ public class ServiceDocumentGenerator implements ServiceDiscovery {
 
     private ExtensionBinding extensionBinding;
 
+    private ExtensionRegistry extensionRegistry;
+
+    private CloseableHttpClient httpClient;
+
     private boolean useRelativeURIs = false;
 
     private boolean useInterceptedURIs = false;
 
+    private int cacheSize = 1000;
+
+    private boolean useStreamingSerializer = true;
+
+    private final Map<String, SerializedDocument> cache = new LinkedHashMap<String, SerializedDocument>(64, 0.75f,
+            true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, SerializedDocument> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
     /**
      * Set extension binding impl
      *
@@ -87,6 +130,27 @@ public class ServiceDocumentGenerator implements ServiceDiscovery {
         this.extensionBinding = binding;
     }
 
+    /**
+     * Set the extension registry.
+     * <p>
+     * If present, extensions are looked up once for each batch of service documents, rather than once per resource.
+     * </p>
+     *
+     * @param registry extension registry.
+     */
+    public void setExtensionRegistry(final ExtensionRegistry registry) {
+        this.extensionRegistry = registry;
+    }
+
+    /**
+     * Set the http client used for looking up the members of containers.
+     *
+     * @param client http client.
+     */
+    public void setHttpClient(final CloseableHttpClient client) {
+        this.httpClient = client;
+    }
+
     /**
      * Specify whether the service document should use relative URIs.
      *
@@ -105,73 +169,174 @@ public class ServiceDocumentGenerator implements ServiceDiscovery {
         this.useInterceptedURIs = use;
     }
 
+    /**
+     * Specify whether Turtle, N-Triples, and JSON-LD service documents are written directly to a stream.
+     * <p>
+     * If false, every service document is built as an RDF model and serialized with Jena.
+     * </p>
+     *
+     * @param streaming true if service documents should be streamed when possible.
+     */
+    public void setStreamingSerializer(final boolean streaming) {
+        this.useStreamingSerializer = streaming;
+    }
+
+    /**
+     * Set the maximum number of serialized service documents to cache.
+     *
+     * @param size number of documents. Zero or less disables caching.
+     */
+    public void setCacheSize(final int size) {
+        synchronized (cache) {
+            this.cacheSize = Math.max(0, size);
+            cache.clear();
+        }
+    }
+
     @Override
     public WebResource getServiceDocumentFor(final URI resource, final Routing routing, final String... contentType) {
 
         try {
-            final ServiceDocumentImpl doc = new ServiceDocumentImpl(resource, pickMediaType(contentType), routing);
+            final Lang lang = pickMediaType(contentType);
 
-            extensionBinding.getExtensionsFor(resource).stream()
-                    .filter(Extension::isExposing)
-                    .map(Extension::exposed).forEach(doc::expose);
-            return doc;
+            final List<Exposure> exposed = exposuresOf(extensionBinding.getExtensionsFor(resource), resource,
+                    routing);
+
+            final ServiceDocumentImpl doc = new ServiceDocumentImpl(resource, lang, routing);
+            final String key = resource + " " + lang.getName() + " " + doc.base;
+            final String etag = etagOf(doc, exposed);
+
+            synchronized (cache) {
+                final SerializedDocument cached = cache.get(key);
+                if (cached != null && cached.etag.equals(etag)) {
+                    return cached;
+                }
+            }
+
+            final SerializedDocument serialized = new SerializedDocument(doc.serialize(exposed), doc.contentType(),
+                    doc.uri(), etag);
+
+            synchronized (cache) {
+                if (cacheSize > 0) {
+                    cache.put(key, serialized);
+                }
+            }
+
+            return serialized;
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private class ServiceDocumentImpl implements WebResource {
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All resources are bound against the same set of extensions, looked up once for the whole batch, rather than
+     * once per resource. If a service document cannot be generated for a resource, an N-Quads comment saying so is
+     * written in its place.
+     * </p>
+     */
+    @Override
+    public WebResource getServiceDocumentsFor(final Collection<URI> resources, final int depth,
+            final Routing routing) {
 
-        final String resourceURI;
+        final Collection<Extension> extensions = extensionRegistry != null ? extensionRegistry.getExtensions()
+                : null;
+        final Iterator<URI> traversal = new ContainmentTraversal(httpClient, resources, depth);
 
-        final String proxyURI;
+        final Enumeration<InputStream> documents = new Enumeration<InputStream>() {
 
-        final Resource self;
+            @Override
+            public boolean hasMoreElements() {
+                return traversal.hasNext();
+            }
 
-        final Resource services;
+            @Override
+            public InputStream nextElement() {
+                return new ByteArrayInputStream(quadsFor(traversal.next(), extensions, routing));
+            }
+        };
 
-        final Lang lang;
+        return WebResource.of(new SequenceInputStream(documents), Lang.NQUADS.getContentType().getContentType(),
+                null, null);
+    }
 
-        final Model doc = ModelFactory.createDefaultModel();
+    private byte[] quadsFor(final URI resource, final Collection<Extension> extensions, final Routing routing) {
+        try {
+            final Collection<Extension> bound = extensions != null ? extensionBinding.getExtensionsFor(resource,
+                    extensions) : extensionBinding.getExtensionsFor(resource);
 
-        final String base;
+            final ServiceDocumentImpl doc = new ServiceDocumentImpl(resource, Lang.NQUADS, routing);
+            return doc.serialize(exposuresOf(bound, resource, routing));
+        } catch (final Exception e) {
+            LOG.warn("Could not generate service document for <{}>", resource, e);
+            return String.format("# No service document for <%s>\n", resource).getBytes(UTF_8);
+        }
+    }
 
-        final Routing routing;
+    private static List<Exposure> exposuresOf(final Collection<Extension> bound, final URI resource,
+            final Routing routing) {
+        return bound.stream()
+                .filter(Extension::isExposing)
+                .map(e -> new Exposure(e.exposed(), routing.endpointFor(e.exposed(), resource)))
+                .sorted(Comparator.comparing(Exposure::key))
+                .collect(Collectors.toList());
+    }
 
-        ServiceDocumentImpl(final URI uri, final Lang rdfLang, final Routing routing) {
-            this.resourceURI = uri.toString();
-            this.proxyURI = useInterceptedURIs ? routing.interceptUriFor(uri).toString() : uri.toString();
-            this.lang = rdfLang;
-            this.base = useRelativeURIs ? "" : routing.serviceDocFor(uri).toString();
-            this.routing = routing;
-            self = doc.getResource(base);
+    /* Strong entity tag from the content of a document: its subject, serialization, and exposed services. */
+    private static String etagOf(final ServiceDocumentImpl doc, final List<Exposure> exposed) throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(String.join("\n", doc.resourceURI, doc.proxyURI, doc.base, doc.lang.getName()).getBytes(
+                UTF_8));
+        for (final Exposure e : exposed) {
+            digest.update(("\n" + e.key() + " " + e.spec.scope()).getBytes(UTF_8));
+        }
 
-            services = doc.createResource(base + "#services");
+        final StringBuilder etag = new StringBuilder("\"");
+        for (final byte b : digest.digest()) {
+            etag.append(String.format("%02x", b));
+        }
+        return etag.append('"').toString();
+    }
 
-            self.addProperty(doc.getProperty(RDF_TYPE), doc.getResource(CLASS_SERVICE_DOCUMENT));
-            self.addProperty(doc.getProperty(PROP_IS_SERVICE_DOCUMENT_FOR), doc.getResource(proxyURI));
-            self.addProperty(doc.getProperty(ORE_DESCRIBES), services);
+    /* An exposed service, and its endpoint for a given resource */
+    static class Exposure {
+
+        final ServiceExposureSpec spec;
+
+        final URI endpoint;
+
+        Exposure(final ServiceExposureSpec spec, final URI endpoint) {
+            this.spec = spec;
+            this.endpoint = endpoint;
+        }
+
+        String key() {
+            return spec.exposedService() + " " + endpoint;
         }
 
-        private void expose(final ServiceExposureSpec spec) {
-            final URI uri = URI.create(resourceURI);
-            final Resource serviceInstance = doc.createResource(base + "#" + UUID.randomUUID().toString());
-            services.addProperty(doc.getProperty(ORE_AGGREGATES), serviceInstance);
+        /* Deterministic fragment identifier for this service instance */
+        String id() {
+            return UUID.nameUUIDFromBytes(key().getBytes(UTF_8)).toString();
+        }
+    }
 
-            serviceInstance.addProperty(doc.getProperty(RDF_TYPE), doc.getResource(CLASS_SERVICE_INSTANCE));
-            serviceInstance.addProperty(doc.getProperty(PROP_SERVICE_INSTANCE_EXPOSED_BY),
-                    doc.getResource(proxyURI));
+    /* Immutable serialized service document */
+    private static class SerializedDocument implements WebResource {
 
-            serviceInstance.addProperty(doc.getProperty(PROP_IS_SERVICE_INSTANCE_OF),
-                    doc.getResource(spec.exposedService().toString()));
+        final byte[] bytes;
 
-            serviceInstance.addProperty(doc.getProperty(PROP_HAS_ENDPOINT),
-                    doc.getResource(routing.endpointFor(spec, uri).toString()));
+        final String contentType;
 
-            if (RESOURCE.equals(spec.scope())) {
-                serviceInstance.addProperty(doc.getProperty(PROP_IS_FUNCTION_OF),
-                        doc.getProperty(proxyURI));
-            }
+        final URI uri;
+
+        final String etag;
+
+        SerializedDocument(final byte[] bytes, final String contentType, final URI uri, final String etag) {
+            this.bytes = bytes;
+            this.contentType = contentType;
+            this.uri = uri;
+            this.etag = etag;
         }
 
         @Override
@@ -181,12 +346,12 @@ public class ServiceDocumentGenerator implements ServiceDiscovery {
 
         @Override
         public String contentType() {
-            return lang.getContentType().getContentType();
+            return contentType;
         }
 
         @Override
         public URI uri() {
-            return URI.create(base);
+            return uri;
         }
 
         @Override
@@ -194,33 +359,101 @@ public class ServiceDocumentGenerator implements ServiceDiscovery {
             return null;
         }
 
+        @Override
+        public String etag() {
+            return etag;
+        }
+
         @Override
         public InputStream representation() {
-            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    private class ServiceDocumentImpl {
+
+        final String resourceURI;
+
+        final String proxyURI;
+
+        final Lang lang;
+
+        final String base;
 
-            final RDFWriter writer = doc.getWriter(lang.getName());
+        final Routing routing;
+
+        ServiceDocumentImpl(final URI uri, final Lang rdfLang, final Routing routing) {
+            this.resourceURI = uri.toString();
+            this.proxyURI = useInterceptedURIs ? routing.interceptUriFor(uri).toString() : uri.toString();
+            this.lang = rdfLang;
+            this.base = useRelativeURIs ? "" : routing.serviceDocFor(uri).toString();
+            this.routing = routing;
+        }
+
+        String contentType() {
+            return lang.getContentType().getContentType();
+        }
 
-            // To allow relative URIs in XML, if desired
-            writer.setProperty("allowBadURIs", "true");
+        URI uri() {
+            return URI.create(base);
+        }
 
-            if (useRelativeURIs && Lang.NTRIPLES.equals(lang)) {
-                final URI uri = URI.create(resourceURI);
-                final String serviceDocURI = routing.serviceDocFor(uri).toString();
+        /* N-Triples and N-Quads have no relative URIs, so these always need to be made absolute */
+        String absoluteBase() {
+            return useRelativeURIs && (Lang.NTRIPLES.equals(lang) || Lang.NQUADS.equals(lang)) ? routing
+                    .serviceDocFor(URI.create(resourceURI)).toString() : base;
+        }
 
-                doc.listSubjects()
-                        .andThen(
-                                doc.listObjects()
-                                        .filterKeep(RDFNode::isURIResource)
-                                        .mapWith(RDFNode::asResource))
-                        .filterKeep(Resource::isURIResource)
-                        .filterKeep(u -> u.getURI().startsWith("#") || u.getURI().equals("")).toSet()
-                        .forEach(r -> ResourceUtils.renameResource(r,
-                                serviceDocURI + r.getURI()));
+        byte[] serialize(final List<Exposure> exposed) throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            // Only the streaming serializer puts each document in its own graph
+            if ((useStreamingSerializer && ServiceDocumentSerializer.supports(lang)) || Lang.NQUADS.equals(lang)) {
+                ServiceDocumentSerializer.write(out, lang, absoluteBase(), proxyURI, exposed);
+            } else {
+                final Model doc = toModel(exposed);
+                final RDFWriter writer = doc.getWriter(lang.getName());
+
+                // To allow relative URIs in XML, if desired
+                writer.setProperty("allowBadURIs", "true");
+                writer.write(doc, out, base);
             }
 
-            writer.write(doc, out, base);
+            return out.toByteArray();
+        }
+
+        Model toModel(final List<Exposure> exposed) {
+            final Model doc = ModelFactory.createDefaultModel();
+            final String uri = absoluteBase();
 
-            return new ByteArrayInputStream(out.toByteArray());
+            final Resource self = doc.getResource(uri);
+            final Resource services = doc.createResource(uri + "#services");
+
+            self.addProperty(doc.getProperty(RDF_TYPE), doc.getResource(CLASS_SERVICE_DOCUMENT));
+            self.addProperty(doc.getProperty(PROP_IS_SERVICE_DOCUMENT_FOR), doc.getResource(proxyURI));
+            self.addProperty(doc.getProperty(ORE_DESCRIBES), services);
+
+            for (final Exposure exposure : exposed) {
+                final ServiceExposureSpec spec = exposure.spec;
+                final Resource serviceInstance = doc.createResource(uri + "#" + exposure.id());
+                services.addProperty(doc.getProperty(ORE_AGGREGATES), serviceInstance);
+
+                serviceInstance.addProperty(doc.getProperty(RDF_TYPE), doc.getResource(CLASS_SERVICE_INSTANCE));
+                serviceInstance.addProperty(doc.getProperty(PROP_SERVICE_INSTANCE_EXPOSED_BY),
+                        doc.getResource(proxyURI));
+
+                serviceInstance.addProperty(doc.getProperty(PROP_IS_SERVICE_INSTANCE_OF),
+                        doc.getResource(spec.exposedService().toString()));
+
+                serviceInstance.addProperty(doc.getProperty(PROP_HAS_ENDPOINT),
+                        doc.getResource(exposure.endpoint.toString()));
+
+                if (RESOURCE.equals(spec.scope())) {
+                    serviceInstance.addProperty(doc.getProperty(PROP_IS_FUNCTION_OF),
+                            doc.getProperty(proxyURI));
+                }
+            }
+            return doc;
         }
     }
 
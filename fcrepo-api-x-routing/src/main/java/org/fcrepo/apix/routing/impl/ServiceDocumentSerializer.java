@@ -0,0 +1,291 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.apix.model.Extension.Scope.RESOURCE;
+import static org.fcrepo.apix.model.Ontologies.ORE_AGGREGATES;
+import static org.fcrepo.apix.model.Ontologies.ORE_DESCRIBES;
+import static org.fcrepo.apix.model.Ontologies.RDF_TYPE;
+import static org.fcrepo.apix.model.Ontologies.Service.CLASS_SERVICE_DOCUMENT;
+import static org.fcrepo.apix.model.Ontologies.Service.CLASS_SERVICE_INSTANCE;
+import static org.fcrepo.apix.model.Ontologies.Service.PROP_HAS_ENDPOINT;
+import static org.fcrepo.apix.model.Ontologies.Service.PROP_IS_FUNCTION_OF;
+import static org.fcrepo.apix.model.Ontologies.Service.PROP_IS_SERVICE_DOCUMENT_FOR;
+import static org.fcrepo.apix.model.Ontologies.Service.PROP_IS_SERVICE_INSTANCE_OF;
+import static org.fcrepo.apix.model.Ontologies.Service.PROP_SERVICE_INSTANCE_EXPOSED_BY;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.fcrepo.apix.routing.impl.ServiceDocumentGenerator.Exposure;
+
+import org.apache.jena.riot.Lang;
+
+/**
+ * Writes service documents directly to a stream, without building an intermediate RDF model.
+ * <p>
+ * Service documents always have the same shape: the document itself, the aggregation of service instances it
+ * describes, and one service instance per exposed service. This writes exactly that shape as Turtle, N-Triples,
+ * JSON-LD, or N-Quads, producing the same triples as serializing the equivalent model with Jena would. As N-Quads,
+ * the triples are in a named graph, named by the URI of the service document.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+final class ServiceDocumentSerializer {
+
+    private static final String HEX = "0123456789ABCDEF";
+
+    private ServiceDocumentSerializer() {
+        // static only
+    }
+
+    /**
+     * Determine if a serialization is supported.
+     *
+     * @param lang RDF serialization.
+     * @return true if service documents can be written in the given serialization.
+     */
+    static boolean supports(final Lang lang) {
+        return Lang.TURTLE.equals(lang) || Lang.NTRIPLES.equals(lang) || Lang.JSONLD.equals(lang) ||
+                Lang.NQUADS.equals(lang);
+    }
+
+    /**
+     * Write a service document.
+     *
+     * @param out stream to write to. It is flushed, but not closed.
+     * @param lang serialization, one of those for which {@link #supports(Lang)} is true.
+     * @param base URI of the service document. May be relative, except for N-Triples and N-Quads.
+     * @param proxyURI URI of the resource the service document describes.
+     * @param exposed exposed services, in order.
+     * @throws IOException if the document cannot be written.
+     */
+    static void write(final OutputStream out, final Lang lang, final String base, final String proxyURI,
+            final List<Exposure> exposed) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+
+        if (Lang.TURTLE.equals(lang)) {
+            writeTurtle(writer, base, proxyURI, exposed);
+        } else if (Lang.NTRIPLES.equals(lang)) {
+            writeStatements(writer, base, proxyURI, exposed, null);
+        } else if (Lang.NQUADS.equals(lang)) {
+            writeStatements(writer, base, proxyURI, exposed, base);
+        } else if (Lang.JSONLD.equals(lang)) {
+            writeJsonLd(writer, base, proxyURI, exposed);
+        } else {
+            throw new IllegalArgumentException("Unsupported serialization " + lang.getName());
+        }
+
+        writer.flush();
+    }
+
+    private static void writeTurtle(final Writer w, final String base, final String proxyURI,
+            final List<Exposure> exposed) throws IOException {
+
+        iri(w, base);
+        w.write(" a ");
+        iri(w, CLASS_SERVICE_DOCUMENT);
+        w.write(" ;\n    ");
+        iri(w, PROP_IS_SERVICE_DOCUMENT_FOR);
+        w.write(' ');
+        iri(w, proxyURI);
+        w.write(" ;\n    ");
+        iri(w, ORE_DESCRIBES);
+        w.write(' ');
+        iri(w, base + "#services");
+        w.write(" .\n");
+
+        if (exposed.isEmpty()) {
+            return;
+        }
+
+        w.write('\n');
+        iri(w, base + "#services");
+        w.write(' ');
+        iri(w, ORE_AGGREGATES);
+        String separator = " ";
+        for (final Exposure e : exposed) {
+            w.write(separator);
+            iri(w, base + "#" + e.id());
+            separator = " ,\n        ";
+        }
+        w.write(" .\n");
+
+        for (final Exposure e : exposed) {
+            w.write('\n');
+            iri(w, base + "#" + e.id());
+            w.write(" a ");
+            iri(w, CLASS_SERVICE_INSTANCE);
+            turtleProperty(w, PROP_SERVICE_INSTANCE_EXPOSED_BY, proxyURI);
+            turtleProperty(w, PROP_IS_SERVICE_INSTANCE_OF, e.spec.exposedService().toString());
+            turtleProperty(w, PROP_HAS_ENDPOINT, e.endpoint.toString());
+            if (RESOURCE.equals(e.spec.scope())) {
+                turtleProperty(w, PROP_IS_FUNCTION_OF, proxyURI);
+            }
+            w.write(" .\n");
+        }
+    }
+
+    private static void turtleProperty(final Writer w, final String predicate, final String object)
+            throws IOException {
+        w.write(" ;\n    ");
+        iri(w, predicate);
+        w.write(' ');
+        iri(w, object);
+    }
+
+    /* N-Triples, or N-Quads if there is a graph */
+    private static void writeStatements(final Writer w, final String base, final String proxyURI,
+            final List<Exposure> exposed, final String graph) throws IOException {
+        final String services = base + "#services";
+
+        statement(w, base, RDF_TYPE, CLASS_SERVICE_DOCUMENT, graph);
+        statement(w, base, PROP_IS_SERVICE_DOCUMENT_FOR, proxyURI, graph);
+        statement(w, base, ORE_DESCRIBES, services, graph);
+
+        for (final Exposure e : exposed) {
+            final String instance = base + "#" + e.id();
+            statement(w, services, ORE_AGGREGATES, instance, graph);
+            statement(w, instance, RDF_TYPE, CLASS_SERVICE_INSTANCE, graph);
+            statement(w, instance, PROP_SERVICE_INSTANCE_EXPOSED_BY, proxyURI, graph);
+            statement(w, instance, PROP_IS_SERVICE_INSTANCE_OF, e.spec.exposedService().toString(), graph);
+            statement(w, instance, PROP_HAS_ENDPOINT, e.endpoint.toString(), graph);
+            if (RESOURCE.equals(e.spec.scope())) {
+                statement(w, instance, PROP_IS_FUNCTION_OF, proxyURI, graph);
+            }
+        }
+    }
+
+    private static void statement(final Writer w, final String s, final String p, final String o,
+            final String g) throws IOException {
+        iri(w, s);
+        w.write(' ');
+        iri(w, p);
+        w.write(' ');
+        iri(w, o);
+        if (g != null) {
+            w.write(' ');
+            iri(w, g);
+        }
+        w.write(" .\n");
+    }
+
+    /* Flattened, expanded JSON-LD; relative identifiers resolve against the document base, as in Turtle */
+    private static void writeJsonLd(final Writer w, final String base, final String proxyURI,
+            final List<Exposure> exposed) throws IOException {
+
+        w.write("{\n  \"@graph\" : [ {\n    \"@id\" : ");
+        string(w, base);
+        w.write(",\n    \"@type\" : [ ");
+        string(w, CLASS_SERVICE_DOCUMENT);
+        w.write(" ]");
+        jsonProperty(w, PROP_IS_SERVICE_DOCUMENT_FOR, proxyURI);
+        jsonProperty(w, ORE_DESCRIBES, base + "#services");
+        w.write("\n  }");
+
+        if (!exposed.isEmpty()) {
+            w.write(", {\n    \"@id\" : ");
+            string(w, base + "#services");
+            w.write(",\n    ");
+            string(w, ORE_AGGREGATES);
+            w.write(" : [ ");
+            String separator = "";
+            for (final Exposure e : exposed) {
+                w.write(separator);
+                w.write("{ \"@id\" : ");
+                string(w, base + "#" + e.id());
+                w.write(" }");
+                separator = ", ";
+            }
+            w.write(" ]\n  }");
+        }
+
+        for (final Exposure e : exposed) {
+            w.write(", {\n    \"@id\" : ");
+            string(w, base + "#" + e.id());
+            w.write(",\n    \"@type\" : [ ");
+            string(w, CLASS_SERVICE_INSTANCE);
+            w.write(" ]");
+            jsonProperty(w, PROP_SERVICE_INSTANCE_EXPOSED_BY, proxyURI);
+            jsonProperty(w, PROP_IS_SERVICE_INSTANCE_OF, e.spec.exposedService().toString());
+            jsonProperty(w, PROP_HAS_ENDPOINT, e.endpoint.toString());
+            if (RESOURCE.equals(e.spec.scope())) {
+                jsonProperty(w, PROP_IS_FUNCTION_OF, proxyURI);
+            }
+            w.write("\n  }");
+        }
+
+        w.write(" ]\n}\n");
+    }
+
+    private static void jsonProperty(final Writer w, final String predicate, final String object)
+            throws IOException {
+        w.write(",\n    ");
+        string(w, predicate);
+        w.write(" : [ { \"@id\" : ");
+        string(w, object);
+        w.write(" } ]");
+    }
+
+    /* IRI reference, as in Turtle and N-Triples, with characters not allowed in IRIs escaped */
+    private static void iri(final Writer w, final String iri) throws IOException {
+        w.write('<');
+        for (int i = 0; i < iri.length(); i++) {
+            final char c = iri.charAt(i);
+            if (c <= ' ' || c == '<' || c == '>' || c == '"' || c == '{' || c == '}' || c == '|' || c == '^' ||
+                    c == '`' || c == '\\') {
+                unicodeEscape(w, c);
+            } else {
+                w.write(c);
+            }
+        }
+        w.write('>');
+    }
+
+    /* JSON string */
+    private static void string(final Writer w, final String value) throws IOException {
+        w.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                w.write('\\');
+                w.write(c);
+            } else if (c < ' ') {
+                unicodeEscape(w, c);
+            } else {
+                w.write(c);
+            }
+        }
+        w.write('"');
+    }
+
+    private static void unicodeEscape(final Writer w, final char c) throws IOException {
+        w.write("\\u");
+        w.write(HEX.charAt((c >> 12) & 0xF));
+        w.write(HEX.charAt((c >> 8) & 0xF));
+        w.write(HEX.charAt((c >> 4) & 0xF));
+        w.write(HEX.charAt(c & 0xF));
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.fcrepo.apix.jena.Util.objectLiteralOf;
+import static org.fcrepo.apix.jena.Util.parse;
+import static org.fcrepo.apix.model.Ontologies.Service.PROP_LOAD_BALANCER;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.fcrepo.apix.model.Service;
+import org.fcrepo.apix.model.ServiceInstance;
+import org.fcrepo.apix.model.components.ResourceNotFoundException;
+import org.fcrepo.apix.model.components.ServiceInstanceRegistry;
+import org.fcrepo.apix.model.components.ServiceRegistry;
+import org.fcrepo.apix.routing.EndpointStatistics;
+import org.fcrepo.apix.routing.LoadBalancer;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects service instance endpoints for requests, and keeps track of how those requests perform.
+ * <p>
+ * Each service has its own {@link LoadBalancer}, named by its <code>svc:loadBalancer</code> property (see
+ * {@link #create(String)}), or the configured default if it has none. Requests to endpoints are tracked by wrapping
+ * them with {@link #REQUEST_STARTED} and {@link #REQUEST_COMPLETED}, which read the endpoint from the
+ * {@link Exchange#HTTP_URI} header.
+ * </p>
+ * <p>
+ * If an {@link EndpointHealth} is configured, endpoints that it considers unhealthy are not selected, unless all
+ * endpoints of a service are unhealthy; in that case, all are eligible rather than failing every request.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class ServiceInstanceSelector {
+
+    static final Logger LOG = LoggerFactory.getLogger(ServiceInstanceSelector.class);
+
+    public static final String PROP_ENDPOINT = "CamelApixServiceEndpoint";
+
+    public static final String PROP_REQUEST_START = "CamelApixServiceRequestStart";
+
+    private ServiceRegistry serviceRegistry;
+
+    private String defaultLoadBalancer = RoundRobinLoadBalancer.NAME;
+
+    private final EndpointStatistics stats = new EndpointStatistics();
+
+    private EndpointHealth health;
+
+    private final Map<URI, NamedLoadBalancer> balancers = new ConcurrentHashMap<>();
+
+    /**
+     * Set the service registry.
+     *
+     * @param registry The registry.
+     */
+    public void setServiceRegistry(final ServiceRegistry registry) {
+        this.serviceRegistry = registry;
+    }
+
+    /**
+     * Set the load balancer used for services that don't specify one.
+     *
+     * @param name Load balancer name, see {@link #create(String)}.
+     */
+    public void setDefaultLoadBalancer(final String name) {
+        create(name);
+        this.defaultLoadBalancer = name;
+    }
+
+    /**
+     * Set the endpoint health tracker.
+     *
+     * @param health Endpoint health.
+     */
+    public void setEndpointHealth(final EndpointHealth health) {
+        this.health = health;
+    }
+
+    /**
+     * Endpoint health tracker.
+     *
+     * @return endpoint health, or null if none.
+     */
+    public EndpointHealth getEndpointHealth() {
+        return health;
+    }
+
+    /**
+     * Request statistics of all endpoints.
+     *
+     * @return endpoint statistics.
+     */
+    public EndpointStatistics getStatistics() {
+        return stats;
+    }
+
+    /**
+     * Select an endpoint of an instance of the given service.
+     *
+     * @param serviceURI URI of the service.
+     * @return Endpoint URI.
+     * @throws ResourceNotFoundException if the service has no instances or endpoints.
+     */
+    public URI select(final URI serviceURI) {
+        final Service service = serviceRegistry.getService(serviceURI);
+        final ServiceInstanceRegistry instanceRegistry = serviceRegistry.instancesOf(service);
+
+        if (instanceRegistry == null) {
+            throw new ResourceNotFoundException("No instance registry for service " + serviceURI);
+        }
+
+        final List<ServiceInstance> instances = instanceRegistry.instances();
+
+        if (instances.isEmpty()) {
+            throw new ResourceNotFoundException("There must be at least one service instance for " + serviceURI);
+        }
+
+        final List<URI> endpoints = instances.stream()
+                .flatMap(i -> i.endpoints().stream())
+                .distinct()
+                .collect(Collectors.toList());
+
+        if (endpoints.isEmpty()) {
+            throw new ResourceNotFoundException("There must be at least one endpoint for instances of " +
+                    serviceURI);
+        }
+
+        final URI selected = balancerFor(service).select(healthy(endpoints), stats);
+
+        if (health != null) {
+            health.selected(selected);
+        }
+
+        return selected;
+    }
+
+    private List<URI> healthy(final List<URI> endpoints) {
+        if (health == null) {
+            return endpoints;
+        }
+
+        final List<URI> healthy = endpoints.stream().filter(health::isAvailable).collect(Collectors.toList());
+
+        if (healthy.isEmpty()) {
+            LOG.warn("All endpoints are unhealthy, considering all of them: {}", endpoints);
+            return endpoints;
+        }
+
+        return healthy;
+    }
+
+    /*
+     * The service registry gives out the same Service until the service changes, so its description is only read
+     * again when it does. A balancer is kept as long as the service names the same one, so it keeps its state.
+     */
+    private LoadBalancer balancerFor(final Service service) {
+        final NamedLoadBalancer existing = balancers.get(service.uri());
+        if (existing != null && existing.service == service) {
+            return existing.balancer;
+        }
+
+        final String specified = objectLiteralOf(service.uri().toString(), PROP_LOAD_BALANCER, parse(service));
+        final String name = specified != null ? specified : defaultLoadBalancer;
+
+        LoadBalancer balancer;
+        if (existing != null && existing.name.equals(name)) {
+            balancer = existing.balancer;
+        } else {
+            try {
+                balancer = create(name);
+            } catch (final IllegalArgumentException e) {
+                LOG.warn("Service <{}>: {}; using {}", service.uri(), e.getMessage(), defaultLoadBalancer);
+                balancer = create(defaultLoadBalancer);
+            }
+        }
+
+        balancers.put(service.uri(), new NamedLoadBalancer(service, name, balancer));
+        return balancer;
+    }
+
+    /**
+     * Create a load balancer.
+     *
+     * @param name One of <code>round-robin</code>, <code>least-outstanding</code>, <code>power-of-two</code>, or
+     *        <code>ewma</code>.
+     * @return new load balancer instance.
+     * @throws IllegalArgumentException if the name is not known.
+     */
+    public static LoadBalancer create(final String name) {
+        switch (name) {
+        case RoundRobinLoadBalancer.NAME:
+            return new RoundRobinLoadBalancer();
+        case LeastOutstandingLoadBalancer.NAME:
+            return new LeastOutstandingLoadBalancer();
+        case PowerOfTwoChoicesLoadBalancer.NAME:
+            return new PowerOfTwoChoicesLoadBalancer();
+        case EwmaLoadBalancer.NAME:
+            return new EwmaLoadBalancer();
+        default:
+            throw new IllegalArgumentException("Unknown load balancer " + name);
+        }
+    }
+
+    /** Record the start of a request to the endpoint in the HTTP_URI header */
+    final Processor REQUEST_STARTED = (ex -> {
+        final URI endpoint = URI.create(ex.getIn().getHeader(Exchange.HTTP_URI, String.class));
+        stats.started(endpoint);
+        ex.setProperty(PROP_ENDPOINT, endpoint);
+        ex.setProperty(PROP_REQUEST_START, System.nanoTime());
+    });
+
+    /** Record the completion of the request recorded by {@link #REQUEST_STARTED} */
+    final Processor REQUEST_COMPLETED = (ex -> {
+        final URI endpoint = (URI) ex.removeProperty(PROP_ENDPOINT);
+        final Long start = (Long) ex.removeProperty(PROP_REQUEST_START);
+
+        if (endpoint == null || start == null) {
+            return;
+        }
+
+        final Integer status = ex.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class);
+        final boolean failed = ex.getException() != null ||
+                ex.getProperty(Exchange.EXCEPTION_CAUGHT) != null ||
+                status == null || status >= 500;
+
+        final long latency = System.nanoTime() - start;
+
+        stats.completed(endpoint, latency, !failed);
+
+        if (health != null) {
+            health.record(endpoint, latency, !failed);
+        }
+    });
+
+    private static class NamedLoadBalancer {
+
+        final Service service;
+
+        final String name;
+
+        final LoadBalancer balancer;
+
+        NamedLoadBalancer(final Service service, final String name, final LoadBalancer balancer) {
+            this.service = service;
+            this.name = name;
+            this.balancer = balancer;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A message body that can be read more than once, with bounded heap use.
+ * <p>
+ * Content up to a threshold is held in memory; anything larger is spooled to a temporary file. Each call to
+ * {@link #open()} provides an independent stream over the content. The spool file is deleted once every party that
+ * {@link #retain() retained} the body has {@link #release() released} it.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class SpooledBody {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpooledBody.class);
+
+    private final byte[] content;
+
+    private final File spool;
+
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    private SpooledBody(final byte[] content, final File spool) {
+        this.content = content;
+        this.spool = spool;
+    }
+
+    /**
+     * Read a stream to exhaustion, spooling it to disk if it exceeds the given threshold.
+     *
+     * @param in content, which will be closed.
+     * @param threshold Maximum number of bytes to hold in memory.
+     * @return the spooled body, retained once by the caller.
+     */
+    static SpooledBody spool(final InputStream in, final int threshold) {
+        if (in == null) {
+            return new SpooledBody(new byte[0], null);
+        }
+
+        try (InputStream body = in) {
+            final ByteArrayOutputStream head = new ByteArrayOutputStream();
+            final long read = IOUtils.copyLarge(body, head, 0, threshold + 1);
+
+            if (read <= threshold) {
+                return new SpooledBody(head.toByteArray(), null);
+            }
+
+            final File file = File.createTempFile("apix-body", ".tmp");
+            try (OutputStream out = new FileOutputStream(file)) {
+                head.writeTo(out);
+                IOUtils.copyLarge(body, out);
+            } catch (final IOException | RuntimeException e) {
+                delete(file);
+                throw e;
+            }
+
+            return new SpooledBody(null, file);
+        } catch (final IOException e) {
+            throw new RuntimeException("Could not spool message body", e);
+        }
+    }
+
+    /**
+     * Open a new stream over the content.
+     *
+     * @return the stream.
+     */
+    InputStream open() {
+        if (spool == null) {
+            return new ByteArrayInputStream(content);
+        }
+
+        try {
+            return new FileInputStream(spool);
+        } catch (final IOException e) {
+            throw new RuntimeException("Could not read spooled message body", e);
+        }
+    }
+
+    /** Add a reference to the body */
+    SpooledBody retain() {
+        refs.incrementAndGet();
+        return this;
+    }
+
+    /** Release a reference to the body, deleting any spool file after the last one */
+    void release() {
+        if (refs.decrementAndGet() == 0 && spool != null) {
+            delete(spool);
+        }
+    }
+
+    /** Whether the content was spooled to disk */
+    boolean isSpooled() {
+        return spool != null;
+    }
+
+    private static void delete(final File file) {
+        if (!file.delete()) {
+            LOG.warn("Could not delete spool file {}", file);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, LRU record of resources known to have no intercepting extensions bound to them.
+ * <p>
+ * Requests to these resources can bypass intercept routing entirely. An entry is removed when the resource changes,
+ * and otherwise expires after a fixed time, since binding may also be affected by changes elsewhere (e.g. to
+ * ontologies).
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class UnboundResourceCache {
+
+    private static final String METADATA = "/fcr:metadata";
+
+    private final Map<String, Long> entries;
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    /* Incremented on every invalidation, guarded by entries */
+    private long generation;
+
+    /* Generation at which each recently invalidated resource was invalidated, oldest first. Guarded by entries */
+    private final Map<String, Long> invalidated;
+
+    /* Generation of the last clear, or of the most recent invalidation dropped from the above. Guarded by entries */
+    private long forgotten;
+
+    /**
+     * Create a cache.
+     *
+     * @param maxSize Maximum number of entries. If less than one, nothing will be cached.
+     * @param ttlMillis Time in milliseconds an entry remains valid.
+     */
+    UnboundResourceCache(final int maxSize, final long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1000000;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                return size() > UnboundResourceCache.this.maxSize;
+            }
+        });
+        this.invalidated = new LinkedHashMap<String, Long>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                if (size() > UnboundResourceCache.this.maxSize) {
+                    forgotten = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Determine if a resource is known to have no intercepting extensions bound.
+     *
+     * @param resource resource URI.
+     * @param now current time, in nanoseconds.
+     * @return true if the resource is known to be unbound.
+     */
+    boolean isUnbound(final URI resource, final long now) {
+        final String key = key(resource);
+        final Long recorded = entries.get(key);
+
+        if (recorded == null) {
+            return false;
+        } else if (now - recorded > ttlNanos) {
+            entries.remove(key);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Current invalidation generation.
+     * <p>
+     * Capture this before determining whether a resource is bound, and pass it to
+     * {@link #unbound(URI, long, long)}.
+     * </p>
+     *
+     * @return the generation.
+     */
+    long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * Record that a resource has no intercepting extensions bound.
+     * <p>
+     * Nothing is recorded if the resource has been invalidated since the given generation (or the whole cache
+     * cleared), as the determination may be based on stale information. Invalidations of other resources don't
+     * matter.
+     * </p>
+     *
+     * @param resource resource URI.
+     * @param now time, in nanoseconds, at which binding was determined.
+     * @param generation generation at which binding was determined.
+     */
+    void unbound(final URI resource, final long now, final long generation) {
+        if (maxSize > 0 && ttlNanos > 0) {
+            final String key = key(resource);
+            synchronized (entries) {
+                final Long invalidatedAt = invalidated.get(key);
+                if (generation >= forgotten && (invalidatedAt == null || invalidatedAt <= generation)) {
+                    entries.put(key, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget anything known about a resource that may have changed.
+     * <p>
+     * A change to the description of a binary also invalidates the binary.
+     * </p>
+     *
+     * @param resource resource URI.
+     */
+    void invalidate(final URI resource) {
+        final String key = key(resource);
+        synchronized (entries) {
+            generation++;
+            forget(key);
+            if (key.endsWith(METADATA)) {
+                forget(key.substring(0, key.length() - METADATA.length()));
+            }
+        }
+    }
+
+    /** Remove all entries */
+    void clear() {
+        synchronized (entries) {
+            generation++;
+            forgotten = generation;
+            entries.clear();
+            invalidated.clear();
+        }
+    }
+
+    /**
+     * Number of entries currently cached.
+     *
+     * @return number of entries.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /* Caller must hold the lock */
+    private void forget(final String key) {
+        entries.remove(key);
+        if (maxSize > 0) {
+            invalidated.remove(key);
+            invalidated.put(key, generation);
+        }
+    }
+
+    private static String key(final URI resource) {
+        return resource.toString().replaceFirst("/$", "");
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class AsyncHttpProxyTest {
+
+    Server server;
+
+    AsyncHttpProxy toTest;
+
+    volatile String requestedURI;
+
+    volatile String requestedBody;
+
+    volatile String requestedHeader;
+
+    volatile String requestedQueryHeader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+
+            @Override
+            public void handle(final String target, final org.eclipse.jetty.server.Request base,
+                    final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+                requestedURI = req.getRequestURI() + "?" + req.getQueryString();
+                requestedHeader = req.getHeader("X-Test");
+                requestedQueryHeader = req.getHeader("X-Query");
+                requestedBody = IOUtils.toString(req.getInputStream(), "UTF-8");
+
+                resp.setStatus(201);
+                resp.setHeader("X-Response", "yes");
+                resp.getOutputStream().write("response body".getBytes("UTF-8"));
+                base.setHandled(true);
+            }
+        });
+        server.start();
+
+        toTest = new AsyncHttpProxy();
+        toTest.setProxyURI(URI.create("http://localhost:" + ((ServerConnector) server.getConnectors()[0])
+                .getLocalPort() + "/fcrepo/"));
+        toTest.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        toTest.shutdown();
+        server.stop();
+    }
+
+    // Verifies that a request is proxied, and completed asynchronously with a streamed response
+    @Test
+    public void proxyTest() throws Exception {
+        final Exchange ex = new DefaultExchange(new DefaultCamelContext());
+        ex.getIn().setHeader(Exchange.HTTP_METHOD, "POST");
+        ex.getIn().setHeader(Exchange.HTTP_PATH, "/rest/some/path");
+        ex.getIn().setHeader(Exchange.HTTP_QUERY, "a=b&X-Query=injected");
+        ex.getIn().setHeader(Exchange.CONTENT_LENGTH, 12);
+        ex.getIn().setHeader("X-Test", "value");
+        // As the Jetty consumer would, from the query string
+        ex.getIn().setHeader("a", "b");
+        ex.getIn().setHeader("X-Query", "injected");
+        ex.getIn().setHeader("CamelApixInternal", "secret");
+        ex.getIn().setHeader("Connection", "close");
+        ex.getIn().setBody(new ByteArrayInputStream("request body".getBytes("UTF-8")));
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        assertFalse(toTest.process(ex, sync -> done.countDown()));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertNull(ex.getException());
+        assertEquals(201, ex.getOut().getHeader(Exchange.HTTP_RESPONSE_CODE));
+        assertEquals("yes", ex.getOut().getHeader("X-Response"));
+        assertEquals("/rest/some/path", ex.getOut().getHeader(Exchange.HTTP_PATH));
+
+        try (InputStream body = ex.getOut().getBody(InputStream.class)) {
+            assertEquals("response body", IOUtils.toString(body, "UTF-8"));
+        }
+
+        assertEquals("/fcrepo/rest/some/path?a=b&X-Query=injected", requestedURI);
+        assertEquals("value", requestedHeader);
+        assertNull(requestedQueryHeader);
+        assertEquals("request body", requestedBody);
+    }
+
+    // Verifies that connection failures are reported as IOExceptions
+    @Test
+    public void connectionFailureTest() throws Exception {
+        server.stop();
+
+        final Exchange ex = new DefaultExchange(new DefaultCamelContext());
+        ex.getIn().setHeader(Exchange.HTTP_PATH, "/rest");
+
+        final CountDownLatch done = new CountDownLatch(1);
+        toTest.process(ex, sync -> done.countDown());
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertTrue(ex.getException() instanceof IOException);
+    }
+
+    @Test
+    public void headerFilterTest() {
+        assertTrue(AsyncHttpProxy.isForwarded("Accept"));
+        assertFalse(AsyncHttpProxy.isForwarded("Transfer-Encoding"));
+        assertFalse(AsyncHttpProxy.isForwarded("CamelHttpPath"));
+    }
+
+    @Test
+    public void queryParamsTest() {
+        assertTrue(AsyncHttpProxy.queryParams(null).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("a", "Accept")),
+                AsyncHttpProxy.queryParams("a=b&Accept=text%2Fplain"));
+    }
+}
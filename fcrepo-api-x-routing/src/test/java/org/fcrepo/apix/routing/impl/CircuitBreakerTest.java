@@ -0,0 +1,95 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.fcrepo.apix.routing.impl.CircuitBreaker.State;
+
+import org.junit.Test;
+
+/**
+ * Tests circuit breaker state transitions.
+ *
+ * @author apb@jhu.edu
+ */
+public class CircuitBreakerTest {
+
+    static final long OPEN_NANOS = 1000;
+
+    @Test
+    public void opensAfterConsecutiveFailuresTest() {
+        final CircuitBreaker toTest = new CircuitBreaker(3, OPEN_NANOS);
+
+        toTest.failed(0);
+        toTest.failed(0);
+        toTest.succeeded();
+        toTest.failed(0);
+        toTest.failed(0);
+        assertEquals(State.CLOSED, toTest.state());
+        assertTrue(toTest.isAvailable(0));
+
+        toTest.failed(0);
+        assertEquals(State.OPEN, toTest.state());
+        assertFalse(toTest.isAvailable(OPEN_NANOS - 1));
+    }
+
+    @Test
+    public void halfOpenTrialTest() {
+        final CircuitBreaker toTest = new CircuitBreaker(1, OPEN_NANOS);
+
+        toTest.failed(0);
+        assertTrue(toTest.isAvailable(OPEN_NANOS));
+
+        // Only one trial request at a time
+        toTest.selected(OPEN_NANOS);
+        assertEquals(State.HALF_OPEN, toTest.state());
+        assertFalse(toTest.isAvailable(OPEN_NANOS));
+
+        // Failed trial re-opens
+        toTest.failed(OPEN_NANOS);
+        assertEquals(State.OPEN, toTest.state());
+        assertFalse(toTest.isAvailable(OPEN_NANOS + 1));
+
+        // Successful trial closes
+        toTest.selected(2 * OPEN_NANOS);
+        toTest.succeeded();
+        assertEquals(State.CLOSED, toTest.state());
+        assertTrue(toTest.isAvailable(2 * OPEN_NANOS));
+    }
+
+    // Verifies that a trial whose outcome is never recorded does not eject the endpoint forever
+    @Test
+    public void abandonedTrialTest() {
+        final CircuitBreaker toTest = new CircuitBreaker(1, OPEN_NANOS);
+
+        toTest.failed(0);
+        toTest.selected(OPEN_NANOS);
+        assertFalse(toTest.isAvailable(2 * OPEN_NANOS - 1));
+
+        assertTrue(toTest.isAvailable(2 * OPEN_NANOS));
+        toTest.selected(2 * OPEN_NANOS);
+        assertFalse(toTest.isAvailable(2 * OPEN_NANOS));
+
+        toTest.succeeded();
+        assertEquals(State.CLOSED, toTest.state());
+    }
+}
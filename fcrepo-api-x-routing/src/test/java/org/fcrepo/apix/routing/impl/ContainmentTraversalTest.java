@@ -0,0 +1,81 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.fcrepo.apix.model.Ontologies.LDP_CONTAINS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class ContainmentTraversalTest {
+
+    static final URI ROOT = URI.create("http://example.org/root");
+
+    // Verifies that members are enumerated depth-first to the maximum depth, and starting resources only once
+    @Test
+    public void traversalTest() throws Exception {
+        final CloseableHttpClient client = mock(CloseableHttpClient.class);
+
+        when(client.execute(any(HttpUriRequest.class))).thenAnswer(i -> {
+            final URI container = ((HttpUriRequest) i.getArguments()[0]).getURI();
+            final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+            when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+            when(response.getEntity()).thenReturn(new StringEntity(
+                    contains(container, "a") + contains(container, "b"),
+                    ContentType.create("application/n-triples", "UTF-8")));
+            return response;
+        });
+
+        final List<URI> visited = new ArrayList<>();
+        new ContainmentTraversal(client, Arrays.asList(ROOT, URI.create(ROOT + "/b"), ROOT), 1)
+                .forEachRemaining(visited::add);
+
+        assertEquals(Arrays.asList("", "/a", "/b", "/b/a", "/b/b"), visited.stream()
+                .map(u -> u.toString().substring(ROOT.toString().length()))
+                .collect(Collectors.toList()));
+
+        // Only the starting resources are looked up; their members are at the maximum depth
+        verify(client, times(2)).execute(any(HttpUriRequest.class));
+    }
+
+    private static String contains(final URI container, final String member) {
+        return String.format("<%s> <%s> <%s/%s> .\n", container, LDP_CONTAINS, container, member);
+    }
+}
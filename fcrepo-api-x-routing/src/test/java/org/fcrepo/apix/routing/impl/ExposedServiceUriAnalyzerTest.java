@@ -28,15 +28,20 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.fcrepo.apix.model.Extension;
 import org.fcrepo.apix.model.Extension.Scope;
 import org.fcrepo.apix.model.Extension.ServiceExposureSpec;
+import org.fcrepo.apix.model.ExtensionChange;
 import org.fcrepo.apix.model.components.ExtensionRegistry;
 import org.fcrepo.apix.model.components.Routing;
 import org.fcrepo.apix.model.components.RoutingFactory;
@@ -244,19 +249,18 @@ public class ExposedServiceUriAnalyzerTest {
         assertEquals(extension2, binding.extension);
     }
 
-    // Verifies that update(URI) pulls in registry updates.
+    // Verifies that extension changes are applied without consulting the registry.
     @Test
-    public void updateURITest() {
-        when(extensisons.getExtension(extension2URI)).thenReturn(extension2);
-        when(extensisons.hasInDomain(extension2URI)).thenReturn(true);
+    public void extensionChangeTest() {
+        when(extension1.uri()).thenReturn(extension1URI);
+        when(extension2.uri()).thenReturn(extension2URI);
         when(extension2.isExposing()).thenReturn(true);
         when(extension2.exposed()).thenReturn(extension2Spec);
         when(extension2Spec.exposedAt()).thenReturn(extension2ExposedAt);
         when(extension2Spec.scope()).thenReturn(Scope.RESOURCE);
 
-        extensionURIs.add(extension2URI);
-
-        toTest.update(extension2URI);
+        toTest.onChange(ExtensionChange.of(Arrays.asList(extension2), Arrays.asList(extension1), Collections
+                .emptyList()));
 
         final String path = "some/path/";
 
@@ -264,6 +268,8 @@ public class ExposedServiceUriAnalyzerTest {
 
         assertNotNull(binding);
         assertEquals(extension2, binding.extension);
+        assertNull(toTest.match(exposureURI(path, extension1ExposedAt)));
+        verify(extensisons, times(1)).list();
     }
 
     // Verify that the presence of non-matching exposure specs is irrelevant
@@ -287,6 +293,61 @@ public class ExposedServiceUriAnalyzerTest {
         assertEquals(extension1, binding.extension);
     }
 
+    // Verifies that exposed paths only match whole path segments
+    @Test
+    public void partialSegmentNoMatchTest() {
+        final String path = "some/path";
+
+        assertNull(toTest.match(exposureURI(path, URI.create("not-" + extension1ExposedAt))));
+        assertNull(toTest.match(exposureURI(path, URI.create(extension1ExposedAt + "-not"))));
+    }
+
+    // Verifies that multi-segment exposed paths match, and repository-scoped services only match at the root
+    @Test
+    public void multiSegmentRepositoryScopeTest() {
+        when(extensisons.getExtension(extension2URI)).thenReturn(extension2);
+        when(extension2.isExposing()).thenReturn(true);
+        when(extension2.exposed()).thenReturn(extension2Spec);
+        when(extension2Spec.exposedAt()).thenReturn(URI.create("/ext/two/"));
+        when(extension2Spec.scope()).thenReturn(Scope.REPOSITORY);
+
+        extensionURIs.add(extension2URI);
+
+        toTest.update();
+
+        final ServiceExposingBinding binding = toTest.match(append(exposureBaseURI, "ext/two/additional"));
+
+        assertNotNull(binding);
+        assertEquals(extension2, binding.extension);
+        assertEquals("", binding.resourcePath);
+
+        assertNull(toTest.match(exposureURI("some/path", URI.create("ext/two"))));
+    }
+
+    // Verifies matching of exposed paths that overlap, where a partial match must fall back to a shorter one
+    @Test
+    public void overlappingPathsTest() {
+        when(extensisons.getExtension(extension2URI)).thenReturn(extension2);
+        when(extension2.isExposing()).thenReturn(true);
+        when(extension2.exposed()).thenReturn(extension2Spec);
+        when(extension2Spec.exposedAt()).thenReturn(URI.create("a/" + extension1ExposedAt + "/b"));
+        when(extension2Spec.scope()).thenReturn(Scope.RESOURCE);
+
+        extensionURIs.add(extension2URI);
+
+        toTest.update();
+
+        final ServiceExposingBinding shorter = toTest.match(exposureURI("x/a/a", URI.create(extension1ExposedAt +
+                "/c")));
+        assertEquals(extension1, shorter.extension);
+        assertEquals("x/a/a", shorter.resourcePath);
+
+        final ServiceExposingBinding longer = toTest.match(exposureURI("x/a", URI.create("a/" +
+                extension1ExposedAt + "/b/c")));
+        assertEquals(extension2, longer.extension);
+        assertEquals("x/a", longer.resourcePath);
+    }
+
     @Test
     public void conflictingExtensionsTest() {
         when(extensisons.getExtension(extension2URI)).thenReturn(extension2);
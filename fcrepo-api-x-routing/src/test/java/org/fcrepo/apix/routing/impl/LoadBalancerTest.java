@@ -0,0 +1,132 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.fcrepo.apix.routing.EndpointStatistics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests load balancing strategies.
+ *
+ * @author apb@jhu.edu
+ */
+public class LoadBalancerTest {
+
+    static final URI ENDPOINT_1 = URI.create("http://example.org/endpoint/1");
+
+    static final URI ENDPOINT_2 = URI.create("http://example.org/endpoint/2");
+
+    static final URI ENDPOINT_3 = URI.create("http://example.org/endpoint/3");
+
+    static final List<URI> ENDPOINTS = Arrays.asList(ENDPOINT_1, ENDPOINT_2, ENDPOINT_3);
+
+    EndpointStatistics stats;
+
+    @Before
+    public void setUp() {
+        stats = new EndpointStatistics();
+    }
+
+    @Test
+    public void roundRobinTest() {
+        final RoundRobinLoadBalancer toTest = new RoundRobinLoadBalancer();
+
+        assertEquals(ENDPOINT_1, toTest.select(ENDPOINTS, stats));
+        assertEquals(ENDPOINT_2, toTest.select(ENDPOINTS, stats));
+        assertEquals(ENDPOINT_3, toTest.select(ENDPOINTS, stats));
+        assertEquals(ENDPOINT_1, toTest.select(ENDPOINTS, stats));
+    }
+
+    @Test
+    public void leastOutstandingTest() {
+        final LeastOutstandingLoadBalancer toTest = new LeastOutstandingLoadBalancer();
+
+        stats.started(ENDPOINT_1);
+        stats.started(ENDPOINT_3);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ENDPOINT_2, toTest.select(ENDPOINTS, stats));
+        }
+    }
+
+    @Test
+    public void powerOfTwoTest() {
+        final PowerOfTwoChoicesLoadBalancer toTest = new PowerOfTwoChoicesLoadBalancer();
+
+        stats.started(ENDPOINT_1);
+        stats.started(ENDPOINT_1);
+
+        final Set<URI> chosen = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            chosen.add(toTest.select(ENDPOINTS, stats));
+        }
+
+        // The busiest endpoint always loses against either of the others.
+        assertEquals(new HashSet<>(Arrays.asList(ENDPOINT_2, ENDPOINT_3)), chosen);
+
+        assertEquals(ENDPOINT_1, toTest.select(Arrays.asList(ENDPOINT_1), stats));
+    }
+
+    @Test
+    public void ewmaTest() {
+        final EwmaLoadBalancer toTest = new EwmaLoadBalancer();
+
+        complete(ENDPOINT_1, 100);
+        complete(ENDPOINT_2, 10);
+        complete(ENDPOINT_3, 50);
+
+        assertEquals(ENDPOINT_2, toTest.select(ENDPOINTS, stats));
+
+        // Enough outstanding requests make a fast endpoint more expensive than a slower one
+        for (int i = 0; i < 5; i++) {
+            stats.started(ENDPOINT_2);
+        }
+        assertEquals(ENDPOINT_3, toTest.select(ENDPOINTS, stats));
+    }
+
+    @Test
+    public void statisticsTest() {
+        complete(ENDPOINT_1, 100);
+        stats.started(ENDPOINT_1);
+        stats.completed(ENDPOINT_1, TimeUnit.MILLISECONDS.toNanos(200), false);
+
+        assertEquals(0, stats.of(ENDPOINT_1).inFlight());
+        assertEquals(2, stats.of(ENDPOINT_1).requests());
+        assertEquals(1, stats.of(ENDPOINT_1).failures());
+        assertTrue(stats.of(ENDPOINT_1).latencyEwma() > 100);
+        assertTrue(stats.of(ENDPOINT_1).latencyEwma() < 200);
+    }
+
+    private void complete(final URI endpoint, final long millis) {
+        stats.started(endpoint);
+        stats.completed(endpoint, TimeUnit.MILLISECONDS.toNanos(millis), true);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.fcrepo.apix.routing.impl.RoutingImpl.depth;
+import static org.fcrepo.apix.routing.impl.RoutingImpl.matches;
+import static org.fcrepo.apix.routing.impl.RoutingImpl.uriList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests routing helpers.
+ *
+ * @author apb@jhu.edu
+ */
+public class RoutingImplTest {
+
+    // Verifies If-None-Match comparison
+    @Test
+    public void ifNoneMatchTest() {
+        final String etag = "\"abc\"";
+
+        assertTrue(matches(etag, "\"abc\""));
+        assertTrue(matches(etag, "W/\"abc\""));
+        assertTrue(matches(etag, "\"xyz\", \"abc\""));
+        assertTrue(matches(etag, "*"));
+
+        assertFalse(matches(etag, null));
+        assertFalse(matches(etag, "\"xyz\""));
+        assertFalse(matches(etag, "abc"));
+    }
+
+    // Verifies parsing of batch service document requests
+    @Test
+    public void batchRequestTest() {
+        assertEquals(0, depth("0"));
+        assertEquals(2, depth("2"));
+        assertEquals(Integer.MAX_VALUE, depth("Infinity"));
+
+        assertEquals(Arrays.asList(URI.create("http://example.org/a"), URI.create("http://example.org/b")),
+                uriList("# resources\r\nhttp://example.org/a\r\n\r\n  http://example.org/b\n"));
+        assertTrue(uriList(null).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDepthTest() {
+        depth("-1");
+    }
+}
@@ -21,6 +21,7 @@ package org.fcrepo.apix.routing.impl;
 import static org.fcrepo.apix.jena.Util.parse;
 import static org.fcrepo.apix.jena.Util.query;
 import static org.fcrepo.apix.jena.Util.subjectsOf;
+import static org.fcrepo.apix.model.Ontologies.LDP_CONTAINS;
 import static org.fcrepo.apix.model.Ontologies.RDF_TYPE;
 import static org.fcrepo.apix.model.Ontologies.Service.CLASS_SERVICE_INSTANCE;
 import static org.fcrepo.apix.model.Ontologies.Service.PROP_HAS_ENDPOINT;
@@ -29,7 +30,14 @@ import static org.fcrepo.apix.model.Ontologies.Service.PROP_IS_SERVICE_DOCUMENT_
 import static org.fcrepo.apix.model.Ontologies.Service.PROP_IS_SERVICE_INSTANCE_OF;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
@@ -44,13 +52,25 @@ import org.fcrepo.apix.model.Extension.ServiceExposureSpec;
 import org.fcrepo.apix.model.Service;
 import org.fcrepo.apix.model.WebResource;
 import org.fcrepo.apix.model.components.ExtensionBinding;
+import org.fcrepo.apix.model.components.ExtensionRegistry;
 import org.fcrepo.apix.model.components.Routing;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -71,6 +91,9 @@ public class ServiceDocumentGeneratorTest {
     @Mock
     ExtensionBinding binding;
 
+    @Mock
+    ExtensionRegistry extensionRegistry;
+
     @Mock
     Extension EXPOSING_EXTENSION_RESOURCE_SCOPED;
 
@@ -164,6 +187,155 @@ public class ServiceDocumentGeneratorTest {
 
     }
 
+    // Verifies that identical service documents are byte-identical, and have the same strong ETag
+    @Test
+    public void deterministicTest() throws Exception {
+        when(binding.getExtensionsFor(RESOURCE_URI)).thenReturn(
+                Arrays.asList(EXPOSING_EXTENSION_RESOURCE_SCOPED, EXPOSING_EXTENSION_REPOSITORY_SCOPED));
+        toTest.setCacheSize(0);
+
+        final WebResource first = toTest.getServiceDocumentFor(RESOURCE_URI, routing, "text/turtle");
+
+        when(binding.getExtensionsFor(RESOURCE_URI)).thenReturn(
+                Arrays.asList(EXPOSING_EXTENSION_REPOSITORY_SCOPED, EXPOSING_EXTENSION_RESOURCE_SCOPED));
+
+        final WebResource second = toTest.getServiceDocumentFor(RESOURCE_URI, routing, "text/turtle");
+
+        assertNotNull(first.etag());
+        assertTrue(first.etag().matches("^\"[0-9a-f]+\"$"));
+        assertEquals(first.etag(), second.etag());
+        assertEquals(IOUtils.toString(first.representation(), "UTF-8"),
+                IOUtils.toString(second.representation(), "UTF-8"));
+    }
+
+    // Verifies that the ETag changes with bound extensions and media type, and that documents are cached.
+    @Test
+    public void etagTest() throws Exception {
+        when(binding.getExtensionsFor(RESOURCE_URI)).thenReturn(
+                Arrays.asList(EXPOSING_EXTENSION_RESOURCE_SCOPED));
+
+        final WebResource first = toTest.getServiceDocumentFor(RESOURCE_URI, routing, "text/turtle");
+        assertEquals(first, toTest.getServiceDocumentFor(RESOURCE_URI, routing, "text/turtle"));
+
+        final WebResource otherType = toTest.getServiceDocumentFor(RESOURCE_URI, routing, "application/n-triples");
+        assertNotEquals(first.etag(), otherType.etag());
+
+        when(binding.getExtensionsFor(RESOURCE_URI)).thenReturn(
+                Arrays.asList(EXPOSING_EXTENSION_RESOURCE_SCOPED, EXPOSING_EXTENSION_REPOSITORY_SCOPED));
+
+        final WebResource changed = toTest.getServiceDocumentFor(RESOURCE_URI, routing, "text/turtle");
+        assertNotEquals(first.etag(), changed.etag());
+        assertTrue(IOUtils.toString(changed.representation(), "UTF-8").contains(REPOSITORY_SCOPE_SERVICE_URI
+                .toString()));
+    }
+
+    // Verifies that streamed documents contain exactly the triples of the same document serialized by Jena.
+    // N-Triples are always absolute, so are the reference for every serialization.
+    @Test
+    public void streamingSerializerTest() throws Exception {
+        final String SERVICE_DOC_URI = "http://example.org/resource/svc:list";
+        when(routing.serviceDocFor(RESOURCE_URI)).thenReturn(URI.create(SERVICE_DOC_URI));
+        when(binding.getExtensionsFor(RESOURCE_URI)).thenReturn(
+                Arrays.asList(EXPOSING_EXTENSION_RESOURCE_SCOPED, EXPOSING_EXTENSION_UNREGISTERED,
+                        EXPOSING_EXTENSION_REPOSITORY_SCOPED, INTERCEPTING_EXTENSION));
+        toTest.setCacheSize(0);
+
+        toTest.setStreamingSerializer(false);
+        final Model expected = parse(toTest.getServiceDocumentFor(RESOURCE_URI, routing, "application/n-triples"));
+        assertEquals(20, expected.size());
+
+        for (final boolean relative : Arrays.asList(true, false)) {
+            toTest.setRelativeURIs(relative);
+
+            for (final String type : Arrays.asList("text/turtle", "application/n-triples", "application/ld+json")) {
+                toTest.setStreamingSerializer(false);
+                final WebResource jena = toTest.getServiceDocumentFor(RESOURCE_URI, routing, type);
+
+                toTest.setStreamingSerializer(true);
+                final WebResource streamed = toTest.getServiceDocumentFor(RESOURCE_URI, routing, type);
+
+                assertEquals(jena.contentType(), streamed.contentType());
+                assertEquals(jena.etag(), streamed.etag());
+                assertTrue(type + (relative ? " (relative)" : ""), parse(streamed, SERVICE_DOC_URI)
+                        .isIsomorphicWith(expected));
+            }
+        }
+    }
+
+    // Verifies that batches of service documents are named graphs, bound against extensions looked up once.
+    @Test
+    public void batchTest() throws Exception {
+        final URI OTHER_RESOURCE_URI = URI.create("http://example.org/other");
+        final List<Extension> extensions = Arrays.asList(EXPOSING_EXTENSION_RESOURCE_SCOPED,
+                EXPOSING_EXTENSION_REPOSITORY_SCOPED);
+        when(extensionRegistry.getExtensions()).thenReturn(extensions);
+        when(binding.getExtensionsFor(RESOURCE_URI, extensions)).thenReturn(extensions);
+        when(binding.getExtensionsFor(OTHER_RESOURCE_URI, extensions)).thenReturn(Arrays.asList(
+                EXPOSING_EXTENSION_REPOSITORY_SCOPED));
+        when(routing.serviceDocFor(RESOURCE_URI)).thenReturn(URI.create("http://example.org/discovery/resource"));
+        when(routing.serviceDocFor(OTHER_RESOURCE_URI)).thenReturn(URI.create("http://example.org/discovery/other"));
+        when(routing.endpointFor(REPOSITORY_SCOPE_SPEC, OTHER_RESOURCE_URI)).thenReturn(
+                REPOSITORY_SCOPE_ENDPOINT_URI);
+
+        toTest.setExtensionRegistry(extensionRegistry);
+        toTest.setRelativeURIs(true);
+
+        final Dataset docs = DatasetFactory.create();
+        try (WebResource batch = toTest.getServiceDocumentsFor(Arrays.asList(RESOURCE_URI, OTHER_RESOURCE_URI), 0,
+                routing)) {
+            assertEquals("application/n-quads", batch.contentType());
+            RDFDataMgr.read(docs, batch.representation(), Lang.NQUADS);
+        }
+
+        assertEquals(0, docs.getDefaultModel().size());
+
+        final Model doc = docs.getNamedModel("http://example.org/discovery/resource");
+        final Model otherDoc = docs.getNamedModel("http://example.org/discovery/other");
+        assertTrue(doc.contains(doc.getResource("http://example.org/discovery/resource"), doc.getProperty(
+                PROP_IS_SERVICE_DOCUMENT_FOR), doc.getResource(RESOURCE_URI.toString())));
+        assertEquals(2, doc.listSubjectsWithProperty(doc.getProperty(PROP_HAS_ENDPOINT)).toList().size());
+        assertEquals(1, otherDoc.listSubjectsWithProperty(otherDoc.getProperty(PROP_HAS_ENDPOINT)).toList().size());
+
+        verify(extensionRegistry, times(1)).getExtensions();
+        verify(binding, never()).getExtensionsFor(any(URI.class));
+    }
+
+    // Verifies that members of containers are included in batches, to the given depth.
+    @Test
+    public void batchDepthTest() throws Exception {
+        final URI MEMBER_URI = URI.create("http://example.org/resource/member");
+        final CloseableHttpClient client = mock(CloseableHttpClient.class);
+        final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(client.execute(any(HttpUriRequest.class))).thenReturn(response);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(response.getEntity()).thenAnswer(i -> new StringEntity(String.format("<%s> <%s> <%s> .\n",
+                RESOURCE_URI, LDP_CONTAINS, MEMBER_URI), ContentType.create("application/n-triples", "UTF-8")));
+
+        when(binding.getExtensionsFor(any(URI.class))).thenReturn(Arrays.asList(EXPOSING_EXTENSION_REPOSITORY_SCOPED));
+        when(routing.serviceDocFor(RESOURCE_URI)).thenReturn(URI.create("http://example.org/discovery/resource"));
+        when(routing.serviceDocFor(MEMBER_URI)).thenReturn(URI.create("http://example.org/discovery/member"));
+        when(routing.endpointFor(REPOSITORY_SCOPE_SPEC, MEMBER_URI)).thenReturn(REPOSITORY_SCOPE_ENDPOINT_URI);
+        toTest.setHttpClient(client);
+
+        final Dataset shallow = DatasetFactory.create();
+        try (WebResource batch = toTest.getServiceDocumentsFor(Arrays.asList(RESOURCE_URI), 0, routing)) {
+            RDFDataMgr.read(shallow, batch.representation(), Lang.NQUADS);
+        }
+        assertEquals(1, Iter.count(shallow.listNames()));
+        verify(client, never()).execute(any(HttpUriRequest.class));
+
+        final Dataset deep = DatasetFactory.create();
+        try (WebResource batch = toTest.getServiceDocumentsFor(Arrays.asList(RESOURCE_URI), 1, routing)) {
+            RDFDataMgr.read(deep, batch.representation(), Lang.NQUADS);
+        }
+        assertTrue(deep.containsNamedModel("http://example.org/discovery/resource"));
+        assertTrue(deep.containsNamedModel("http://example.org/discovery/member"));
+        assertEquals(2, Iter.count(deep.listNames()));
+
+        // Only the container itself is looked up; its member is at the maximum depth
+        verify(client, times(1)).execute(any(HttpUriRequest.class));
+    }
+
     // Verify that the service document points back to the resource.
     @Test
     public void serviceDocumentForTest() throws Exception {
@@ -0,0 +1,188 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.fcrepo.apix.model.Ontologies.Service.PROP_LOAD_BALANCER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.fcrepo.apix.model.Service;
+import org.fcrepo.apix.model.ServiceInstance;
+import org.fcrepo.apix.model.components.ResourceNotFoundException;
+import org.fcrepo.apix.model.components.ServiceInstanceRegistry;
+import org.fcrepo.apix.model.components.ServiceRegistry;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * Tests selection of service instance endpoints.
+ *
+ * @author apb@jhu.edu
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ServiceInstanceSelectorTest {
+
+    static final URI SERVICE_URI = URI.create("http://example.org/service");
+
+    static final URI ENDPOINT_1 = URI.create("http://example.org/endpoint/1");
+
+    static final URI ENDPOINT_2 = URI.create("http://example.org/endpoint/2");
+
+    @Mock
+    ServiceRegistry serviceRegistry;
+
+    @Mock
+    Service service;
+
+    @Mock
+    ServiceInstanceRegistry instanceRegistry;
+
+    @Mock
+    ServiceInstance instance1;
+
+    @Mock
+    ServiceInstance instance2;
+
+    ServiceInstanceSelector toTest;
+
+    @Before
+    public void setUp() {
+        when(serviceRegistry.getService(SERVICE_URI)).thenReturn(service);
+        when(serviceRegistry.instancesOf(service)).thenReturn(instanceRegistry);
+        when(instanceRegistry.instances()).thenReturn(Arrays.asList(instance1, instance2));
+        when(instance1.endpoints()).thenReturn(Arrays.asList(ENDPOINT_1));
+        when(instance2.endpoints()).thenReturn(Arrays.asList(ENDPOINT_2));
+        when(service.uri()).thenReturn(SERVICE_URI);
+        when(service.contentType()).thenReturn("text/turtle");
+
+        toTest = new ServiceInstanceSelector();
+        toTest.setServiceRegistry(serviceRegistry);
+    }
+
+    // Verifies that endpoints of all instances are balanced using the default strategy
+    @Test
+    public void defaultLoadBalancerTest() {
+        describeService("");
+
+        final Set<URI> chosen = new HashSet<>(Arrays.asList(toTest.select(SERVICE_URI), toTest.select(
+                SERVICE_URI)));
+
+        assertEquals(new HashSet<>(Arrays.asList(ENDPOINT_1, ENDPOINT_2)), chosen);
+    }
+
+    // Verifies that the load balancer named in a service's description is used
+    @Test
+    public void serviceLoadBalancerTest() {
+        describeService(String.format("<%s> <%s> \"%s\" .", SERVICE_URI, PROP_LOAD_BALANCER,
+                LeastOutstandingLoadBalancer.NAME));
+
+        toTest.getStatistics().started(ENDPOINT_1);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ENDPOINT_2, toTest.select(SERVICE_URI));
+        }
+    }
+
+    // Verifies that a service's description is only read again once the registry has a new version of it
+    @Test
+    public void loadBalancerResolvedOnceTest() {
+        describeService(String.format("<%s> <%s> \"%s\" .", SERVICE_URI, PROP_LOAD_BALANCER,
+                LeastOutstandingLoadBalancer.NAME));
+
+        for (int i = 0; i < 10; i++) {
+            toTest.select(SERVICE_URI);
+        }
+        verify(service, times(1)).representation();
+
+        final Service updated = mock(Service.class);
+        when(updated.uri()).thenReturn(SERVICE_URI);
+        when(updated.contentType()).thenReturn("text/turtle");
+        when(updated.representation()).thenAnswer(i -> IOUtils.toInputStream("", "UTF-8"));
+        when(serviceRegistry.getService(SERVICE_URI)).thenReturn(updated);
+        when(serviceRegistry.instancesOf(updated)).thenReturn(instanceRegistry);
+
+        // Now round-robin, so both endpoints are chosen despite one having a request outstanding
+        toTest.getStatistics().started(ENDPOINT_1);
+        final Set<URI> chosen = new HashSet<>(Arrays.asList(toTest.select(SERVICE_URI), toTest.select(
+                SERVICE_URI)));
+        assertEquals(new HashSet<>(Arrays.asList(ENDPOINT_1, ENDPOINT_2)), chosen);
+        verify(updated, times(1)).representation();
+    }
+
+    // Verifies that unhealthy endpoints are ejected, unless there are no healthy ones
+    @Test
+    public void unhealthyEndpointTest() {
+        describeService("");
+
+        final EndpointHealth health = new EndpointHealth();
+        health.setFailureThreshold(1);
+        toTest.setEndpointHealth(health);
+
+        health.record(ENDPOINT_1, 0, false);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ENDPOINT_2, toTest.select(SERVICE_URI));
+        }
+
+        health.record(ENDPOINT_2, 0, false);
+
+        final Set<URI> chosen = new HashSet<>(Arrays.asList(toTest.select(SERVICE_URI), toTest.select(
+                SERVICE_URI)));
+        assertEquals(new HashSet<>(Arrays.asList(ENDPOINT_1, ENDPOINT_2)), chosen);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDefaultLoadBalancerTest() {
+        toTest.setDefaultLoadBalancer("does-not-exist");
+    }
+
+    @Test
+    public void noEndpointsTest() {
+        describeService("");
+        when(instance1.endpoints()).thenReturn(Arrays.asList());
+        when(instance2.endpoints()).thenReturn(Arrays.asList());
+
+        try {
+            toTest.select(SERVICE_URI);
+        } catch (final ResourceNotFoundException e) {
+            assertTrue(e.getMessage().contains(SERVICE_URI.toString()));
+            return;
+        }
+
+        throw new AssertionError("Expected ResourceNotFoundException");
+    }
+
+    private void describeService(final String turtle) {
+        when(service.representation()).thenAnswer(i -> IOUtils.toInputStream(turtle, "UTF-8"));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class SpooledBodyTest {
+
+    static final int THRESHOLD = 1024;
+
+    // Verifies that small bodies are held in memory, and can be read repeatedly
+    @Test
+    public void inMemoryTest() throws Exception {
+        final byte[] content = content(THRESHOLD);
+
+        final SpooledBody toTest = SpooledBody.spool(new ByteArrayInputStream(content), THRESHOLD);
+
+        assertFalse(toTest.isSpooled());
+        assertContent(content, toTest);
+        assertContent(content, toTest);
+    }
+
+    // Verifies that large bodies are spooled, and deleted after the last reference is released
+    @Test
+    public void spooledTest() throws Exception {
+        final byte[] content = content(THRESHOLD * 10 + 1);
+
+        final SpooledBody toTest = SpooledBody.spool(new ByteArrayInputStream(content), THRESHOLD);
+
+        assertTrue(toTest.isSpooled());
+        toTest.retain();
+
+        assertContent(content, toTest);
+        toTest.release();
+        assertContent(content, toTest);
+        toTest.release();
+
+        try (InputStream in = toTest.open()) {
+            throw new AssertionError("Spool file should have been deleted");
+        } catch (final RuntimeException e) {
+            // expected
+        }
+    }
+
+    private static void assertContent(final byte[] expected, final SpooledBody body) throws Exception {
+        try (InputStream in = body.open()) {
+            assertArrayEquals(expected, IOUtils.toByteArray(in));
+        }
+    }
+
+    private static byte[] content(final int size) {
+        final byte[] content = new byte[size];
+        new Random().nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.apix.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+/**
+ * Tests the record of resources with no bound intercepting extensions.
+ *
+ * @author apb@jhu.edu
+ */
+public class UnboundResourceCacheTest {
+
+    static final URI RESOURCE = URI.create("http://example.org/fcrepo/rest/resource");
+
+    static final long TTL_NANOS = 1000000;
+
+    @Test
+    public void expirationTest() {
+        final UnboundResourceCache toTest = new UnboundResourceCache(10, 1);
+
+        assertFalse(toTest.isUnbound(RESOURCE, 0));
+
+        toTest.unbound(RESOURCE, 0, toTest.generation());
+        assertTrue(toTest.isUnbound(RESOURCE, TTL_NANOS));
+        assertTrue(toTest.isUnbound(URI.create(RESOURCE + "/"), TTL_NANOS));
+        assertFalse(toTest.isUnbound(RESOURCE, TTL_NANOS + 1));
+        assertEquals(0, toTest.size());
+    }
+
+    @Test
+    public void invalidationTest() {
+        final UnboundResourceCache toTest = new UnboundResourceCache(10, 1);
+        final URI other = URI.create(RESOURCE + "/other");
+
+        toTest.unbound(RESOURCE, 0, toTest.generation());
+        toTest.unbound(other, 0, toTest.generation());
+
+        // Changes to a binary's description affect the binary
+        toTest.invalidate(URI.create(RESOURCE + "/fcr:metadata"));
+        assertFalse(toTest.isUnbound(RESOURCE, 0));
+        assertTrue(toTest.isUnbound(other, 0));
+
+        toTest.clear();
+        assertFalse(toTest.isUnbound(other, 0));
+    }
+
+    // Verifies that a resource is not recorded as unbound if it was invalidated while binding was determined,
+    // but that invalidating other resources doesn't matter
+    @Test
+    public void invalidatedDuringBindingTest() {
+        final UnboundResourceCache toTest = new UnboundResourceCache(10, 1);
+        final URI other = URI.create(RESOURCE + "/other");
+
+        final long generation = toTest.generation();
+        toTest.invalidate(RESOURCE);
+        toTest.unbound(RESOURCE, 0, generation);
+        toTest.unbound(other, 0, generation);
+
+        assertFalse(toTest.isUnbound(RESOURCE, 0));
+        assertTrue(toTest.isUnbound(other, 0));
+
+        toTest.unbound(RESOURCE, 0, toTest.generation());
+        assertTrue(toTest.isUnbound(RESOURCE, 0));
+    }
+
+    // Verifies that nothing is recorded if everything was invalidated while binding was determined
+    @Test
+    public void clearedDuringBindingTest() {
+        final UnboundResourceCache toTest = new UnboundResourceCache(10, 1);
+
+        final long generation = toTest.generation();
+        toTest.clear();
+        toTest.unbound(RESOURCE, 0, generation);
+
+        assertFalse(toTest.isUnbound(RESOURCE, 0));
+    }
+
+    // Verifies that once too many invalidations are remembered, older determinations are not recorded
+    @Test
+    public void forgottenInvalidationTest() {
+        final UnboundResourceCache toTest = new UnboundResourceCache(2, 1);
+
+        final long generation = toTest.generation();
+        toTest.invalidate(RESOURCE);
+        toTest.invalidate(URI.create(RESOURCE + "/2"));
+        toTest.invalidate(URI.create(RESOURCE + "/3"));
+        toTest.unbound(RESOURCE, 0, generation);
+
+        assertFalse(toTest.isUnbound(RESOURCE, 0));
+    }
+
+    @Test
+    public void boundedSizeTest() {
+        final UnboundResourceCache toTest = new UnboundResourceCache(2, 1);
+        final URI second = URI.create(RESOURCE + "/2");
+        final URI third = URI.create(RESOURCE + "/3");
+
+        toTest.unbound(RESOURCE, 0, toTest.generation());
+        toTest.unbound(second, 0, toTest.generation());
+        toTest.isUnbound(RESOURCE, 0);
+        toTest.unbound(third, 0, toTest.generation());
+
+        assertEquals(2, toTest.size());
+        assertTrue(toTest.isUnbound(RESOURCE, 0));
+        assertFalse(toTest.isUnbound(second, 0));
+        assertTrue(toTest.isUnbound(third, 0));
+    }
+
+    @Test
+    public void disabledTest() {
+        final UnboundResourceCache toTest = new UnboundResourceCache(0, 1);
+
+        toTest.unbound(RESOURCE, 0, toTest.generation());
+        assertFalse(toTest.isUnbound(RESOURCE, 0));
+    }
+}